@@ -0,0 +1,23 @@
+package pr0bob.fireworks;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Startet JMH mit den übergebenen Optionen und hängt den GC-Profiler an, damit
+ * immer auch die Allokationsrate (gc.alloc.rate, gc.alloc.rate.norm) berichtet
+ * wird
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+		if (!jmhArgs.contains("-prof")) {
+			jmhArgs.add("-prof");
+			jmhArgs.add("gc");
+		}
+		Main.main(jmhArgs.toArray(new String[0]));
+	}
+}
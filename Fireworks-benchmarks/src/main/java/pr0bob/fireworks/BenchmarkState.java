@@ -0,0 +1,70 @@
+package pr0bob.fireworks;
+import java.awt.image.BufferedImage;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Gemeinsamer Zustand der Benchmarks: eine Simulation mit Renderer ohne
+ * Fenster mit einer festen Anzahl an Partikeln bei einer gegebenen Auflösung
+ */
+@State(Scope.Thread)
+public class BenchmarkState {
+
+	@Param({ "1000", "10000", "50000" })
+	public int particleCount;
+
+	@Param({ "1280x720", "3840x2160" })
+	public String resolution;
+
+	public int width;
+	public int height;
+	public FireworksSimulation simulation;
+	public FrameRenderer renderer;
+	public Particle cursor;
+
+	/**
+	 * Ziel-Bild für das Zeichnen
+	 */
+	public BufferedImage target;
+
+	/**
+	 * Eigener Rasterizer, damit der des Renderers nicht mitgemessen wird
+	 */
+	public final TileRasterizer tileRasterizer = new TileRasterizer();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		String[] wh = resolution.split("x");
+		width = Integer.parseInt(wh[0]);
+		height = Integer.parseInt(wh[1]);
+
+		MathUtils.setSeed(42);
+		simulation = new FireworksSimulation(width, height);
+		renderer = new FrameRenderer(simulation, width, height);
+		simulation.addRenderer(renderer);
+		cursor = new Particle(simulation);
+		target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		fill();
+	}
+
+	/**
+	 * Füllt die Simulation mit Explosionen bis die gewünschte Anzahl an Partikeln
+	 * erreicht ist
+	 */
+	public void fill() {
+		while (simulation.getParticles().size() < particleCount) {
+			FireworksFactory.spawnFireworksExplosion(MathUtils.randInt(0, width - 1), MathUtils.randInt(0, height - 1),
+					simulation);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		simulation.getUpdater().shutdown();
+	}
+}
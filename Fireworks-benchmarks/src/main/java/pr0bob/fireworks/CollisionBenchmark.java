@@ -0,0 +1,56 @@
+package pr0bob.fireworks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Kollision aller Partikel mit Rändern und einer wachsenden Anzahl an
+ * Hindernissen (zur Hälfte Gebäude, zur Hälfte schräge Kanten)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CollisionBenchmark {
+
+	@Param({ "0", "64", "1024" })
+	public int obstacleCount;
+
+	@Setup(Level.Trial)
+	public void setup(BenchmarkState state) {
+		CollisionWorld world = state.simulation.getCollisionWorld();
+		world.clearObstacles();
+		for (int i = 0; i < obstacleCount; i++) {
+			double x = MathUtils.randDouble(0, state.width);
+			double y = MathUtils.randDouble(0, state.height);
+			if (i % 2 == 0) {
+				world.addObstacle(new BoxObstacle(x, y, MathUtils.randDouble(8, 64), MathUtils.randDouble(8, 64)));
+			} else {
+				world.addObstacle(new SegmentObstacle(x, y, x + MathUtils.randDouble(-48, 48),
+						y + MathUtils.randDouble(-48, 48)));
+			}
+		}
+		world.prepare();
+	}
+
+	@Benchmark
+	public void collide(BenchmarkState state) {
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).collide();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package pr0bob.fireworks;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks des Displays: Ausblenden der Tracer, kachelweises Zeichnen der
+ * Partikel und ein kompletter Frame (Simulationsschritt + Rendern in ein Bild
+ * ohne Fenster)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DisplayBenchmark {
+
+	@Benchmark
+	public BufferedImage tracerFade(BenchmarkState state) {
+		return state.renderer.tracerFade(state.target);
+	}
+
+	@Benchmark
+	public BufferedImage rasterizeParticles(BenchmarkState state) {
+		Arrays.fill(RasterRenderer.pixels(state.target), 0);
+		state.tileRasterizer.drawParticles(state.simulation.getParticles(), state.target, 1.0,
+				state.renderer.getGlowCache(), state.simulation.getUpdater().getParallelPool());
+		return state.target;
+	}
+
+	@Benchmark
+	public void paintFrame(BenchmarkState state) {
+		// Gestorbene Partikel wieder auffüllen, damit die Last gleich bleibt
+		state.fill();
+		state.simulation.step();
+		state.renderer.composeFrame(1.0);
+		state.simulation.frameFinished();
+
+		Graphics2D g2d = state.target.createGraphics();
+		g2d.drawImage(state.renderer.getFrame(), 0, 0, null);
+		g2d.dispose();
+	}
+}
@@ -0,0 +1,46 @@
+package pr0bob.fireworks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Erzeugen einer kompletten Feuerwerksexplosion
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FactoryBenchmark {
+
+	private FireworksSimulation simulation;
+
+	@Setup
+	public void setup() {
+		MathUtils.setSeed(42);
+		simulation = new FireworksSimulation(1280, 720);
+	}
+
+	@Benchmark
+	public int getFireworksExplosion() {
+		int count = FireworksFactory.spawnFireworksExplosion(640, 360, simulation);
+		simulation.getParticles().clear();
+		return count;
+	}
+
+	@TearDown
+	public void tearDown() {
+		simulation.getUpdater().shutdown();
+	}
+}
@@ -0,0 +1,165 @@
+package pr0bob.fireworks;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Prüft, dass ein eingeschwungener Frame (Simulationsschritt + Zusammensetzen
+ * des Bildes) in der Standard-Konfiguration nichts allokiert: Backend und
+ * Parallelität wie im Display und im HeadlessRenderer, zusätzlich einmal
+ * sequentiell (Parallelität 1)
+ *
+ * Gemessen wird mit den Zählern des {@link com.sun.management.ThreadMXBean}
+ * für den aufrufenden Thread und alle Worker-Threads des Pools der Simulation
+ * (die Zähler der Worker werden außerhalb der Messung des aufrufenden Threads
+ * gelesen). Bei großen Explosionen liegen mehr Partikel als die Schwelle des
+ * parallelen Updates im Speicher, dann laufen alle parallelen Pfade. Vor der Messung
+ * laufen genug Frames, damit der JIT fertig ist und alle wiederverwendeten
+ * Arrays ihre Endgröße haben. Gemessen wird in Runden: vor jeder Runde kommen
+ * außerhalb der Messung neue Explosionen und Raketen dazu, in der Runde laufen
+ * Update, Raketen (inklusive ihrer Funken und Explosionen) und Zeichnen
+ *
+ * Beendet sich mit Exit-Code 1, wenn ein gemessener Frame allokiert hat. Läuft
+ * in der Phase verify des Maven-Builds (exec-maven-plugin, siehe pom.xml) und
+ * lässt ihn dann fehlschlagen, manuell z.B. mit:
+ *
+ * <pre>
+ * java -cp Fireworks-benchmarks/target/benchmarks.jar pr0bob.fireworks.FrameAllocationCheck [frames]
+ * </pre>
+ */
+public class FrameAllocationCheck {
+
+	private static final int WIDTH = 1280;
+	private static final int HEIGHT = 720;
+	private static final int WARMUP_ROUNDS = 60;
+	private static final int STEPS_PER_ROUND = 40;
+	private static final int SETTLE_STEPS = 10;
+
+	/**
+	 * Explosionen pro Runde, genug dass das Update über
+	 * {@link ParticleUpdater#DEFAULT_SEQUENTIAL_THRESHOLD} liegt
+	 */
+	private static final int EXPLOSIONS = 40;
+
+	/**
+	 * Feste Parallelität, damit die parallelen Pfade auch auf Rechnern mit einem
+	 * Kern gemessen werden
+	 */
+	private static final int PARALLELISM = 4;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			System.err.println("Allokationszähler werden von dieser JVM nicht unterstützt");
+			System.exit(2);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			System.err.println("Allokationszähler werden von dieser JVM nicht unterstützt");
+			System.exit(2);
+		}
+
+		int failed = run(threads, frames, 0) + run(threads, frames, 1) + run(threads, frames, PARALLELISM);
+		if (failed > 0) {
+			System.err.println("Eingeschwungene Frames dürfen nichts allokieren");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Misst eine Konfiguration
+	 *
+	 * @param parallelism - Parallelität des Updates, 0 für den Standard
+	 * @return Anzahl der Frames mit Allokation
+	 */
+	private static int run(com.sun.management.ThreadMXBean threads, int frames, int parallelism) {
+		MathUtils.setSeed(42);
+		FireworksSimulation simulation = new FireworksSimulation(WIDTH, HEIGHT);
+		FrameRenderer renderer = new FrameRenderer(simulation, WIDTH, HEIGHT);
+		simulation.addRenderer(renderer);
+		if (parallelism > 0) {
+			simulation.getUpdater().setParallelism(parallelism);
+		}
+
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			fill(simulation);
+			for (int s = 0; s < STEPS_PER_ROUND; s++) {
+				simulation.step();
+				renderer.composeFrame(0.5);
+				simulation.frameFinished();
+			}
+		}
+		long[] workers = workerIds();
+		int failed = 0;
+		long total = 0;
+		long max = 0;
+		long particles = 0;
+		for (int f = 0; f < frames; f++) {
+			if (f % STEPS_PER_ROUND == 0) {
+				// Neue Effekte außerhalb der Messung, die ersten Frames danach füllen noch
+				// den Sprite-Cache auf
+				fill(simulation);
+				for (int s = 0; s < SETTLE_STEPS; s++) {
+					simulation.step();
+					renderer.composeFrame(0.5);
+					simulation.frameFinished();
+				}
+			}
+			particles += simulation.getParticles().size();
+			long workersBefore = sum(threads.getThreadAllocatedBytes(workers));
+			long before = threads.getCurrentThreadAllocatedBytes();
+			simulation.step();
+			renderer.composeFrame(0.5);
+			simulation.frameFinished();
+			long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+			bytes += sum(threads.getThreadAllocatedBytes(workers)) - workersBefore;
+			total += bytes;
+			max = Math.max(max, bytes);
+			if (bytes > 0) {
+				failed++;
+			}
+		}
+		simulation.getUpdater().shutdown();
+
+		System.out.printf(
+				"Parallelität %s: %d Frames, im Schnitt %d Partikel, %d Worker, %d Frames mit Allokation, %d Bytes gesamt, max %d Bytes%n",
+				parallelism > 0 ? Integer.toString(parallelism) : "Standard", frames,
+				particles / Math.max(frames, 1), workers.length, failed, total, max);
+		return failed;
+	}
+
+	/**
+	 * Ids aller Worker-Threads von Fork/Join-Pools (nach dem Aufwärmen, die Pools
+	 * halten ihre Threads solange gearbeitet wird)
+	 */
+	private static long[] workerIds() {
+		return Thread.getAllStackTraces().keySet().stream()
+				.filter(t -> t instanceof java.util.concurrent.ForkJoinWorkerThread).mapToLong(Thread::getId)
+				.toArray();
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+		for (long v : values) {
+			// -1 für Threads die inzwischen beendet sind
+			sum += Math.max(v, 0);
+		}
+		return sum;
+	}
+
+	/**
+	 * Explosionen und aufsteigende Raketen (nur außerhalb der Messung)
+	 */
+	private static void fill(FireworksSimulation simulation) {
+		simulation.getParticles().clear();
+		simulation.getRockets().clear();
+		for (int i = 0; i < EXPLOSIONS; i++) {
+			FireworksFactory.spawnFireworksExplosion(MathUtils.randInt(0, WIDTH - 1),
+					MathUtils.randInt(0, HEIGHT / 2), simulation);
+		}
+		for (int i = 0; i < 5; i++) {
+			simulation.getRockets().add(new Rocket(MathUtils.randInt(100, WIDTH - 100), HEIGHT, simulation));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package pr0bob.fireworks;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Erzeugen eines Leuchten-Sprites (früher Particle.createGlow), Zugriff über
+ * den Cache und Neu-Einfärben bei einem Fehlschlag
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GlowBenchmark {
+
+	@Param({ "2", "5" })
+	public int radius;
+
+	private GlowSpriteCache cache;
+
+	/**
+	 * Cache mit nur einem Platz, jeder Zugriff mit neuer Farbe färbt das
+	 * verdrängte Sprite neu ein
+	 */
+	private GlowSpriteCache missCache;
+	private int color = 0xFFC86419;
+
+	@Setup
+	public void setup() {
+		cache = new GlowSpriteCache();
+		missCache = new GlowSpriteCache(1);
+	}
+
+	@Benchmark
+	public BufferedImage createGlow() {
+		return GlowSpriteCache.createSprite(0xFFC86419, radius);
+	}
+
+	@Benchmark
+	public BufferedImage cachedGlow() {
+		return cache.get(0xFFC86419, radius, false);
+	}
+
+	@Benchmark
+	public BufferedImage recolorGlow() {
+		color ^= 0x00010101;
+		BufferedImage sprite = missCache.get(color, radius, false);
+		// Wie nach einem Frame: das verdrängte Sprite wird nicht mehr gezeichnet
+		missCache.recycleEvicted();
+		return sprite;
+	}
+}
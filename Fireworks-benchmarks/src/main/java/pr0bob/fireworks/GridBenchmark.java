@@ -0,0 +1,77 @@
+package pr0bob.fireworks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Aufbau des ParticleGrid und Nachbarschaftsabfragen bis 100k Partikel, die
+ * Zeit sollte linear mit der Anzahl wachsen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GridBenchmark {
+
+	@Param({ "10000", "25000", "50000", "100000" })
+	public int particleCount;
+
+	private static final int WIDTH = 1920;
+	private static final int HEIGHT = 1080;
+
+	private FireworksSimulation simulation;
+	private ParticleGrid grid;
+	private int neighbors;
+
+	private final NeighborVisitor counter = (particle, neighbor, dx, dy, distSq) -> neighbors++;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		MathUtils.setSeed(42);
+		simulation = new FireworksSimulation(WIDTH, HEIGHT);
+		while (simulation.getParticles().size() < particleCount) {
+			FireworksFactory.spawnFireworksExplosion(MathUtils.randInt(0, WIDTH - 1), MathUtils.randInt(0, HEIGHT - 1),
+					simulation);
+		}
+		grid = simulation.getParticleGrid();
+		grid.build(simulation.getParticles(), WIDTH, HEIGHT, null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		simulation.getUpdater().shutdown();
+	}
+
+	@Benchmark
+	public void build() {
+		grid.build(simulation.getParticles(), WIDTH, HEIGHT, null);
+	}
+
+	@Benchmark
+	public void buildParallel() {
+		grid.build(simulation.getParticles(), WIDTH, HEIGHT, simulation.getUpdater().getParallelPool());
+	}
+
+	@Benchmark
+	public int forEachNeighbor() {
+		neighbors = 0;
+		for (int i = 0; i < grid.size(); i++) {
+			grid.forEachNeighbor(i, 8f, counter);
+		}
+		return neighbors;
+	}
+}
@@ -0,0 +1,87 @@
+package pr0bob.fireworks;
+import java.awt.Graphics2D;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks der einzelnen Partikel-Funktionen, jeweils über alle Partikel der
+ * Simulation
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParticleBenchmark {
+
+	@Benchmark
+	public void updatePosition(BenchmarkState state) {
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).updatePosition();
+		}
+	}
+
+	@Benchmark
+	public void applyForceFields(BenchmarkState state) {
+		ParticleStore store = state.simulation.getParticles();
+		for (ForceField field : state.simulation.getForceFieldArray()) {
+			field.apply(store, 0, store.size(), 0);
+		}
+	}
+
+	@Benchmark
+	public void collide(BenchmarkState state) {
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).collide();
+		}
+	}
+
+	@Benchmark
+	public void draw(BenchmarkState state) {
+		Graphics2D g2d = state.target.createGraphics();
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).draw(g2d, 1.0, state.renderer.getGlowCache());
+		}
+		g2d.dispose();
+		state.renderer.getGlowCache().recycleEvicted();
+	}
+
+	@Benchmark
+	public void drawTracer(BenchmarkState state) {
+		Graphics2D g2d = state.target.createGraphics();
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).drawTracer(g2d);
+		}
+		g2d.dispose();
+	}
+
+	@Benchmark
+	public void drawRaster(BenchmarkState state) {
+		RasterRenderer raster = new RasterRenderer().bind(state.target);
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).draw(raster, 1.0, state.renderer.getGlowCache());
+		}
+		state.renderer.getGlowCache().recycleEvicted();
+	}
+
+	@Benchmark
+	public void drawTracerRaster(BenchmarkState state) {
+		RasterRenderer raster = new RasterRenderer().bind(state.target);
+		Particle p = state.cursor;
+		for (int i = 0; i < state.simulation.getParticles().size(); i++) {
+			p.at(i).drawTracer(raster);
+		}
+	}
+}
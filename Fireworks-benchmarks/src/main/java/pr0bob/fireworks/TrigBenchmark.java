@@ -0,0 +1,51 @@
+package pr0bob.fireworks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drehen von Geschwindigkeiten mit Math.sin/cos und mit der Sinus-Tabelle von
+ * MathUtils
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TrigBenchmark {
+
+	private static final int ANGLES = 1024;
+
+	private final double[] angles = new double[ANGLES];
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		RandomStream r = new RandomStream(42);
+		for (int i = 0; i < ANGLES; i++) {
+			angles[i] = MathUtils.randDouble(r, -45, 405);
+		}
+	}
+
+	@Benchmark
+	public double rotateMath() {
+		double rad = Math.toRadians(angles[next++ & (ANGLES - 1)]);
+		return 3 * Math.cos(rad) - 2 * Math.sin(rad);
+	}
+
+	@Benchmark
+	public double rotateTable() {
+		double deg = angles[next++ & (ANGLES - 1)];
+		return 3 * MathUtils.cosDeg(deg) - 2 * MathUtils.sinDeg(deg);
+	}
+}
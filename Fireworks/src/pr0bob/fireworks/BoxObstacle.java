@@ -0,0 +1,72 @@
+package pr0bob.fireworks;
+/**
+ * Achsenparalleles Rechteck als Hindernis, z.B. ein Gebäude
+ */
+public class BoxObstacle implements Obstacle {
+
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+
+	/**
+	 * @param x      - X-Position der oberen linken Ecke
+	 * @param y      - Y-Position der oberen linken Ecke
+	 * @param width  - Breite in Px
+	 * @param height - Höhe in Px
+	 */
+	public BoxObstacle(double x, double y, double width, double height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Ungültige Größe: " + width + "x" + height);
+		}
+		this.minX = x;
+		this.minY = y;
+		this.maxX = x + width;
+		this.maxY = y + height;
+	}
+
+	@Override
+	public boolean reflect(Particle p) {
+		double x = p.getX();
+		double y = p.getY();
+		double vx = p.getVelocityX();
+		double vy = p.getVelocityY();
+		double fx = x + vx;
+		double fy = y + vy;
+
+		if (fx < minX || fx >= maxX || fy < minY || fy >= maxY) {
+			return false;
+		}
+
+		// Seite über die das Partikel eindringt bestimmt die Richtung des Abpralls,
+		// Partikel die schon im Inneren sind (z.B. dort erzeugt) fliegen einfach
+		// heraus
+		boolean outsideX = x < minX || x >= maxX;
+		boolean outsideY = y < minY || y >= maxY;
+		if (!outsideX && !outsideY) {
+			return false;
+		}
+		p.setVelocity(outsideX ? -vx : vx, outsideY ? -vy : vy);
+		return true;
+	}
+
+	@Override
+	public double getMinX() {
+		return minX;
+	}
+
+	@Override
+	public double getMinY() {
+		return minY;
+	}
+
+	@Override
+	public double getMaxX() {
+		return maxX;
+	}
+
+	@Override
+	public double getMaxY() {
+		return maxY;
+	}
+}
@@ -0,0 +1,207 @@
+package pr0bob.fireworks;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Kollisionen der Partikel mit den Rändern der Simulation und mit statischen
+ * Hindernissen
+ * 
+ * Die Ränder werden gegen die zwischengespeicherte Größe geprüft, ohne dafür
+ * Objekte anzulegen. Hindernisse liegen in einem gleichmäßigen Raster
+ * (Broadphase): jede Zelle kennt die Hindernisse deren Bounding-Box sie
+ * berührt, ein Partikel prüft nur die Zellen die sein Weg im aktuellen Schritt
+ * überstreicht. Die Kosten hängen dadurch von der Dichte der Hindernisse vor
+ * Ort ab und nicht von ihrer Gesamtzahl
+ * 
+ * Änderungen an Hindernissen und Größe werden erst mit {@link #prepare()} in
+ * das Raster übernommen, das passiert zu Beginn jedes Simulationsschritts.
+ * Während des (parallelen) Updates wird nur gelesen
+ */
+public class CollisionWorld {
+
+	/**
+	 * Kantenlänge einer Zelle des Rasters in Px
+	 */
+	public static final int DEFAULT_CELL_SIZE = 64;
+
+	/**
+	 * Dicke der Wände außerhalb des sichtbaren Bereichs, Partikel die weiter
+	 * draußen landen prallen nicht mehr ab
+	 */
+	public static final int WALL_DEPTH = 500;
+
+	private final int cellSize;
+
+	private int width;
+	private int height;
+
+	private final ArrayList<Obstacle> obstacles = new ArrayList<>();
+	private boolean dirty = false;
+
+	/*
+	 * Raster: die Hindernisse der Zelle c liegen in cellItems[cellStart[c]] bis
+	 * cellItems[cellStart[c + 1] - 1]
+	 */
+	private Obstacle[] items = new Obstacle[0];
+	private int[] cellStart = new int[1];
+	private Obstacle[] cellItems = new Obstacle[0];
+	private int columns = 0;
+	private int rows = 0;
+
+	public CollisionWorld(int width, int height) {
+		this(width, height, DEFAULT_CELL_SIZE);
+	}
+
+	public CollisionWorld(int width, int height, int cellSize) {
+		if (cellSize < 1) {
+			throw new IllegalArgumentException("cellSize < 1: " + cellSize);
+		}
+		this.cellSize = cellSize;
+		setBounds(width, height);
+	}
+
+	/**
+	 * Setzt die Größe des Bereichs in dem sich die Partikel bewegen
+	 */
+	public void setBounds(int width, int height) {
+		if (width != this.width || height != this.height) {
+			this.width = width;
+			this.height = height;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Entspricht der Kollision mit der Wand oben oder unten (Rechtecke mit
+	 * {@link #WALL_DEPTH} Px Dicke über die volle Breite)
+	 */
+	public boolean hitsHorizontalWall(int x, int y) {
+		return x >= 0 && x < width && ((y < 0 && y >= -WALL_DEPTH) || (y >= height && y < height + WALL_DEPTH));
+	}
+
+	/**
+	 * Entspricht der Kollision mit der Wand links oder rechts
+	 */
+	public boolean hitsVerticalWall(int x, int y) {
+		return y >= 0 && y < height && ((x < 0 && x >= -WALL_DEPTH) || (x >= width && x < width + WALL_DEPTH));
+	}
+
+	/**
+	 * Prüft das Partikel gegen alle Hindernisse in den Zellen die sein Weg im
+	 * nächsten Schritt berührt. Es wird höchstens ein Hindernis pro Schritt
+	 * getroffen
+	 * 
+	 * @param p - Zeiger auf das Partikel
+	 * @return {@code true} wenn ein Hindernis die Geschwindigkeit geändert hat
+	 */
+	public boolean collideObstacles(Particle p) {
+		if (cellItems.length == 0) {
+			return false;
+		}
+		double x = p.getX();
+		double y = p.getY();
+		double fx = x + p.getVelocityX();
+		double fy = y + p.getVelocityY();
+
+		int c0 = column(Math.min(x, fx));
+		int c1 = column(Math.max(x, fx));
+		int r0 = row(Math.min(y, fy));
+		int r1 = row(Math.max(y, fy));
+
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * columns + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					if (cellItems[k].reflect(p)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private int column(double x) {
+		return Math.min(Math.max((int) Math.floor(x / cellSize), 0), columns - 1);
+	}
+
+	private int row(double y) {
+		return Math.min(Math.max((int) Math.floor(y / cellSize), 0), rows - 1);
+	}
+
+	/**
+	 * Baut das Raster neu auf falls sich Hindernisse oder die Größe geändert
+	 * haben. Muss vor dem Update der Partikel auf dem simulierenden Thread
+	 * aufgerufen werden
+	 */
+	public void prepare() {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		items = obstacles.toArray(new Obstacle[0]);
+		columns = Math.max((width + cellSize - 1) / cellSize, 1);
+		rows = Math.max((height + cellSize - 1) / cellSize, 1);
+
+		// Erst zählen, dann die Startindizes bestimmen und zuletzt einsortieren.
+		// Hindernisse außerhalb des Bereichs landen in den Randzellen
+		int[] start = new int[columns * rows + 1];
+		for (Obstacle o : items) {
+			for (int r = row(o.getMinY()); r <= row(o.getMaxY()); r++) {
+				for (int c = column(o.getMinX()); c <= column(o.getMaxX()); c++) {
+					start[r * columns + c + 1]++;
+				}
+			}
+		}
+		for (int i = 1; i < start.length; i++) {
+			start[i] += start[i - 1];
+		}
+		Obstacle[] sorted = new Obstacle[start[start.length - 1]];
+		int[] fill = start.clone();
+		for (Obstacle o : items) {
+			for (int r = row(o.getMinY()); r <= row(o.getMaxY()); r++) {
+				for (int c = column(o.getMinX()); c <= column(o.getMaxX()); c++) {
+					sorted[fill[r * columns + c]++] = o;
+				}
+			}
+		}
+		cellStart = start;
+		cellItems = sorted;
+	}
+
+	public void addObstacle(Obstacle obstacle) {
+		if (obstacle == null) {
+			throw new IllegalArgumentException("obstacle == null");
+		}
+		obstacles.add(obstacle);
+		dirty = true;
+	}
+
+	public boolean removeObstacle(Obstacle obstacle) {
+		boolean removed = obstacles.remove(obstacle);
+		dirty |= removed;
+		return removed;
+	}
+
+	public void clearObstacles() {
+		obstacles.clear();
+		dirty = true;
+	}
+
+	public List<Obstacle> getObstacles() {
+		return Collections.unmodifiableList(obstacles);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+}
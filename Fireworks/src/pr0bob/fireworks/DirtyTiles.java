@@ -0,0 +1,170 @@
+package pr0bob.fireworks;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Merkt sich in einem groben Raster aus Kacheln, wann zuletzt in einen Bereich
+ * eines Bildes gezeichnet wurde
+ * 
+ * Jede Kachel bekommt beim Markieren einen Zeitstempel (Frame- oder
+ * Schrittnummer). Daraus ergeben sich die Bereiche die geleert, ausgeblendet
+ * oder neu zusammengesetzt werden müssen, zusammengefasst zu waagrechten
+ * Streifen aus benachbarten Kacheln ({@link #spans(long, int[])})
+ */
+public class DirtyTiles {
+
+	/**
+	 * Kantenlänge einer Kachel in Px
+	 */
+	public static final int TILE_SIZE = 32;
+
+	/**
+	 * Zeitstempel einer Kachel die noch nie markiert wurde
+	 */
+	public static final long NEVER = Long.MIN_VALUE / 2;
+
+	private final int width;
+	private final int height;
+	private final int columns;
+	private final int rows;
+	private final long[] stamps;
+
+	public DirtyTiles(int width, int height) {
+		this.width = Math.max(width, 1);
+		this.height = Math.max(height, 1);
+		columns = (this.width + TILE_SIZE - 1) / TILE_SIZE;
+		rows = (this.height + TILE_SIZE - 1) / TILE_SIZE;
+		stamps = new long[columns * rows];
+		Arrays.fill(stamps, NEVER);
+	}
+
+	/**
+	 * Markiert alle Kacheln die das Rechteck (inklusive beider Ecken) berührt,
+	 * Teile außerhalb des Bildes werden ignoriert
+	 */
+	public void mark(int x0, int y0, int x1, int y1, long stamp) {
+		if (x1 < 0 || y1 < 0 || x0 >= width || y0 >= height) {
+			return;
+		}
+		int c0 = Math.max(x0, 0) / TILE_SIZE;
+		int c1 = Math.min(x1, width - 1) / TILE_SIZE;
+		int r0 = Math.max(y0, 0) / TILE_SIZE;
+		int r1 = Math.min(y1, height - 1) / TILE_SIZE;
+		for (int r = r0; r <= r1; r++) {
+			int row = r * columns;
+			for (int c = c0; c <= c1; c++) {
+				stamps[row + c] = stamp;
+			}
+		}
+	}
+
+	/**
+	 * Markiert das ganze Bild
+	 */
+	public void markAll(long stamp) {
+		Arrays.fill(stamps, stamp);
+	}
+
+	/**
+	 * Fasst alle Kacheln mit Zeitstempel >= since zu Streifen zusammen
+	 * 
+	 * @param since - Kleinster Zeitstempel der zählt
+	 * @param out   - Ziel für je 4 Werte pro Streifen (x0, y0, x1, y1 in Px, x1/y1
+	 *              exklusiv), muss mindestens {@link #maxSpans()} * 4 groß sein
+	 * @return Anzahl der Streifen
+	 */
+	public int spans(long since, int[] out) {
+		return spans(this, since, Long.MAX_VALUE, null, 0, out);
+	}
+
+	/**
+	 * Wie {@link #spans(long, int[])}, aber nur für Kacheln mit Zeitstempel
+	 * zwischen from und to (inklusive)
+	 */
+	public int spans(long from, long to, int[] out) {
+		return spans(this, from, to, null, 0, out);
+	}
+
+	/**
+	 * Wie {@link #spans(long, int[])}, aber für die Vereinigung zweier Raster
+	 * gleicher Größe
+	 * 
+	 * @param b - Zweites Raster oder {@code null}
+	 */
+	public static int spans(DirtyTiles a, long sinceA, DirtyTiles b, long sinceB, int[] out) {
+		return spans(a, sinceA, Long.MAX_VALUE, b, sinceB, out);
+	}
+
+	private static int spans(DirtyTiles a, long fromA, long toA, DirtyTiles b, long sinceB, int[] out) {
+		int n = 0;
+		for (int r = 0; r < a.rows; r++) {
+			int row = r * a.columns;
+			int c = 0;
+			while (c < a.columns) {
+				if (!a.isSet(row + c, fromA, toA, b, sinceB)) {
+					c++;
+					continue;
+				}
+				int start = c;
+				while (c < a.columns && a.isSet(row + c, fromA, toA, b, sinceB)) {
+					c++;
+				}
+				out[n++] = start * TILE_SIZE;
+				out[n++] = r * TILE_SIZE;
+				out[n++] = Math.min(c * TILE_SIZE, a.width);
+				out[n++] = Math.min((r + 1) * TILE_SIZE, a.height);
+			}
+		}
+		return n / 4;
+	}
+
+	private boolean isSet(int tile, long from, long to, DirtyTiles other, long otherSince) {
+		return (stamps[tile] >= from && stamps[tile] <= to) || (other != null && other.stamps[tile] >= otherSince);
+	}
+
+	/**
+	 * Umschließendes Rechteck der Streifen
+	 * 
+	 * @param spans - Streifen aus {@link #spans(long, int[])}
+	 * @param count - Anzahl der Streifen
+	 * @param bounds - Ziel, bleibt leer wenn count = 0
+	 * @return bounds
+	 */
+	public static Rectangle bounds(int[] spans, int count, Rectangle bounds) {
+		if (count == 0) {
+			bounds.setBounds(0, 0, 0, 0);
+			return bounds;
+		}
+		int x0 = Integer.MAX_VALUE;
+		int y0 = Integer.MAX_VALUE;
+		int x1 = Integer.MIN_VALUE;
+		int y1 = Integer.MIN_VALUE;
+		for (int i = 0; i < count * 4; i += 4) {
+			x0 = Math.min(x0, spans[i]);
+			y0 = Math.min(y0, spans[i + 1]);
+			x1 = Math.max(x1, spans[i + 2]);
+			y1 = Math.max(y1, spans[i + 3]);
+		}
+		bounds.setBounds(x0, y0, x1 - x0, y1 - y0);
+		return bounds;
+	}
+
+	/**
+	 * Höchstmögliche Anzahl an Streifen (jede zweite Kachel markiert)
+	 */
+	public int maxSpans() {
+		return rows * ((columns + 1) / 2);
+	}
+
+	public long getStamp(int column, int row) {
+		return stamps[row * columns + column];
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+}
@@ -1,15 +1,13 @@
 package pr0bob.fireworks;
-import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
 
 import javax.swing.JPanel;
 import javax.swing.Timer;
@@ -17,190 +15,326 @@ import javax.swing.Timer;
 public class Display extends JPanel implements ActionListener {
 
 	/**
-	 * Wenn {@code true} wird oben links die aktuelle Anzahl der Partikel angezeigt
+	 * Schrift des Statistik-Overlays
 	 */
-	private static final boolean SHOW_PARTICLE_COUNT = false;
+	private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.BOLD, 13);
+
+	/**
+	 * Wenn {@code true} werden oben links Anzahl der Partikel und die Zeiten der
+	 * einzelnen Phasen angezeigt (zur Laufzeit umschaltbar, in der Anwendung mit
+	 * F3)
+	 */
+	private volatile boolean statsOverlayVisible = false;
 
 	/**
 	 * Haupt-Timer fürs Repaint, 15-30ms sind normalerweise als "flüssig" zu sehen
-	 * Kann je nach Performance angepasst werden, ändert aber auch die
-	 * Geschwindigkeit der Partikel TODO Sinnvoll wäre hier eher, alle Abläufe zu
-	 * synchronisieren mit der Zeit die jeder Frame zum Rendern braucht
+	 * Kann je nach Performance angepasst werden, die Geschwindigkeit der Partikel
+	 * hängt nur von der SimulationClock ab
 	 */
-	Timer frameTimer = new Timer(30, this);
+	Timer frameTimer = new Timer(15, this);
 
-	/*
-	 * Buffer für die Darstellungsebenen (Background > Tracer > Partikel)
+	/**
+	 * Simulation die angezeigt wird
 	 */
-	private BufferedImage particleBuffer;
-	private BufferedImage tracerBuffer;
-	private BufferedImage background;
+	private final FireworksSimulation simulation;
 
-	/*
-	 * Listen für Partikel und Raketen, werden automatisch geleert andhand der
-	 * "alive" Parameter der Objekte
+	/**
+	 * Setzt die Bilder dieses Displays zusammen, ist bei der Simulation angemeldet
 	 */
-	private ArrayList<Particle> particles = new ArrayList<>();
-	private ArrayList<Rocket> rockets = new ArrayList<>();
+	private final FrameRenderer renderer;
 
 	/**
-	 * Der aktuelle Frame, wird kontinuierlich hochgezählt und dient dazu die<br>
-	 * verbleibende Lebenszeit der Raketen und Partikel zu bestimmen
+	 * {@code true} wenn das Display die Simulation selbst erstellt hat, dann
+	 * treibt es sie an (Schritte, Innenmaße, Abschluss der Frames in der
+	 * Statistik). Sonst folgt es nur einer Simulation die von außen gesteuert
+	 * wird
 	 */
-	private long currentFrame = 0;
+	private final boolean ownsSimulation;
 
-	private Dimension indsideBounds;
+	/**
+	 * Nur an einer fremden Simulation: setzt das Bild im Thread der Simulation
+	 * zusammen und gibt eine Kopie an den EDT weiter, sonst {@code null}
+	 */
+	private final FramePublisher publisher;
 
 	public Display(int width, int height) {
-		setSize(width, height);
-		init();
+		this(width, height, true);
 	}
 
 	/**
-	 * Innere Maße des Panels für Kollisionsabfragen mit den Rändern
+	 * Erstellt ein Display mit eigener Simulation
+	 * 
+	 * @param width    - Breite in Px
+	 * @param height   - Höhe in Px
+	 * @param realtime - {@code false} um den FrameTimer nicht zu starten
 	 */
-	public Dimension getInsideBounds() {
-		return indsideBounds;
-	}
-
-	public void addParticle(Particle p) {
-		particles.add(p);
-	}
-
-	public void addRocket() {
-		rockets.add(
-				new Rocket(MathUtils.randInt((int) (getWidth() * 0.1), (int) (getWidth() * 0.9)), getHeight(), this));
+	public Display(int width, int height, boolean realtime) {
+		this(new FireworksSimulation(width, height), true, realtime);
+		// Ohne Echtzeit gibt es kein Budget, die Ausgabe soll dort reproduzierbar sein
+		simulation.getQualityGovernor().setEnabled(realtime);
 	}
 
 	/**
-	 * Initialisierung, wird beim Start einmalig aufgerufen um die Buffer zu
-	 * erstellen und den Hintergrund zu füllen<br>
-	 * Startet den FrameTimer im Anschluss
+	 * Erstellt ein weiteres Fenster auf eine vorhandene Simulation (z.B. eine
+	 * Vorschau neben einem Encoder). Schritte und Innenmaße bestimmt weiter wer
+	 * die Simulation antreibt, egal in welchem Thread. Das Bild wird nach jedem
+	 * Schritt in dessen Thread zusammengesetzt (ohne Interpolation), der EDT
+	 * zeichnet nur eine fertige Kopie davon. Im Echtzeit-Modus zeichnet der
+	 * FrameTimer die geänderten Bereiche neu, sonst reicht ein
+	 * {@link #repaint()} von beliebiger Stelle
+	 * 
+	 * @param simulation - Angezeigte Simulation
+	 * @param realtime   - {@code false} um den FrameTimer nicht zu starten
 	 */
-	private void init() {
-		background = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
-		particleBuffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
-		tracerBuffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
-
-		Graphics2D g2d = (Graphics2D) background.getGraphics();
-		g2d.setColor(Color.black);
-		g2d.fillRect(0, 0, getWidth(), getHeight());
+	public Display(FireworksSimulation simulation, boolean realtime) {
+		this(simulation, false, realtime);
+	}
 
-		frameTimer.start();
+	private Display(FireworksSimulation simulation, boolean ownsSimulation, boolean realtime) {
+		this.simulation = simulation;
+		this.ownsSimulation = ownsSimulation;
+		Dimension size = simulation.getInsideBounds();
+		setSize(size);
+		renderer = new FrameRenderer(simulation, size.width, size.height);
+		simulation.addRenderer(renderer);
+		if (ownsSimulation) {
+			publisher = null;
+		} else {
+			// Nach dem Renderer, damit die Tracer des Schritts schon gezeichnet sind
+			publisher = new FramePublisher();
+			simulation.addRenderer(publisher);
+		}
+		if (realtime) {
+			frameTimer.start();
+		}
 	}
 
 	@Override
 	public void paint(Graphics g) {
-		// Buffer initialisieren vor dem ersten Frame
-		if (particleBuffer == null || particleBuffer.getWidth() != this.getWidth()
-				|| particleBuffer.getHeight() != this.getHeight()) {
-			init();
+		if (publisher != null) {
+			presentFrame((Graphics2D) g);
+			return;
+		}
+		// Buffer bei Größenänderungen neu erstellen
+		if (renderer.getWidth() != getWidth() || renderer.getHeight() != getHeight()) {
+			if (getWidth() > 0 && getHeight() > 0) {
+				renderer.resize(getWidth(), getHeight());
+			}
 			return;
 		}
 
-		// Basis Graphics-Komponente des Panels
-		Graphics2D g2d = (Graphics2D) g;
-
-		// Partikel-Buffer leeren
-		particleBuffer = new BufferedImage(getWidth(), getHeight(), 3);
-
-		Graphics2D particleG = (Graphics2D) particleBuffer.getGraphics();
-		Graphics2D tracerG = (Graphics2D) tracerBuffer.getGraphics();
-
-		// TODO hier kann vermutlich die meiste Performance-Optimierung stattfinden,
-		// z.B. mehrere Threads die jeweils einen Teil der Partikel abhandeln und
-		// parallel laufen
-		updateParticles(particleG, tracerG);
-
-		/*
-		 * Alle Buffer auf das Panel zeichnen
-		 */
-		g2d.drawImage(background, 0, 0, null);
-		g2d.drawImage(tracerBuffer, 0, 0, null);
-		g2d.drawImage(particleBuffer, 0, 0, null);
+		// Das Bild wurde bereits in actionPerformed zusammengesetzt
+		presentFrame((Graphics2D) g);
+	}
 
-		// Tracer werden mit jedem Schritt teilweise weg-gefaded
-		tracerBuffer = tracerFade(tracerBuffer);
+	/**
+	 * Setzt ein neues Bild zusammen und zeichnet es auf den gegebenen
+	 * Graphics2D-Context
+	 * 
+	 * @param g2d   - Ziel (Panel oder z.B. ein BufferedImage)
+	 * @param alpha - Anteil (0.0 - 1.0) zwischen letztem und aktuellem
+	 *              Simulationsschritt, an dem die Partikel gezeichnet werden
+	 */
+	public void renderFrame(Graphics2D g2d, double alpha) {
+		composeFrame(alpha);
+		presentFrame(g2d);
+	}
 
-		// Anzahl der Partikel anzeigen, falls Flag gesetzt
-		if (SHOW_PARTICLE_COUNT) {
-			showParticleCount(g2d);
+	/**
+	 * Zeichnet die Partikel neu und setzt das Bild nur in den Kacheln neu
+	 * zusammen, in denen sich Partikel- oder Tracer-Ebene geändert haben (siehe
+	 * {@link FrameRenderer#composeFrame(double)})
+	 * 
+	 * @param alpha - Anteil (0.0 - 1.0) zwischen letztem und aktuellem
+	 *              Simulationsschritt, an dem die Partikel gezeichnet werden
+	 * @return Umschließendes Rechteck aller geänderten Bereiche (wird beim
+	 *         nächsten Aufruf wiederverwendet)
+	 * @throws IllegalStateException - Wenn das Display an einer fremden Simulation
+	 *                               hängt, dort wird das Bild nach jedem Schritt
+	 *                               automatisch zusammengesetzt
+	 */
+	public Rectangle composeFrame(double alpha) {
+		if (publisher != null) {
+			throw new IllegalStateException("Bild wird im Thread der Simulation zusammengesetzt");
+		}
+		Rectangle dirty = renderer.composeFrame(alpha);
+		// Den Frame schließt ab wer die Simulation antreibt, sonst zählt er doppelt
+		if (ownsSimulation) {
+			simulation.frameFinished();
 		}
+		return dirty;
 	}
 
-	private void showParticleCount(Graphics2D bufferG) {
-		bufferG.setFont(new Font("Arial", Font.BOLD, 15));
-		bufferG.setColor(Color.white);
-		bufferG.drawString("P: " + particles.size(), 20, 20);
+	/**
+	 * Zeichnet das zuletzt zusammengesetzte Bild (und ggf. das Overlay)
+	 */
+	public void presentFrame(Graphics2D g2d) {
+		if (publisher != null) {
+			publisher.present(g2d);
+		} else {
+			g2d.drawImage(renderer.getFrame(), 0, 0, null);
+		}
+		if (statsOverlayVisible) {
+			drawStatsOverlay(g2d);
+		}
 	}
 
-	private void updateParticles(Graphics2D particleG, Graphics2D tracerG) {
-		ArrayList<Particle> deadParticles = new ArrayList<>();
-
-		try {
-			for (Particle p : particles) {
-				p.updatePosition();
-				if (p.setAlive(currentFrame)) {
-					p.draw(particleG);
-					p.drawTracer(tracerG);
-				} else {
-					deadParticles.add(p);
-				}
-			}
-		} catch (ConcurrentModificationException ex) {
-			// Nichts tun
+	/**
+	 * Zeichnet Anzahl der Partikel/Raketen und die Zeiten der Phasen (p50, p99,
+	 * max in ms) des letzten Zeitfensters. Überschreitet ein Frame das Budget
+	 * eines Simulationsschritts, wird die langsamste Phase rot markiert
+	 */
+	private void drawStatsOverlay(Graphics2D g2d) {
+		FrameStats frameStats = simulation.getFrameStats();
+		QualityGovernor qualityGovernor = simulation.getQualityGovernor();
+		g2d.setFont(OVERLAY_FONT);
+		g2d.setColor(Color.white);
+		int y = 20;
+		double allocation = frameStats.getAllocationRate();
+		g2d.drawString(String.format("P: %d  R: %d  Q: %d  %.1f FPS  %s", simulation.getParticles().size(),
+				simulation.getRockets().size(), qualityGovernor.getLevel(), frameStats.getFramesPerSecond(),
+				allocation < 0 ? "" : String.format("%.1f MB/s", allocation / (1024 * 1024))), 20, y);
+
+		double budget = simulation.getClock().getStepNanos() / 1e6;
+		double frameP99 = frameStats.getFrameP99() / 1e6;
+		FrameStats.Phase slowest = frameP99 > budget ? frameStats.getSlowestPhase() : null;
+		for (FrameStats.Phase phase : FrameStats.Phase.values()) {
+			y += 16;
+			g2d.setColor(phase == slowest ? Color.red : Color.white);
+			g2d.drawString(String.format("%-12s %6.2f %6.2f %6.2f", phase.getLabel(), frameStats.getP50(phase) / 1e6,
+					frameStats.getP99(phase) / 1e6, frameStats.getMax(phase) / 1e6), 20, y);
 		}
-
-		particles.removeAll(deadParticles);
+		y += 16;
+		g2d.setColor(slowest != null ? Color.red : Color.white);
+		g2d.drawString(String.format("%-12s %6.2f / %.0f ms", "Frame p99", frameP99, budget), 20, y);
 	}
 
-	public BufferedImage tracerFade(BufferedImage tracerBuffer) {
-		float fadeAmount = MathUtils.randFloat(0.85f, 0.95f);
-
-		BufferedImage fadedImage = new BufferedImage(tracerBuffer.getWidth(), tracerBuffer.getHeight(), 3);
-		Graphics2D g2d = fadedImage.createGraphics();
-		g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, fadeAmount));
-		g2d.drawImage(tracerBuffer, 0, 0, tracerBuffer.getWidth(), tracerBuffer.getHeight(), null);
-		g2d.dispose();
+	public FireworksSimulation getSimulation() {
+		return simulation;
+	}
 
-		return fadedImage;
+	public FrameRenderer getRenderer() {
+		return renderer;
 	}
 
-	public long getCurrentFrame() {
-		return currentFrame;
+	public FrameRenderer.RenderBackend getRenderBackend() {
+		return renderer.getRenderBackend();
 	}
 
-	public ArrayList<Particle> getParticles() {
-		return particles;
+	public void setRenderBackend(FrameRenderer.RenderBackend renderBackend) {
+		renderer.setRenderBackend(renderBackend);
 	}
 
-	public ArrayList<Rocket> getRockets() {
-		return rockets;
+	public boolean isStatsOverlayVisible() {
+		return statsOverlayVisible;
 	}
 
-	public void setBounds(Dimension bounds) {
-		indsideBounds = bounds;
+	public void setStatsOverlayVisible(boolean statsOverlayVisible) {
+		this.statsOverlayVisible = statsOverlayVisible;
+		// Das Overlay liegt nicht im zusammengesetzten Bild, beim Ausblenden muss
+		// das ganze Panel neu gezeichnet werden
+		repaint();
 	}
-	
-	public void updateRockets() {
-		ArrayList<Rocket> deadRockets = new ArrayList<>();
-		for (Rocket r : rockets) {
-			if (r.isAlive()) {
-				r.update();
-			} else {
-				deadRockets.add(r);
-			}
+
+	/**
+	 * Meldet das Display von der Simulation ab und hält den FrameTimer an
+	 */
+	public void detach() {
+		frameTimer.stop();
+		if (publisher != null) {
+			simulation.removeRenderer(publisher);
 		}
-		rockets.removeAll(deadRockets);
+		simulation.removeRenderer(renderer);
 	}
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		if (e.getSource().equals(frameTimer)) {
-			setBounds(this.getSize());
-			updateRockets();
-			repaint();
-			currentFrame++;
+			Rectangle dirty;
+			if (ownsSimulation) {
+				simulation.setBounds(getSize());
+				simulation.advance(System.nanoTime());
+				// Partikel werden zwischen den letzten beiden Simulationsschritten
+				// interpoliert gezeichnet
+				dirty = composeFrame(simulation.getClock().getAlpha());
+			} else {
+				dirty = publisher.takeDirty();
+			}
+			if (statsOverlayVisible) {
+				repaint();
+			} else if (!dirty.isEmpty()) {
+				repaint(dirty);
+			}
+		}
+	}
+
+	/**
+	 * Setzt das Bild eines angehängten Displays nach jedem Schritt im Thread der
+	 * Simulation zusammen und kopiert die geänderten Bereiche in ein Bild, das
+	 * nur unter dem Lock des Publishers gelesen und geschrieben wird. Der EDT
+	 * fasst so weder den {@link FrameRenderer} noch den {@link ParticleStore} an
+	 */
+	private class FramePublisher implements SimulationRenderer {
+
+		private BufferedImage published;
+
+		/**
+		 * Seit dem letzten {@link #takeDirty()} geänderte Bereiche
+		 */
+		private final Rectangle dirty = new Rectangle();
+		private final Rectangle taken = new Rectangle();
+
+		@Override
+		public void afterStep(FireworksSimulation simulation, long tick) {
+			Dimension size = simulation.getInsideBounds();
+			if (renderer.getWidth() != size.width || renderer.getHeight() != size.height) {
+				renderer.resize(size.width, size.height);
+			}
+			Rectangle changed = renderer.composeFrame(1.0);
+			BufferedImage frame = renderer.getFrame();
+			synchronized (this) {
+				if (published == null || published.getWidth() != frame.getWidth()
+						|| published.getHeight() != frame.getHeight()) {
+					published = new BufferedImage(frame.getWidth(), frame.getHeight(),
+							BufferedImage.TYPE_INT_ARGB_PRE);
+					changed = new Rectangle(0, 0, frame.getWidth(), frame.getHeight());
+				}
+				copy(frame, published, changed);
+				if (changed.isEmpty()) {
+					return;
+				}
+				if (dirty.isEmpty()) {
+					dirty.setBounds(changed);
+				} else {
+					dirty.add(changed);
+				}
+			}
+		}
+
+		private void copy(BufferedImage from, BufferedImage to, Rectangle area) {
+			Rectangle r = area.intersection(new Rectangle(0, 0, from.getWidth(), from.getHeight()));
+			int[] src = RasterRenderer.pixels(from);
+			int[] dst = RasterRenderer.pixels(to);
+			int width = from.getWidth();
+			for (int y = r.y; y < r.y + r.height; y++) {
+				System.arraycopy(src, y * width + r.x, dst, y * width + r.x, r.width);
+			}
+		}
+
+		synchronized void present(Graphics2D g2d) {
+			if (published != null) {
+				g2d.drawImage(published, 0, 0, null);
+			}
+		}
+
+		/**
+		 * Gibt die geänderten Bereiche seit dem letzten Aufruf zurück (wird beim
+		 * nächsten Aufruf wiederverwendet)
+		 */
+		synchronized Rectangle takeDirty() {
+			taken.setBounds(dirty);
+			dirty.setSize(0, 0);
+			return taken;
 		}
 	}
 }
@@ -0,0 +1,358 @@
+package pr0bob.fireworks;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Beschreibung eines Partikeleffekts als Daten statt als Code
+ *
+ * Ein Effekt besteht aus einer oder mehreren Ebenen (z.B. Funken und farbige
+ * Sterne einer Explosion), jede mit Anzahl, Verteilungen für Geschwindigkeit,
+ * Winkel und Lebenszeit, Palette, Leuchten, Flackern, Tracer und
+ * Wahrscheinlichkeit des Aufspaltens. Templates werden aus Properties-Dateien
+ * gelesen und mit {@link #compile()} einmalig in einen {@link SpawnKernel}
+ * übersetzt, der ganze Ausbrüche ohne Setter direkt in den
+ * {@link ParticleStore} schreibt
+ *
+ * Format (Bereiche als {@code min..max} oder ein einzelner Wert, Winkel in
+ * Grad, Positionen/Geschwindigkeiten in Px pro Schritt):
+ *
+ * <pre>
+ * layers=sparks,stars
+ * stars.count=200..500
+ * stars.palette=random            # spark, random oder #rrggbb,#rrggbb,...
+ * stars.colors=2                  # Farben pro Ausbruch, 0 = neue Farbe pro Partikel
+ * stars.velocityX=1..8
+ * stars.velocityY=0
+ * stars.angle=0..360
+ * stars.variantChance=0.25        # Anteil der Ausbrüche mit abweichender Form
+ * stars.variant.velocityX=4..12
+ * stars.variant.angle=180..360
+ * stars.variant.spread=0..45      # Winkel der Variante pro Ausbruch aufweiten
+ * stars.lifetime=20..55
+ * stars.flickerRate=3..22
+ * stars.flickerColor=darker       # none, same, darker, brighter
+ * stars.flickerBase=primary       # particle oder primary (erste Farbe des Ausbruchs)
+ * stars.flickerRandomChance=0.25  # stattdessen zufällige helle Farbe
+ * stars.flickerWhiteChance=0      # stattdessen weiß
+ * stars.glowRadius=2..5
+ * stars.tracerChance=1
+ * stars.tracerColor=primary       # particle oder primary
+ * stars.gravity=true
+ * stars.splitChance=0.1
+ * </pre>
+ *
+ * Die mitgelieferten Effekte liegen als Ressourcen unter
+ * {@code pr0bob/fireworks/effects}
+ */
+public class EffectTemplate {
+
+	/**
+	 * Herkunft der Farben einer Ebene
+	 */
+	public enum Palette {
+		/**
+		 * Orangetöne der Funken
+		 */
+		SPARK,
+		/**
+		 * Zufällige kräftige Feuerwerksfarben (durch feste Farben ersetzbar, siehe
+		 * {@link SpawnKernel#spawn(int, int, FireworksSimulation, java.awt.Color, java.awt.Color)})
+		 */
+		RANDOM,
+		/**
+		 * Feste Liste aus dem Template
+		 */
+		FIXED
+	}
+
+	/**
+	 * Farbe beim Flackern, abgeleitet von der Basisfarbe
+	 */
+	public enum Shade {
+		NONE, SAME, DARKER, BRIGHTER
+	}
+
+	/**
+	 * Basis für Flacker- und Tracer-Farbe
+	 */
+	public enum Base {
+		/**
+		 * Farbe des Partikels
+		 */
+		PARTICLE,
+		/**
+		 * Erste Farbe des Ausbruchs
+		 */
+		PRIMARY
+	}
+
+	/**
+	 * Eine Ebene des Effekts, alle Werte sind nach dem Laden unveränderlich
+	 */
+	public static class Layer {
+		final String name;
+		final int countMin;
+		final int countMax;
+		final Palette palette;
+		final int[] fixedColors;
+		final int colors;
+		final double velocityXMin;
+		final double velocityXMax;
+		final double velocityYMin;
+		final double velocityYMax;
+		final double angleMin;
+		final double angleMax;
+		final double variantChance;
+		final double variantVelocityXMin;
+		final double variantVelocityXMax;
+		final double variantAngleMin;
+		final double variantAngleMax;
+		final int variantSpreadMin;
+		final int variantSpreadMax;
+		final int lifetimeMin;
+		final int lifetimeMax;
+		final int flickerRateMin;
+		final int flickerRateMax;
+		final Shade flickerShade;
+		final Base flickerBase;
+		final double flickerRandomChance;
+		final double flickerWhiteChance;
+		final int glowRadiusMin;
+		final int glowRadiusMax;
+		final double tracerChance;
+		final Base tracerBase;
+		final boolean gravity;
+		final double splitChance;
+
+		private Layer(String name, Properties p) {
+			this.name = name;
+			String prefix = name + ".";
+			int[] count = intRange(p, prefix + "count", "1");
+			countMin = count[0];
+			countMax = count[1];
+
+			String paletteValue = value(p, prefix + "palette", "random");
+			if (paletteValue.startsWith("#")) {
+				palette = Palette.FIXED;
+				String[] hex = paletteValue.split(",");
+				fixedColors = new int[hex.length];
+				for (int i = 0; i < hex.length; i++) {
+					try {
+						fixedColors[i] = 0xFF000000 | Integer.decode(hex[i].trim());
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException(prefix + "palette: keine Farbe: " + hex[i]);
+					}
+				}
+			} else {
+				palette = enumValue(Palette.class, prefix + "palette", paletteValue);
+				fixedColors = new int[0];
+			}
+			colors = intRange(p, prefix + "colors", "1")[0];
+			if (colors < 0) {
+				throw new IllegalArgumentException(prefix + "colors < 0: " + colors);
+			}
+
+			double[] vx = doubleRange(p, prefix + "velocityX", "0");
+			double[] vy = doubleRange(p, prefix + "velocityY", "0");
+			double[] angle = doubleRange(p, prefix + "angle", "0..360");
+			velocityXMin = vx[0];
+			velocityXMax = vx[1];
+			velocityYMin = vy[0];
+			velocityYMax = vy[1];
+			angleMin = angle[0];
+			angleMax = angle[1];
+
+			variantChance = chance(p, prefix + "variantChance", "0");
+			double[] variantVx = doubleRange(p, prefix + "variant.velocityX", p.getProperty(prefix + "velocityX", "0"));
+			double[] variantAngle = doubleRange(p, prefix + "variant.angle", p.getProperty(prefix + "angle", "0..360"));
+			variantVelocityXMin = variantVx[0];
+			variantVelocityXMax = variantVx[1];
+			variantAngleMin = variantAngle[0];
+			variantAngleMax = variantAngle[1];
+			int[] variantSpread = intRange(p, prefix + "variant.spread", "0");
+			variantSpreadMin = variantSpread[0];
+			variantSpreadMax = variantSpread[1];
+
+			int[] lifetime = intRange(p, prefix + "lifetime", "20");
+			lifetimeMin = lifetime[0];
+			lifetimeMax = lifetime[1];
+			if (lifetimeMin < 1) {
+				throw new IllegalArgumentException(prefix + "lifetime < 1: " + lifetimeMin);
+			}
+
+			int[] flickerRate = intRange(p, prefix + "flickerRate", "0");
+			flickerRateMin = flickerRate[0];
+			flickerRateMax = flickerRate[1];
+			flickerShade = enumValue(Shade.class, prefix + "flickerColor", p.getProperty(prefix + "flickerColor", "darker"));
+			flickerBase = enumValue(Base.class, prefix + "flickerBase", p.getProperty(prefix + "flickerBase", "particle"));
+			flickerRandomChance = chance(p, prefix + "flickerRandomChance", "0");
+			flickerWhiteChance = chance(p, prefix + "flickerWhiteChance", "0");
+
+			int[] glow = intRange(p, prefix + "glowRadius", "0");
+			glowRadiusMin = glow[0];
+			glowRadiusMax = glow[1];
+
+			tracerChance = chance(p, prefix + "tracerChance", "1");
+			tracerBase = enumValue(Base.class, prefix + "tracerColor", p.getProperty(prefix + "tracerColor", "particle"));
+			gravity = Boolean.parseBoolean(value(p, prefix + "gravity", "true"));
+			splitChance = chance(p, prefix + "splitChance", "0");
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private final String name;
+	private final List<Layer> layers;
+
+	private EffectTemplate(String name, List<Layer> layers) {
+		this.name = name;
+		this.layers = Collections.unmodifiableList(layers);
+	}
+
+	/**
+	 * Liest ein Template aus Properties
+	 *
+	 * @param name       - Name des Effekts
+	 * @param properties - Beschreibung (siehe Klassenbeschreibung)
+	 * @throws IllegalArgumentException - Bei ungültigen Werten
+	 */
+	public static EffectTemplate fromProperties(String name, Properties properties) {
+		String layerNames = properties.getProperty("layers");
+		if (layerNames == null || layerNames.isBlank()) {
+			throw new IllegalArgumentException(name + ": layers fehlt");
+		}
+		List<Layer> layers = new ArrayList<>();
+		for (String layer : layerNames.split(",")) {
+			try {
+				layers.add(new Layer(layer.trim(), properties));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+			}
+		}
+		return new EffectTemplate(name, layers);
+	}
+
+	/**
+	 * Liest ein Template aus einer Datei, der Name ist der Dateiname ohne Endung
+	 */
+	public static EffectTemplate load(File file) throws IOException {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		try (InputStream in = new FileInputStream(file)) {
+			return read(dot > 0 ? name.substring(0, dot) : name, in);
+		}
+	}
+
+	/**
+	 * Liest eines der mitgelieferten Templates ({@code effects/<name>.properties}
+	 * neben dieser Klasse)
+	 */
+	public static EffectTemplate loadResource(String name) throws IOException {
+		try (InputStream in = EffectTemplate.class.getResourceAsStream("effects/" + name + ".properties")) {
+			if (in == null) {
+				throw new IOException("Effekt nicht gefunden: " + name);
+			}
+			return read(name, in);
+		}
+	}
+
+	private static EffectTemplate read(String name, InputStream in) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		return fromProperties(name, properties);
+	}
+
+	/**
+	 * Übersetzt das Template in eine Spawn-Routine
+	 */
+	public SpawnKernel compile() {
+		return new SpawnKernel(this);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Layer> getLayers() {
+		return layers;
+	}
+
+	/*
+	 * Hilfsfunktionen zum Lesen der Werte, Kommentare am Zeilenende ("# ...")
+	 * werden ignoriert
+	 */
+
+	private static String value(Properties p, String key, String defaultValue) {
+		String value = p.getProperty(key, defaultValue);
+		int comment = value.indexOf(" #");
+		return (comment >= 0 ? value.substring(0, comment) : value).trim();
+	}
+
+	private static int[] intRange(Properties p, String key, String defaultValue) {
+		String value = value(p, key, defaultValue);
+		try {
+			int dots = value.indexOf("..");
+			int min = Integer.parseInt((dots < 0 ? value : value.substring(0, dots)).trim());
+			int max = dots < 0 ? min : Integer.parseInt(value.substring(dots + 2).trim());
+			if (max < min) {
+				throw new IllegalArgumentException(key + ": max < min: " + value);
+			}
+			return new int[] { min, max };
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + ": keine Zahl: " + value);
+		}
+	}
+
+	private static double[] doubleRange(Properties p, String key, String defaultValue) {
+		String value = value(p, key, defaultValue);
+		try {
+			int dots = value.indexOf("..");
+			double min = Double.parseDouble((dots < 0 ? value : value.substring(0, dots)).trim());
+			double max = dots < 0 ? min : Double.parseDouble(value.substring(dots + 2).trim());
+			if (max < min) {
+				throw new IllegalArgumentException(key + ": max < min: " + value);
+			}
+			return new double[] { min, max };
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + ": keine Zahl: " + value);
+		}
+	}
+
+	private static double chance(Properties p, String key, String defaultValue) {
+		String value = value(p, key, defaultValue);
+		try {
+			double chance = Double.parseDouble(value);
+			if (chance < 0 || chance > 1) {
+				throw new IllegalArgumentException(key + " nicht zwischen 0 und 1: " + value);
+			}
+			return chance;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + ": keine Zahl: " + value);
+		}
+	}
+
+	private static <E extends Enum<E>> E enumValue(Class<E> type, String key, String value) {
+		String v = value;
+		int comment = v.indexOf(" #");
+		v = (comment >= 0 ? v.substring(0, comment) : v).trim();
+		try {
+			return Enum.valueOf(type, v.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(key + ": unbekannter Wert: " + v);
+		}
+	}
+}
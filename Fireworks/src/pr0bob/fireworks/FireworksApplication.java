@@ -2,17 +2,25 @@ package pr0bob.fireworks;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 
+import javax.management.JMException;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 /**
  * Umschließende Anwendung
  */
-public class FireworksApplication extends JFrame implements MouseMotionListener, MouseListener, ActionListener {
+public class FireworksApplication extends JFrame implements MouseMotionListener, MouseListener, KeyListener, ActionListener {
 
 	/**
 	 * Wenn {@code true} feuern alle paar Sekunden automatisch zufällig generierte
@@ -21,23 +29,59 @@ public class FireworksApplication extends JFrame implements MouseMotionListener,
 	private static final boolean AUTO_MODE = true;
 
 	/**
-	 * Timer für die Auto-Raketen (Zeit in ms)
+	 * Intervall (in ms) und Wahrscheinlichkeit für die Auto-Raketen
 	 */
-	Timer autoModeTimer = new Timer(1500, this);
+	static final int AUTO_MODE_INTERVAL = 1500;
+	static final double AUTO_MODE_CHANCE = 0.75;
+
+	/**
+	 * Timer für die Auto-Raketen
+	 */
+	Timer autoModeTimer = new Timer(AUTO_MODE_INTERVAL, this);
 
 	/**
 	 * Das Hauptdisplay der Anwendung auf dem alle Darstellung stattfindet (JPanel)
 	 */
 	private Display display;
 
-	public static void main(String[] args) {
-		new FireworksApplication();
+	/**
+	 * Mit {@code --show skript} läuft eine Choreografie ({@link ShowSchedule})
+	 * statt der Auto-Raketen. Mit {@code --record datei} wird die Show
+	 * aufgezeichnet und kann danach mit dem {@link HeadlessRenderer}
+	 * ({@code --replay datei}, ggf. mit dem gleichen {@code --show}) wiederholt
+	 * werden. {@code --effects verzeichnis} lädt zusätzliche
+	 * {@link EffectTemplate}s für das Skript
+	 */
+	public static void main(String[] args) throws IOException {
+		String record = null;
+		String show = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if ("--record".equals(args[i])) {
+				record = args[i + 1];
+			} else if ("--show".equals(args[i])) {
+				show = args[i + 1];
+			} else if ("--effects".equals(args[i])) {
+				FireworksFactory.loadEffects(new File(args[i + 1]));
+			} else {
+				throw new IllegalArgumentException("Unbekannte Option: " + args[i]);
+			}
+		}
+		new FireworksApplication(record, show);
+	}
+
+	public FireworksApplication() throws IOException {
+		this(null, null);
 	}
 
 	/**
 	 * Constructor der eigentlichen Anwendung
+	 * 
+	 * @param recordFile - Datei für die Aufnahme der Show oder {@code null}
+	 * @param showFile   - Skript der Choreografie oder {@code null} für den
+	 *                   Auto-Modus
+	 * @throws IOException - Wenn das Skript nicht gelesen werden kann
 	 */
-	public FireworksApplication() {
+	public FireworksApplication(String recordFile, String showFile) throws IOException {
 		setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
 
 		// Panel wird in die Mitte des Bildschirms gesetzt mit 1/2 Maß der Auflösung
@@ -52,12 +96,30 @@ public class FireworksApplication extends JFrame implements MouseMotionListener,
 
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		addKeyListener(this);
 		setVisible(true);
 
 		display = new Display(getContentPane().getWidth(), getContentPane().getHeight());
 		add(display);
 
-		if (AUTO_MODE) { // Wenn Auto-Mode, dann Timer starten bei Programmstart
+		if (recordFile != null) {
+			startRecording(recordFile);
+		}
+
+		if (showFile != null) {
+			ShowSchedule show = ShowSchedule.load(showFile, display.getSimulation().getClock());
+			// Die Show startet im Thread der Simulation
+			SwingUtilities.invokeLater(() -> display.getSimulation().setShow(show));
+		}
+
+		// Messwerte über JMX bereitstellen (z.B. für JConsole)
+		try {
+			FireworksMonitor.register(display);
+		} catch (JMException e) {
+			System.err.println("JMX-Monitor konnte nicht angemeldet werden: " + e.getMessage());
+		}
+
+		if (AUTO_MODE && showFile == null) { // Wenn Auto-Mode, dann Timer starten bei Programmstart
 			autoModeTimer.start();
 		}
 	}
@@ -66,14 +128,38 @@ public class FireworksApplication extends JFrame implements MouseMotionListener,
 		return display;
 	}
 
+	/**
+	 * Zeichnet die Show bis zum Schließen des Fensters auf
+	 */
+	private void startRecording(String file) {
+		FireworksSimulation simulation = display.getSimulation();
+		try {
+			simulation.setRecorder(new ShowRecorder(file, simulation));
+		} catch (IOException e) {
+			System.err.println("Aufnahme konnte nicht gestartet werden: " + e.getMessage());
+			return;
+		}
+		// Wird vor dem Beenden durch EXIT_ON_CLOSE im Thread der Simulation aufgerufen
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				try {
+					simulation.getRecorder().close(simulation.getCurrentTick());
+				} catch (IOException ex) {
+					System.err.println("Aufnahme unvollständig: " + ex.getMessage());
+				}
+			}
+		});
+	}
+
 	/**
 	 * Dient nur zum intervallartigen Erstellen neuer Raketen auf dem Display
 	 */
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		if (AUTO_MODE && e.getSource().equals(autoModeTimer)) {
-			if (MathUtils.randomChance(0.75)) {
-				display.addRocket();
+			if (MathUtils.randomChance(AUTO_MODE_CHANCE)) {
+				display.getSimulation().addRocket();
 			}
 		}
 	}
@@ -81,22 +167,43 @@ public class FireworksApplication extends JFrame implements MouseMotionListener,
 	/*
 	 * MouseListener für die manuellen Funktionen Klick = Abschuss Halten =
 	 * Leuchtspur/Funken Loslassen = Explosion Analog zu dem was die Rocket-Klasse
-	 * eigenständig tut
+	 * eigenständig tut. Die Effekte werden nur eingereiht und im nächsten
+	 * Simulationsschritt erzeugt
 	 */
 
 	@Override
 	public void mousePressed(MouseEvent e) {
-		display.getParticles().addAll(FireworksFactory.getShotSparks(e.getX(), e.getY(), display));
+		display.getSimulation().getSpawnQueue().offer(SpawnQueue.Effect.SHOT_SPARKS, e.getX(), e.getY());
 	}
 
 	@Override
 	public void mouseReleased(MouseEvent e) {
-		display.getParticles().addAll(FireworksFactory.getFireworksExplosion(e.getX(), e.getY(), display));
+		display.getSimulation().getSpawnQueue().offer(SpawnQueue.Effect.EXPLOSION, e.getX(), e.getY());
 	}
 
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		display.getParticles().addAll(FireworksFactory.getTrailSparks(e.getX(), e.getY(), display));
+		display.getSimulation().getSpawnQueue().offer(SpawnQueue.Effect.TRAIL_SPARKS, e.getX(), e.getY());
+	}
+
+	/**
+	 * F3 blendet das Statistik-Overlay ein/aus
+	 */
+	@Override
+	public void keyPressed(KeyEvent e) {
+		if (e.getKeyCode() == KeyEvent.VK_F3) {
+			display.setStatsOverlayVisible(!display.isStatsOverlayVisible());
+		}
+	}
+
+	@Override
+	public void keyReleased(KeyEvent e) {
+		//
+	}
+
+	@Override
+	public void keyTyped(KeyEvent e) {
+		//
 	}
 
 	@Override
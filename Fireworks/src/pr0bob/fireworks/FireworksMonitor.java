@@ -0,0 +1,140 @@
+package pr0bob.fireworks;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Stellt die Messwerte eines Displays über JMX bereit
+ */
+public class FireworksMonitor implements FireworksMonitorMBean {
+
+	public static final String OBJECT_NAME = "pr0bob.fireworks:type=FireworksMonitor";
+
+	private static final FrameStats.Phase[] PHASES = FrameStats.Phase.values();
+
+	private final Display display;
+	private final FireworksSimulation simulation;
+
+	public FireworksMonitor(Display display) {
+		this.display = display;
+		this.simulation = display.getSimulation();
+	}
+
+	/**
+	 * Meldet den Monitor für das Display beim Plattform-MBeanServer an, ein
+	 * bereits vorhandener Monitor wird ersetzt
+	 * 
+	 * @throws JMException
+	 */
+	public static ObjectName register(Display display) throws JMException {
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new FireworksMonitor(display), name);
+		return name;
+	}
+
+	@Override
+	public int getParticleCount() {
+		return simulation.getParticles().size();
+	}
+
+	@Override
+	public int getRocketCount() {
+		return simulation.getRockets().size();
+	}
+
+	@Override
+	public long getTick() {
+		return simulation.getCurrentTick();
+	}
+
+	@Override
+	public double getFramesPerSecond() {
+		return simulation.getFrameStats().getFramesPerSecond();
+	}
+
+	@Override
+	public double getAllocationRateMBPerSecond() {
+		double rate = simulation.getFrameStats().getAllocationRate();
+		return rate < 0 ? -1 : rate / (1024 * 1024);
+	}
+
+	@Override
+	public String[] getPhases() {
+		String[] names = new String[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			names[i] = PHASES[i].name();
+		}
+		return names;
+	}
+
+	@Override
+	public double[] getP50Millis() {
+		double[] values = new double[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			values[i] = simulation.getFrameStats().getP50(PHASES[i]) / 1e6;
+		}
+		return values;
+	}
+
+	@Override
+	public double[] getP99Millis() {
+		double[] values = new double[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			values[i] = simulation.getFrameStats().getP99(PHASES[i]) / 1e6;
+		}
+		return values;
+	}
+
+	@Override
+	public double[] getMaxMillis() {
+		double[] values = new double[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++) {
+			values[i] = simulation.getFrameStats().getMax(PHASES[i]) / 1e6;
+		}
+		return values;
+	}
+
+	@Override
+	public double getFrameP99Millis() {
+		return simulation.getFrameStats().getFrameP99() / 1e6;
+	}
+
+	@Override
+	public String getSlowestPhase() {
+		return simulation.getFrameStats().getSlowestPhase().name();
+	}
+
+	@Override
+	public long getRejectedParticles() {
+		return simulation.getParticles().getRejected();
+	}
+
+	@Override
+	public long getDroppedSpawns() {
+		return simulation.getSpawnQueue().getDropped();
+	}
+
+	@Override
+	public double getDroppedSimulationSeconds() {
+		return simulation.getClock().getDroppedNanos() / 1e9;
+	}
+
+	@Override
+	public int getQualityLevel() {
+		return simulation.getQualityGovernor().getLevel();
+	}
+
+	@Override
+	public boolean isOverlayVisible() {
+		return display.isStatsOverlayVisible();
+	}
+
+	@Override
+	public void setOverlayVisible(boolean visible) {
+		display.setStatsOverlayVisible(visible);
+	}
+}
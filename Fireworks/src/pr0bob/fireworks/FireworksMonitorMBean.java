@@ -0,0 +1,44 @@
+package pr0bob.fireworks;
+/**
+ * JMX-Schnittstelle für die Laufzeitwerte eines Displays (z.B. in JConsole
+ * unter pr0bob.fireworks:type=FireworksMonitor)
+ */
+public interface FireworksMonitorMBean {
+
+	int getParticleCount();
+
+	int getRocketCount();
+
+	long getTick();
+
+	double getFramesPerSecond();
+
+	double getAllocationRateMBPerSecond();
+
+	/**
+	 * Namen der Phasen, gleiche Reihenfolge wie die Arrays der Zeiten
+	 */
+	String[] getPhases();
+
+	double[] getP50Millis();
+
+	double[] getP99Millis();
+
+	double[] getMaxMillis();
+
+	double getFrameP99Millis();
+
+	String getSlowestPhase();
+
+	long getRejectedParticles();
+
+	long getDroppedSpawns();
+
+	double getDroppedSimulationSeconds();
+
+	int getQualityLevel();
+
+	boolean isOverlayVisible();
+
+	void setOverlayVisible(boolean visible);
+}
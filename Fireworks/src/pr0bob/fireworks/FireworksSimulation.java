@@ -0,0 +1,462 @@
+package pr0bob.fireworks;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Zustand und Ablauf einer Show, unabhängig von jeder Ausgabe
+ *
+ * Die Simulation besitzt Uhr, Innenmaße, Partikel und Raketen und braucht weder
+ * ein Fenster noch ein Panel. Gezeichnet wird von {@link SimulationRenderer}n,
+ * die sich anmelden und nach jedem Schritt benachrichtigt werden. Ein Schritt
+ * kann so gleichzeitig z.B. ein Vorschaufenster ({@link Display}), einen
+ * Encoder und eine Aufnahme auf der Platte versorgen, ohne mehrfach simuliert
+ * zu werden:
+ *
+ * <pre>
+ * FireworksSimulation simulation = new FireworksSimulation(1920, 1080);
+ * Display preview = new Display(simulation, false);
+ * FrameRenderer encoder = new FrameRenderer(simulation, 1920, 1080);
+ * simulation.addRenderer(encoder);
+ * for (int i = 0; i &lt; frames; i++) {
+ * 	simulation.step();
+ * 	preview.repaint();
+ * 	encoder.composeFrame(1.0);
+ * 	simulation.frameFinished();
+ * 	// encoder.getFrame() weiterreichen
+ * }
+ * </pre>
+ *
+ * Nicht threadsicher: Schritte, Renderer und Effekte direkt über die
+ * {@link FireworksFactory} laufen alle im gleichen Thread, Effekte von anderen
+ * Threads gehen über die {@link SpawnQueue}. Ein angehängtes {@link Display}
+ * setzt sein Bild deshalb ebenfalls in diesem Thread zusammen und gibt dem EDT
+ * nur eine Kopie. Renderer dürfen von jedem Thread an- und abgemeldet werden
+ */
+public class FireworksSimulation {
+
+	/**
+	 * Uhr der Simulation, gibt vor wie viele Schritte pro Frame simuliert werden
+	 */
+	private final SimulationClock clock = new SimulationClock();
+
+	/*
+	 * Speicher für Partikel und Liste der Raketen, werden automatisch geleert
+	 * andhand der Lebenszeit bzw. des "alive" Parameters der Objekte
+	 */
+	private final ParticleStore particles = new ParticleStore();
+	private final ArrayList<Rocket> rockets = new ArrayList<>();
+
+	/**
+	 * Zeiger für das Erzeugen neuer Partikel
+	 */
+	private final Particle spawnCursor = new Particle(this);
+
+	/**
+	 * Verteilt das Update der Partikel auf mehrere Threads
+	 */
+	private final ParticleUpdater updater = new ParticleUpdater(this);
+
+	/**
+	 * Ränder und Hindernisse an denen die Partikel abprallen
+	 */
+	private final CollisionWorld collisionWorld;
+
+	/**
+	 * Raster für Nachbarschaftsabfragen, wird nur aufgebaut wenn eingeschaltet
+	 */
+	private final ParticleGrid particleGrid = new ParticleGrid();
+
+	/**
+	 * Effekte von außerhalb der Simulation (Maus, andere Threads), werden zu
+	 * Beginn jedes Schritts erzeugt
+	 */
+	private final SpawnQueue spawnQueue = new SpawnQueue();
+
+	/**
+	 * Zeitmessung der Phasen von Simulation und Rendern (aller Renderer)
+	 */
+	private final FrameStats frameStats = new FrameStats();
+
+	/**
+	 * Senkt bei zu langsamen Frames die Detailstufe der Effekte
+	 */
+	private final QualityGovernor qualityGovernor = new QualityGovernor();
+
+	/**
+	 * Kraftfelder die in jedem Schritt auf die Partikel wirken, als Array damit
+	 * die Threads des Updates ohne Synchronisation lesen können (wird bei jeder
+	 * Änderung neu angelegt)
+	 */
+	private ForceField[] forceFields = { UniformField.gravity(), new JitterField() };
+
+	/**
+	 * Angemeldete Renderer, wird wie die Kraftfelder bei jeder Änderung neu
+	 * angelegt (volatile, damit z.B. ein Display vom EDT aus abmelden kann)
+	 */
+	private volatile SimulationRenderer[] renderers = new SimulationRenderer[0];
+
+	private Dimension insideBounds;
+
+	/**
+	 * Salt für den Zufalls-Stream der Simulation ({@link MathUtils#seedFor(long)})
+	 */
+	private static final long RANDOM_SALT = 0x44697370L;
+
+	/*
+	 * Globaler Seed bei der Erstellung und aktueller Zustand des Zufalls-Streams
+	 * der Simulation, nur während step() im Stream des Threads
+	 */
+	private final long seed;
+	private long randomState;
+
+	/**
+	 * Anteil der Tracer (0.85 - 0.95) der im aktuellen Schritt erhalten bleibt
+	 */
+	private float tracerFade = 1;
+
+	/**
+	 * Zeichnet Eingriffe von außen auf, {@code null} wenn nicht aufgenommen wird
+	 */
+	private volatile ShowRecorder recorder;
+
+	/**
+	 * Choreografie die mit der Simulation abläuft, {@code null} wenn keine
+	 */
+	private ShowSchedule show;
+	private long showStartTick = 0;
+
+	/**
+	 * Erstellt eine Simulation mit dem aktuellen globalen Seed
+	 * ({@link MathUtils#getSeed()}). Der {@link QualityGovernor} ist aus, damit
+	 * die Ausgabe reproduzierbar ist, erst ein Echtzeit-Display schaltet ihn ein
+	 *
+	 * @param width  - Breite in Px
+	 * @param height - Höhe in Px
+	 */
+	public FireworksSimulation(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("size < 1: " + width + "x" + height);
+		}
+		insideBounds = new Dimension(width, height);
+		collisionWorld = new CollisionWorld(width, height);
+		seed = MathUtils.getSeed();
+		randomState = MathUtils.seedFor(RANDOM_SALT);
+		qualityGovernor.setEnabled(false);
+	}
+
+	/**
+	 * Innere Maße für Kollisionsabfragen mit den Rändern
+	 */
+	public Dimension getInsideBounds() {
+		return insideBounds;
+	}
+
+	public void setBounds(Dimension bounds) {
+		insideBounds = bounds;
+		collisionWorld.setBounds(bounds.width, bounds.height);
+	}
+
+	/**
+	 * Meldet einen Renderer an, er wird ab dem nächsten Schritt benachrichtigt
+	 */
+	public synchronized void addRenderer(SimulationRenderer renderer) {
+		if (renderer == null) {
+			throw new IllegalArgumentException("renderer == null");
+		}
+		SimulationRenderer[] list = Arrays.copyOf(renderers, renderers.length + 1);
+		list[list.length - 1] = renderer;
+		renderers = list;
+	}
+
+	public synchronized boolean removeRenderer(SimulationRenderer renderer) {
+		for (int i = 0; i < renderers.length; i++) {
+			if (renderers[i] == renderer) {
+				SimulationRenderer[] list = new SimulationRenderer[renderers.length - 1];
+				System.arraycopy(renderers, 0, list, 0, i);
+				System.arraycopy(renderers, i + 1, list, i, list.length - i);
+				renderers = list;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public List<SimulationRenderer> getRenderers() {
+		return Collections.unmodifiableList(Arrays.asList(renderers));
+	}
+
+	/**
+	 * Startet eine Rakete an einer zufälligen Stelle des unteren Rands, wie alle
+	 * Effekte von außen erst im nächsten Simulationsschritt
+	 */
+	public void addRocket() {
+		spawnQueue.offer(SpawnQueue.Effect.ROCKET, 0, 0);
+	}
+
+	/**
+	 * Erzeugt die Rakete aus {@link #addRocket()}, nur während eines Schritts
+	 */
+	void launchRocket() {
+		int width = insideBounds.width;
+		rockets.add(new Rocket(MathUtils.randInt((int) (width * 0.1), (int) (width * 0.9)), insideBounds.height, this));
+	}
+
+	/**
+	 * Lässt die Uhr bis zum gegebenen Zeitpunkt laufen und führt die fälligen
+	 * Schritte aus (Echtzeit-Betrieb)
+	 *
+	 * @param nowNanos - Aktuelle Zeit ({@link System#nanoTime()})
+	 * @return Anzahl der ausgeführten Schritte
+	 */
+	public int advance(long nowNanos) {
+		int steps = clock.advance(nowNanos);
+		for (int i = 0; i < steps; i++) {
+			step();
+		}
+		return steps;
+	}
+
+	/**
+	 * Führt einen Simulationsschritt aus: Raketen und Partikel bewegen, danach
+	 * zeichnen alle Renderer die neuen Spuren
+	 */
+	public void step() {
+		// Die Simulation zieht ihre Zufallszahlen aus einem eigenen Zustand, damit
+		// der Thread und Zufallszahlen außerhalb der Schritte keine Rolle spielen
+		RandomStream random = MathUtils.stream();
+		long savedState = random.getState();
+		random.setState(randomState);
+		try {
+			simulateStep();
+		} finally {
+			randomState = random.getState();
+			random.setState(savedState);
+		}
+	}
+
+	private void simulateStep() {
+		long t = System.nanoTime();
+		if (recorder != null) {
+			recorder.beforeStep(this, clock.getTick());
+		}
+		// Hier hält niemand Indizes der Palette, unbenutzte Farben können raus
+		particles.compactPalette();
+		// Neue Partikel nur an dieser Stelle, nie während des Updates
+		spawnQueue.drain(this);
+		if (show != null) {
+			show.launch(this, clock.getTick() - showStartTick);
+		}
+		updateRockets();
+		t = frameStats.record(FrameStats.Phase.ROCKETS, t);
+
+		collisionWorld.prepare();
+		if (particleGrid.isEnabled()) {
+			particleGrid.build(particles, collisionWorld.getWidth(), collisionWorld.getHeight(),
+					updater.getParallelPool());
+		}
+
+		// Update läuft parallel in Blöcken (siehe ParticleUpdater)
+		if (updater.update(clock.getTick()) > 0) {
+			cullDeadParticles();
+		}
+		frameStats.record(FrameStats.Phase.PARTICLE_UPDATE, t);
+
+		// Einmal für alle Renderer, damit die Folge der Zufallszahlen nicht von der
+		// Anzahl der Ausgaben abhängt
+		tracerFade = MathUtils.randFloat(0.85f, 0.95f);
+		for (SimulationRenderer renderer : renderers) {
+			renderer.afterStep(this, clock.getTick());
+		}
+
+		clock.step();
+	}
+
+	/**
+	 * Entfernt alle als tot markierten Partikel aus dem Speicher
+	 */
+	private void cullDeadParticles() {
+		int[] flags = particles.flags;
+		int i = 0;
+		while (i < particles.size()) {
+			if ((flags[i] & ParticleStore.FLAG_DEAD) != 0) {
+				// Das letzte Partikel rückt an diese Stelle und wird direkt im Anschluss
+				// geprüft
+				particles.remove(i);
+				flags = particles.flags;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	public void updateRockets() {
+		// Tote Raketen in einem Durchlauf entfernen, ohne Iterator und Hilfsliste
+		int alive = 0;
+		for (int i = 0; i < rockets.size(); i++) {
+			Rocket r = rockets.get(i);
+			if (r.isAlive()) {
+				r.update();
+				rockets.set(alive++, r);
+			}
+		}
+		for (int i = rockets.size() - 1; i >= alive; i--) {
+			rockets.remove(i);
+		}
+	}
+
+	/**
+	 * Schließt einen Frame in der Statistik ab und gibt die Zeit an den
+	 * {@link QualityGovernor} weiter. Wird einmal pro ausgegebenem Bild von dem
+	 * aufgerufen, der die Simulation antreibt (die Zeiten aller Renderer zählen
+	 * zu diesem Frame)
+	 */
+	public void frameFinished() {
+		qualityGovernor.frameFinished(frameStats.frameFinished());
+	}
+
+	/**
+	 * Aktueller Simulationsschritt, dient dazu die verbleibende Lebenszeit der
+	 * Raketen und Partikel zu bestimmen
+	 */
+	public long getCurrentTick() {
+		return clock.getTick();
+	}
+
+	/**
+	 * Anteil der Tracer der im aktuellen Schritt erhalten bleibt, für alle
+	 * Renderer gleich
+	 */
+	public float getTracerFade() {
+		return tracerFade;
+	}
+
+	public SimulationClock getClock() {
+		return clock;
+	}
+
+	public ParticleStore getParticles() {
+		return particles;
+	}
+
+	public ArrayList<Rocket> getRockets() {
+		return rockets;
+	}
+
+	public ParticleUpdater getUpdater() {
+		return updater;
+	}
+
+	public CollisionWorld getCollisionWorld() {
+		return collisionWorld;
+	}
+
+	public ParticleGrid getParticleGrid() {
+		return particleGrid;
+	}
+
+	public SpawnQueue getSpawnQueue() {
+		return spawnQueue;
+	}
+
+	public FrameStats getFrameStats() {
+		return frameStats;
+	}
+
+	public QualityGovernor getQualityGovernor() {
+		return qualityGovernor;
+	}
+
+	/**
+	 * Globaler Seed ({@link MathUtils#getSeed()}) bei der Erstellung der
+	 * Simulation, daraus leitet sich der komplette Ablauf ab
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	public ShowRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Meldet eine Aufnahme an (oder ab mit {@code null}), vor dem ersten Effekt
+	 * oder vom Thread der Simulation aus
+	 */
+	public void setRecorder(ShowRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public ShowSchedule getShow() {
+		return show;
+	}
+
+	/**
+	 * Startet eine Choreografie ab dem aktuellen Schritt (Zeit 0 im Skript),
+	 * {@code null} beendet sie. Nur vom Thread der Simulation aus, eine
+	 * angemeldete Aufnahme merkt sich den Schritt
+	 */
+	public void setShow(ShowSchedule show) {
+		this.show = show;
+		if (show != null) {
+			show.seek(0);
+			showStartTick = clock.getTick();
+		}
+		if (recorder != null) {
+			recorder.show(clock.getTick(), show != null);
+		}
+	}
+
+	/**
+	 * Registriert ein Kraftfeld, es wirkt ab dem nächsten Schritt nach den
+	 * bereits vorhandenen Feldern
+	 */
+	public void addForceField(ForceField field) {
+		if (field == null) {
+			throw new IllegalArgumentException("field == null");
+		}
+		ForceField[] fields = Arrays.copyOf(forceFields, forceFields.length + 1);
+		fields[fields.length - 1] = field;
+		forceFields = fields;
+	}
+
+	public boolean removeForceField(ForceField field) {
+		for (int i = 0; i < forceFields.length; i++) {
+			if (forceFields[i] == field) {
+				ForceField[] fields = new ForceField[forceFields.length - 1];
+				System.arraycopy(forceFields, 0, fields, 0, i);
+				System.arraycopy(forceFields, i + 1, fields, i, fields.length - i);
+				forceFields = fields;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Entfernt alle Kraftfelder, auch Gravitation und Jitter
+	 */
+	public void clearForceFields() {
+		forceFields = new ForceField[0];
+	}
+
+	public List<ForceField> getForceFields() {
+		return Collections.unmodifiableList(Arrays.asList(forceFields));
+	}
+
+	/**
+	 * Aktuelle Kraftfelder für den ParticleUpdater (nicht verändern)
+	 */
+	ForceField[] getForceFieldArray() {
+		return forceFields;
+	}
+
+	/**
+	 * Zeiger den die FireworksFactory zum Erzeugen neuer Partikel nutzt
+	 */
+	Particle getSpawnCursor() {
+		return spawnCursor;
+	}
+}
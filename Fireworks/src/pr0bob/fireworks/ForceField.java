@@ -0,0 +1,114 @@
+package pr0bob.fireworks;
+/**
+ * Kraftfeld das einmal pro Simulationsschritt auf die Geschwindigkeit der
+ * Partikel wirkt (Gravitation, Wind, Anziehung, Wirbel, ...)
+ * 
+ * Ein Feld bekommt immer einen ganzen Block des {@link ParticleStore} und
+ * arbeitet direkt auf den Arrays, pro Feld und Block gibt es also nur einen
+ * einzigen virtuellen Aufruf. Optional wirkt ein Feld nur in einem
+ * rechteckigen Bereich und/oder nur auf Partikel mit bestimmten Flags
+ * 
+ * Die Felder werden in der {@link FireworksSimulation} registriert und vom
+ * {@link ParticleUpdater} parallel für mehrere Blöcke aufgerufen, apply() darf
+ * daher nur die Partikel im übergebenen Bereich verändern. Eigene Felder
+ * (auch außerhalb dieses Pakets) überschreiben
+ * {@link #apply(ParticleStore, int, int, long)} und lesen und schreiben die
+ * Partikel über die Zugriffsmethoden des {@link ParticleStore}
+ */
+public abstract class ForceField {
+
+	private boolean bounded = false;
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+
+	/**
+	 * Nur Partikel bei denen alle diese Flags gesetzt sind, sind betroffen
+	 */
+	private final int requiredFlags;
+
+	protected ForceField() {
+		this(0);
+	}
+
+	/**
+	 * @param requiredFlags - Flags aus {@link ParticleStore} die ein Partikel
+	 *                      haben muss (0 = alle Partikel)
+	 */
+	protected ForceField(int requiredFlags) {
+		this.requiredFlags = requiredFlags;
+	}
+
+	/**
+	 * Wendet das Feld auf die Partikel im Bereich [from, to) an
+	 * 
+	 * Wird einmal pro Schritt und Block aufgerufen, für verschiedene Blöcke
+	 * gleichzeitig aus mehreren Threads. Deshalb gilt:
+	 * <ul>
+	 * <li>nur die Geschwindigkeit der Partikel in [from, to) ändern, keine
+	 * Partikel anlegen oder entfernen</li>
+	 * <li>nur Partikel beeinflussen, für die {@link #affects(ParticleStore, int)}
+	 * {@code true} liefert</li>
+	 * <li>Zustand des Feldes nur lesen (er darf sich zwischen den Schritten
+	 * ändern, nicht während eines Aufrufs)</li>
+	 * <li>Zufallszahlen nur aus {@link MathUtils#stream()}, der Stream ist für
+	 * den Block deterministisch gesetzt und das Ergebnis hängt nicht von der
+	 * Anzahl der Threads ab</li>
+	 * <li>nichts allokieren, der Aufruf liegt im eingeschwungenen Frame</li>
+	 * </ul>
+	 * 
+	 * @param store - Partikel
+	 * @param from  - Erster Index
+	 * @param to    - Index hinter dem letzten Partikel
+	 * @param tick  - Aktueller Simulationsschritt
+	 */
+	protected abstract void apply(ParticleStore store, int from, int to, long tick);
+
+	/**
+	 * {@code true} wenn das Feld auf das Partikel wirkt (Flags und Bereich)
+	 */
+	protected final boolean affects(ParticleStore store, int i) {
+		if ((store.flags[i] & requiredFlags) != requiredFlags) {
+			return false;
+		}
+		if (!bounded) {
+			return true;
+		}
+		double x = store.posX[i];
+		double y = store.posY[i];
+		return x >= minX && x < maxX && y >= minY && y < maxY;
+	}
+
+	/**
+	 * Beschränkt das Feld auf einen rechteckigen Bereich
+	 * 
+	 * @return this
+	 */
+	public ForceField setBounds(double x, double y, double width, double height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Ungültige Größe: " + width + "x" + height);
+		}
+		minX = x;
+		minY = y;
+		maxX = x + width;
+		maxY = y + height;
+		bounded = true;
+		return this;
+	}
+
+	/**
+	 * Hebt die Beschränkung auf, das Feld wirkt wieder überall
+	 */
+	public void clearBounds() {
+		bounded = false;
+	}
+
+	public boolean isBounded() {
+		return bounded;
+	}
+
+	public int getRequiredFlags() {
+		return requiredFlags;
+	}
+}
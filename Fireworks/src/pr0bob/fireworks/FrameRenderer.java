@@ -0,0 +1,326 @@
+package pr0bob.fireworks;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Setzt die Bilder einer {@link FireworksSimulation} zusammen, ohne Fenster
+ *
+ * Hält die Ebenen (Background > Tracer > Partikel) und das fertige Bild in
+ * eigenen Buffern. Die Tracer werden nach jedem Schritt nachgezogen
+ * ({@link #afterStep}), das Bild wird mit {@link #composeFrame(double)} nur bei
+ * Bedarf zusammengesetzt. Mehrere Renderer (z.B. Vorschau und Encoder) können
+ * an derselben Simulation hängen, jeder hat seine eigenen Buffer und Sprites.
+ * Gezeichnet wird 1:1 in Koordinaten der Simulation, ein Renderer der kleiner
+ * als deren Innenmaße ist zeigt nur einen Ausschnitt, bei einem größeren bleibt
+ * der Rest schwarz
+ *
+ * Nicht threadsicher, läuft im Thread der Simulation
+ */
+public class FrameRenderer implements SimulationRenderer {
+
+	/**
+	 * Art wie die Partikel und Tracer gezeichnet werden
+	 */
+	public enum RenderBackend {
+		/**
+		 * Über die Graphics2D-Aufrufe von Java2D (Vergleich und Fehlersuche, die
+		 * Alpha-Pipeline von Java2D allokiert bei jedem Aufruf)
+		 */
+		JAVA2D,
+		/**
+		 * Direkt in das int-Raster der Buffer (siehe {@link RasterRenderer}),
+		 * Standard und im eingeschwungenen Zustand ohne Allokationen
+		 */
+		RASTER
+	}
+
+	private RenderBackend renderBackend = RenderBackend.RASTER;
+
+	private final FireworksSimulation simulation;
+
+	/**
+	 * Zeichnet Partikel und Tracer im RASTER-Backend kachelweise auf mehreren
+	 * Threads
+	 */
+	private final TileRasterizer tileRasterizer = new TileRasterizer();
+
+	/**
+	 * Blendet die Tracer-Ebene aus (bei großen Flächen auf mehreren Threads)
+	 */
+	private final RasterRenderer.Fader tracerFader = new RasterRenderer.Fader();
+
+	/*
+	 * Buffer für die Darstellungsebenen (Background > Tracer > Partikel) und das
+	 * daraus zusammengesetzte Bild
+	 */
+	private BufferedImage particleBuffer;
+	private BufferedImage tracerBuffer;
+	private BufferedImage background;
+	private BufferedImage frameBuffer;
+
+	/**
+	 * Nach so vielen Schritten ohne neue Spur ist eine Kachel der Tracer-Ebene
+	 * sicher komplett ausgeblendet (ein voller Kanal ist beim schwächsten Fade
+	 * nach 61 Schritten bei 0)
+	 */
+	static final int TRACER_TILE_STEPS = 64;
+
+	/*
+	 * Zuletzt bemalte Kacheln der Partikel-Ebene (Zeitstempel = Frame) und der
+	 * Tracer-Ebene (Zeitstempel = Simulationsschritt). Nur diese Bereiche werden
+	 * geleert, ausgeblendet und neu zusammengesetzt
+	 */
+	private DirtyTiles particleTiles;
+	private DirtyTiles tracerTiles;
+	private int[] spans;
+	private final Rectangle dirtyBounds = new Rectangle();
+	private long frame = 0;
+	private long lastCompositeTick = 0;
+	private boolean fullComposite = true;
+
+	/**
+	 * Zeiger in den Partikel-Speicher zum Zeichnen
+	 */
+	private final Particle drawCursor;
+
+	/**
+	 * Cache für die Leuchten-Sprites aller Partikel dieses Renderers
+	 */
+	private final GlowSpriteCache glowCache = new GlowSpriteCache();
+
+	/**
+	 * Der Renderer muss noch mit {@link FireworksSimulation#addRenderer} angemeldet
+	 * werden, sonst bleiben die Tracer leer
+	 *
+	 * @param simulation - Simulation die gezeichnet wird
+	 * @param width      - Breite des Bilds in Px
+	 * @param height     - Höhe des Bilds in Px
+	 */
+	public FrameRenderer(FireworksSimulation simulation, int width, int height) {
+		this.simulation = simulation;
+		drawCursor = new Particle(simulation);
+		resize(width, height);
+	}
+
+	/**
+	 * Erstellt die Buffer neu und füllt den Hintergrund, die bisherigen Tracer
+	 * gehen dabei verloren
+	 */
+	public void resize(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("size < 1: " + width + "x" + height);
+		}
+		background = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		particleBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		tracerBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		frameBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+
+		particleTiles = new DirtyTiles(width, height);
+		tracerTiles = new DirtyTiles(width, height);
+		spans = new int[Math.max(particleTiles.maxSpans(), 1) * 4];
+		fullComposite = true;
+
+		Graphics2D g2d = (Graphics2D) background.getGraphics();
+		g2d.setColor(Color.black);
+		g2d.fillRect(0, 0, width, height);
+		g2d.dispose();
+	}
+
+	/**
+	 * Blendet die Tracer aus und zeichnet die neuen Spuren des Schritts
+	 */
+	@Override
+	public void afterStep(FireworksSimulation simulation, long tick) {
+		FrameStats frameStats = simulation.getFrameStats();
+		long t = System.nanoTime();
+		// Tracer werden mit jedem Schritt teilweise weg-gefaded, aber nur in Kacheln
+		// die noch Spuren enthalten können
+		fadeTracerTiles(tick);
+		t = frameStats.record(FrameStats.Phase.TRACER_FADE, t);
+		if (renderBackend == RenderBackend.RASTER) {
+			tileRasterizer.drawTracers(simulation.getParticles(), tracerBuffer,
+					simulation.getUpdater().getParallelPool());
+			markTracers(tick);
+		} else {
+			Graphics2D tracerG = tracerBuffer.createGraphics();
+			drawTracers(tracerG, tick);
+			tracerG.dispose();
+		}
+		frameStats.record(FrameStats.Phase.TRACER_DRAW, t);
+	}
+
+	/**
+	 * Zeichnet die Partikel neu und setzt das Bild nur in den Kacheln neu
+	 * zusammen, in denen sich Partikel- oder Tracer-Ebene geändert haben. Der
+	 * Frame wird in der Statistik nicht abgeschlossen, das macht wer die
+	 * Simulation antreibt ({@link FireworksSimulation#frameFinished()})
+	 *
+	 * @param alpha - Anteil (0.0 - 1.0) zwischen letztem und aktuellem
+	 *              Simulationsschritt, an dem die Partikel gezeichnet werden
+	 * @return Umschließendes Rechteck aller geänderten Bereiche (wird beim
+	 *         nächsten Aufruf wiederverwendet)
+	 */
+	public Rectangle composeFrame(double alpha) {
+		FrameStats frameStats = simulation.getFrameStats();
+		long t = System.nanoTime();
+		frame++;
+
+		// Nur die Kacheln des letzten Frames leeren, der Buffer bleibt bestehen
+		int count = particleTiles.spans(frame - 1, spans);
+		RasterRenderer.clear(particleBuffer, spans, count);
+		if (renderBackend == RenderBackend.RASTER) {
+			tileRasterizer.drawParticles(simulation.getParticles(), particleBuffer, alpha, glowCache,
+					simulation.getUpdater().getParallelPool());
+			markParticles();
+		} else {
+			Graphics2D particleG = particleBuffer.createGraphics();
+			drawParticles(particleG, alpha);
+			particleG.dispose();
+			glowCache.recycleEvicted();
+		}
+		t = frameStats.record(FrameStats.Phase.PARTICLE_DRAW, t);
+
+		/*
+		 * Ebenen zusammensetzen, wo Partikel waren oder sind und wo sich die Tracer
+		 * seit dem letzten Bild geändert haben
+		 */
+		long tick = simulation.getCurrentTick();
+		if (fullComposite) {
+			count = 1;
+			spans[0] = 0;
+			spans[1] = 0;
+			spans[2] = frameBuffer.getWidth();
+			spans[3] = frameBuffer.getHeight();
+			fullComposite = false;
+		} else {
+			long tracerSince = tick > lastCompositeTick ? lastCompositeTick - TRACER_TILE_STEPS - 1
+					: Long.MAX_VALUE;
+			count = DirtyTiles.spans(particleTiles, frame - 1, tracerTiles, tracerSince, spans);
+		}
+		lastCompositeTick = tick;
+		RasterRenderer.composite(frameBuffer, background, tracerBuffer, particleBuffer, spans, count);
+		frameStats.record(FrameStats.Phase.BLIT, t);
+
+		return DirtyTiles.bounds(spans, count, dirtyBounds);
+	}
+
+	private void drawParticles(Graphics2D particleG, double alpha) {
+		ParticleStore particles = simulation.getParticles();
+		Particle p = drawCursor;
+		for (int i = 0; i < particles.size(); i++) {
+			p.at(i).draw(particleG, alpha, glowCache);
+			markParticle(particles, i);
+		}
+	}
+
+	private void markParticles() {
+		ParticleStore particles = simulation.getParticles();
+		for (int i = 0; i < particles.size(); i++) {
+			markParticle(particles, i);
+		}
+	}
+
+	/**
+	 * Markiert die Kacheln die Partikel i (samt Leuchten) in diesem Frame berühren
+	 * kann, für jedes alpha zwischen letzter und aktueller Position
+	 */
+	private void markParticle(ParticleStore particles, int i) {
+		int r = particles.glowRadius[i] + 1;
+		double x0 = particles.lastX[i];
+		double x1 = particles.posX[i];
+		double y0 = particles.lastY[i];
+		double y1 = particles.posY[i];
+		particleTiles.mark((int) Math.min(x0, x1) - r, (int) Math.min(y0, y1) - r, (int) Math.max(x0, x1) + r,
+				(int) Math.max(y0, y1) + r, frame);
+	}
+
+	private void drawTracers(Graphics2D tracerG, long tick) {
+		ParticleStore particles = simulation.getParticles();
+		Particle p = drawCursor;
+		for (int i = 0; i < particles.size(); i++) {
+			p.at(i).drawTracer(tracerG);
+			markTracer(particles, i, tick);
+		}
+	}
+
+	private void markTracers(long tick) {
+		ParticleStore particles = simulation.getParticles();
+		for (int i = 0; i < particles.size(); i++) {
+			markTracer(particles, i, tick);
+		}
+	}
+
+	private void markTracer(ParticleStore particles, int i, long tick) {
+		if ((particles.flags[i] & ParticleStore.FLAG_TRACER) == 0) {
+			return;
+		}
+		double x0 = particles.lastX[i];
+		double x1 = particles.posX[i];
+		double y0 = particles.lastY[i];
+		double y1 = particles.posY[i];
+		tracerTiles.mark((int) Math.min(x0, x1) - 1, (int) Math.min(y0, y1) - 1, (int) Math.max(x0, x1) + 1,
+				(int) Math.max(y0, y1) + 1, tick);
+	}
+
+	/**
+	 * Blendet die Tracer-Kacheln der letzten {@link #TRACER_TILE_STEPS} Schritte
+	 * aus und leert die Kacheln die gerade aus diesem Fenster fallen. Der Anteil
+	 * kommt von der Simulation, damit alle Renderer gleich ausblenden
+	 */
+	private void fadeTracerTiles(long tick) {
+		int count = tracerTiles.spans(tick - TRACER_TILE_STEPS, tick - 1, spans);
+		tracerFader.fade(tracerBuffer, spans, count, simulation.getTracerFade(),
+				simulation.getUpdater().getParallelPool());
+
+		count = tracerTiles.spans(tick - TRACER_TILE_STEPS - 1, tick - TRACER_TILE_STEPS - 1, spans);
+		RasterRenderer.clear(tracerBuffer, spans, count);
+	}
+
+	/**
+	 * Blendet die Tracer um einen zufälligen Anteil (85-95% bleiben erhalten) aus.
+	 * Das passiert direkt im Raster des Buffers, bei großen Auflösungen in
+	 * Streifen auf mehreren Threads
+	 *
+	 * @param tracerBuffer - Buffer vom Typ TYPE_INT_ARGB_PRE
+	 * @return Der gleiche, jetzt ausgeblendete Buffer
+	 */
+	public BufferedImage tracerFade(BufferedImage tracerBuffer) {
+		float fadeAmount = MathUtils.randFloat(0.85f, 0.95f);
+		tracerFader.fade(tracerBuffer, fadeAmount, simulation.getUpdater().getParallelPool());
+		return tracerBuffer;
+	}
+
+	/**
+	 * Zuletzt mit {@link #composeFrame(double)} zusammengesetztes Bild (nicht
+	 * verändern)
+	 */
+	public BufferedImage getFrame() {
+		return frameBuffer;
+	}
+
+	public int getWidth() {
+		return frameBuffer.getWidth();
+	}
+
+	public int getHeight() {
+		return frameBuffer.getHeight();
+	}
+
+	public FireworksSimulation getSimulation() {
+		return simulation;
+	}
+
+	public RenderBackend getRenderBackend() {
+		return renderBackend;
+	}
+
+	public void setRenderBackend(RenderBackend renderBackend) {
+		this.renderBackend = renderBackend;
+	}
+
+	public GlowSpriteCache getGlowCache() {
+		return glowCache;
+	}
+}
@@ -0,0 +1,233 @@
+package pr0bob.fireworks;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Zeitmessung der einzelnen Phasen eines Frames
+ * 
+ * Jede Phase schreibt ihre Dauer in ein {@link LatencyHistogram}. Alle
+ * {@link #getWindowNanos()} werden die Histogramme als Schnappschuss
+ * übernommen und geleert, Overlay und JMX zeigen immer das zuletzt
+ * abgeschlossene Zeitfenster. Messen passiert nur auf dem Thread der
+ * Simulation, die Schnappschüsse dürfen von jedem Thread gelesen werden
+ */
+public class FrameStats {
+
+	/**
+	 * Gemessene Phasen in der Reihenfolge in der sie im Frame vorkommen
+	 */
+	public enum Phase {
+		/**
+		 * Eingereihte Effekte erzeugen und Raketen bewegen
+		 */
+		ROCKETS("Raketen"),
+		/**
+		 * Update aller Partikel inkl. Kraftfelder und Entfernen der toten
+		 */
+		PARTICLE_UPDATE("Partikel"),
+		TRACER_FADE("Tracer-Fade"),
+		TRACER_DRAW("Tracer"),
+		/**
+		 * Leeren des Partikel-Buffers und Zeichnen der Partikel
+		 */
+		PARTICLE_DRAW("Zeichnen"),
+		/**
+		 * Zusammensetzen der Ebenen auf das Ziel
+		 */
+		BLIT("Blit");
+
+		private final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	/**
+	 * Einmal geholt, ManagementFactory allokiert bei jedem Aufruf
+	 */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static final long DEFAULT_WINDOW_NANOS = 2_000_000_000L;
+
+	private final long windowNanos;
+
+	/*
+	 * Laufendes Zeitfenster (nur Simulations-Thread) und letzter Schnappschuss
+	 */
+	private final LatencyHistogram[] current = new LatencyHistogram[PHASES.length];
+	private final LatencyHistogram[] snapshot = new LatencyHistogram[PHASES.length];
+	private final LatencyHistogram currentFrame = new LatencyHistogram();
+	private final LatencyHistogram snapshotFrame = new LatencyHistogram();
+
+	/**
+	 * Summe der Phasen seit dem letzten Frame
+	 */
+	private long frameNanos = 0;
+
+	private long windowStart = -1;
+	private long windowFrames = 0;
+	private long lastAllocatedBytes = -1;
+
+	/**
+	 * IDs der Threads für die Allokationsmessung, werden nur neu geholt wenn sich
+	 * die Anzahl der Threads ändert (das Abfragen legt jedes Mal ein Array an)
+	 */
+	private long[] threadIds = new long[0];
+	private double framesPerSecond = 0;
+	private double allocationRate = 0;
+
+	public FrameStats() {
+		this(DEFAULT_WINDOW_NANOS);
+	}
+
+	public FrameStats(long windowNanos) {
+		if (windowNanos <= 0) {
+			throw new IllegalArgumentException("windowNanos <= 0: " + windowNanos);
+		}
+		this.windowNanos = windowNanos;
+		for (int i = 0; i < PHASES.length; i++) {
+			current[i] = new LatencyHistogram();
+			snapshot[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Zeichnet die Dauer einer Phase auf
+	 * 
+	 * @param phase - Phase
+	 * @param start - Startzeit ({@link System#nanoTime()})
+	 * @return Endzeit, kann direkt als Start der nächsten Phase dienen
+	 */
+	public long record(Phase phase, long start) {
+		long now = System.nanoTime();
+		current[phase.ordinal()].record(now - start);
+		frameNanos += now - start;
+		return now;
+	}
+
+	/**
+	 * Schließt einen Frame ab, nach Ablauf des Zeitfensters wird der Schnappschuss
+	 * erneuert
+	 * 
+	 * @return Summe der Phasen dieses Frames in Nanosekunden
+	 */
+	public long frameFinished() {
+		long total = frameNanos;
+		currentFrame.record(total);
+		frameNanos = 0;
+		windowFrames++;
+
+		long now = System.nanoTime();
+		if (windowStart < 0) {
+			windowStart = now;
+			lastAllocatedBytes = allocatedBytes();
+		} else if (now - windowStart >= windowNanos) {
+			rotate(now);
+		}
+		return total;
+	}
+
+	private synchronized void rotate(long now) {
+		double seconds = (now - windowStart) / 1e9;
+		for (int i = 0; i < PHASES.length; i++) {
+			snapshot[i].reset();
+			snapshot[i].add(current[i]);
+			current[i].reset();
+		}
+		snapshotFrame.reset();
+		snapshotFrame.add(currentFrame);
+		currentFrame.reset();
+
+		framesPerSecond = windowFrames / seconds;
+		long allocated = allocatedBytes();
+		allocationRate = allocated < 0 || lastAllocatedBytes < 0 ? -1 : (allocated - lastAllocatedBytes) / seconds;
+		lastAllocatedBytes = allocated;
+		windowFrames = 0;
+		windowStart = now;
+	}
+
+	/**
+	 * Summe der allokierten Bytes aller lebenden Threads der JVM, -1 wenn die JVM
+	 * das nicht unterstützt. Allokiert selbst nichts, solange die Anzahl der
+	 * Threads gleich bleibt
+	 */
+	private long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				if (threads.getThreadCount() != threadIds.length) {
+					threadIds = threads.getAllThreadIds();
+				}
+				long total = 0;
+				for (long id : threadIds) {
+					// -1 für einen inzwischen beendeten Thread
+					total += Math.max(threads.getThreadAllocatedBytes(id), 0);
+				}
+				return total;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Median der Phase im letzten Zeitfenster in Nanosekunden
+	 */
+	public synchronized long getP50(Phase phase) {
+		return snapshot[phase.ordinal()].getValueAtPercentile(50);
+	}
+
+	public synchronized long getP99(Phase phase) {
+		return snapshot[phase.ordinal()].getValueAtPercentile(99);
+	}
+
+	public synchronized long getMax(Phase phase) {
+		return snapshot[phase.ordinal()].getMax();
+	}
+
+	/**
+	 * 99. Perzentil der Summe aller Phasen eines Frames in Nanosekunden
+	 */
+	public synchronized long getFrameP99() {
+		return snapshotFrame.getValueAtPercentile(99);
+	}
+
+	public synchronized long getFrameMax() {
+		return snapshotFrame.getMax();
+	}
+
+	/**
+	 * Phase mit dem höchsten 99. Perzentil im letzten Zeitfenster
+	 */
+	public synchronized Phase getSlowestPhase() {
+		Phase slowest = PHASES[0];
+		for (Phase phase : PHASES) {
+			if (snapshot[phase.ordinal()].getValueAtPercentile(99) > snapshot[slowest.ordinal()]
+					.getValueAtPercentile(99)) {
+				slowest = phase;
+			}
+		}
+		return slowest;
+	}
+
+	public synchronized double getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * Allokierte Bytes pro Sekunde (alle Threads), -1 wenn nicht messbar
+	 */
+	public synchronized double getAllocationRate() {
+		return allocationRate;
+	}
+
+	public long getWindowNanos() {
+		return windowNanos;
+	}
+}
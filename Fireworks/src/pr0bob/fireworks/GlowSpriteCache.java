@@ -0,0 +1,417 @@
+package pr0bob.fireworks;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Begrenzter Cache für die Leuchten-Sprites der Partikel
+ * 
+ * Ein Sprite enthält alle Ringe des Leuchtens bereits übereinander gezeichnet,
+ * dadurch kostet das Leuchten eines Partikels nur noch einen einzigen
+ * drawImage-Aufruf. Schlüssel ist (Farbe, Radius, Flackern), bei vollem Cache
+ * wird der am längsten nicht genutzte Eintrag verworfen (LRU)
+ * 
+ * Die Schlüssel liegen in einer eigenen Hash-Tabelle mit primitiven
+ * {@code long}-Werten, damit ein Treffer nichts allokiert. Auch ein Fehlschlag
+ * allokiert im eingeschwungenen Zustand nichts: verdrängte Sprites werden nach
+ * Radius aufbewahrt und für den nächsten Eintrag mit gleichem Radius direkt im
+ * Raster neu eingefärbt (die Form der Ringe hängt nur vom Radius ab und wird
+ * einmal pro Radius als Alpha-Maske berechnet, pro Farbe wird dann nur noch
+ * jede Alpha-Stufe der Ringe einmal vormultipliziert). Nicht threadsicher,
+ * gedacht für den Thread der zeichnet
+ * 
+ * Ein verdrängtes Sprite kann noch gezeichnet werden (der
+ * {@link TileRasterizer} sammelt erst alle Sprites eines Frames und zeichnet
+ * danach). Es wird deshalb erst nach {@link #recycleEvicted()} neu eingefärbt,
+ * das ruft auf wer die Sprites eines Frames fertig gezeichnet hat
+ */
+public class GlowSpriteCache {
+
+	public static final int DEFAULT_CAPACITY = 512;
+
+	private final int capacity;
+
+	/*
+	 * Einträge, die Reihenfolge der Nutzung ist eine doppelt verkettete Liste über
+	 * prev/next (head = zuletzt genutzt, tail = am längsten nicht genutzt)
+	 */
+	private final long[] keys;
+	private final BufferedImage[] sprites;
+	private final int[] prev;
+	private final int[] next;
+	private int head = -1;
+	private int tail = -1;
+	private int size = 0;
+
+	/**
+	 * Hash-Tabelle mit linearem Sondieren, enthält Eintrag-Index + 1 (0 = leer)
+	 */
+	private final int[] table;
+	private final int mask;
+
+	/**
+	 * Alpha-Maske der Ringe pro Radius (Index = Radius)
+	 */
+	private int[][] masks = new int[0][];
+
+	/**
+	 * Alle Alpha-Werte (ohne 0) die in der Maske eines Radius vorkommen
+	 */
+	private int[][] maskAlphas = new int[0][];
+
+	/**
+	 * Vormultiplizierte Farbe pro Alpha-Wert für das Sprite das gerade eingefärbt
+	 * wird
+	 */
+	private final int[] ramp = new int[256];
+
+	/**
+	 * Verdrängte Sprites zum Wiederverwenden, pro Radius ein Stapel
+	 */
+	private BufferedImage[][] spares = new BufferedImage[0][];
+	private int[] spareCounts = new int[0];
+
+	/*
+	 * Im aktuellen Frame verdrängte Sprites mit ihrem Radius, kommen erst mit
+	 * recycleEvicted() zu den aufbewahrten
+	 */
+	private BufferedImage[] evicted = new BufferedImage[0];
+	private int[] evictedRadius = new int[0];
+	private int evictedCount = 0;
+
+	/**
+	 * Anzahl der bisher erzeugten Sprites pro Radius
+	 */
+	private int[] created = new int[0];
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public GlowSpriteCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public GlowSpriteCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1: " + capacity);
+		}
+		this.capacity = capacity;
+		keys = new long[capacity];
+		sprites = new BufferedImage[capacity];
+		prev = new int[capacity];
+		next = new int[capacity];
+		table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		mask = table.length - 1;
+	}
+
+	/**
+	 * Liefert das Sprite für die gegebenen Parameter, erzeugt es falls nötig
+	 * 
+	 * @param color   - Farbe des Leuchtens (ARGB)
+	 * @param radius  - Radius des Leuchtens in Px
+	 * @param flicker - {@code true} für das Sprite während des Flackerns
+	 * @return Sprite mit der Größe 2*radius x 2*radius
+	 */
+	public BufferedImage get(int color, int radius, boolean flicker) {
+		long key = ((long) color << 32) | ((long) radius << 1) | (flicker ? 1 : 0);
+
+		for (int h = hash(key); table[h] != 0; h = (h + 1) & mask) {
+			int entry = table[h] - 1;
+			if (keys[entry] == key) {
+				hits++;
+				moveToFront(entry);
+				return sprites[entry];
+			}
+		}
+
+		misses++;
+		int entry;
+		if (size == capacity) {
+			entry = tail;
+			unlink(entry);
+			removeFromTable(entry);
+			evict(sprites[entry], radiusOf(keys[entry]));
+			evictions++;
+		} else {
+			entry = size++;
+		}
+
+		keys[entry] = key;
+		sprites[entry] = paint(acquire(radius), color, radius);
+		insertIntoTable(entry);
+		linkFront(entry);
+		return sprites[entry];
+	}
+
+	private static int radiusOf(long key) {
+		return (int) ((key & 0xFFFFFFFFL) >>> 1);
+	}
+
+	/**
+	 * Ein aufbewahrtes Sprite des Radius. Ist keins mehr da, wird der Vorrat für
+	 * diesen Radius verdoppelt (höchstens bis zur Kapazität), damit nach dem
+	 * Einschwingen keine neuen Sprites mehr nötig sind
+	 */
+	private BufferedImage acquire(int radius) {
+		if (radius >= spareCounts.length) {
+			spares = Arrays.copyOf(spares, radius + 1);
+			spareCounts = Arrays.copyOf(spareCounts, radius + 1);
+			created = Arrays.copyOf(created, radius + 1);
+		}
+		if (spareCounts[radius] == 0) {
+			int batch = Math.max(Math.min(created[radius], capacity - created[radius]), 1);
+			// Platz für alle Sprites des Radius, sonst wächst der Stapel erst in dem
+			// Frame, in dem zum ersten Mal alle gleichzeitig verdrängt sind
+			BufferedImage[] stack = spares[radius];
+			if (stack == null || stack.length < created[radius] + batch) {
+				spares[radius] = Arrays.copyOf(stack == null ? new BufferedImage[0] : stack,
+						Math.max((created[radius] + batch) * 2, 8));
+			}
+			for (int i = 0; i < batch; i++) {
+				release(new BufferedImage(Math.max(radius * 2, 1), Math.max(radius * 2, 1),
+						BufferedImage.TYPE_INT_ARGB_PRE), radius);
+			}
+			created[radius] += batch;
+		}
+		BufferedImage sprite = spares[radius][--spareCounts[radius]];
+		spares[radius][spareCounts[radius]] = null;
+		return sprite;
+	}
+
+	/**
+	 * Reserviert Platz für count im selben Frame verdrängte Sprites. Verdrängt wird
+	 * höchstens einmal pro Aufruf von {@link #get(int, int, boolean)}, mit der
+	 * Anzahl der Partikel wächst die Liste daher nicht erst dann, wenn ein Frame
+	 * zum ersten Mal besonders viele verschiedene Sprites braucht
+	 */
+	public void reserveEvictions(int count) {
+		if (evicted.length < count) {
+			evicted = Arrays.copyOf(evicted, count);
+			evictedRadius = Arrays.copyOf(evictedRadius, count);
+		}
+	}
+
+	private void evict(BufferedImage sprite, int radius) {
+		if (evictedCount == evicted.length) {
+			reserveEvictions(Math.max(evictedCount * 2, 16));
+		}
+		evicted[evictedCount] = sprite;
+		evictedRadius[evictedCount++] = radius;
+	}
+
+	/**
+	 * Gibt die seit dem letzten Aufruf verdrängten Sprites zum Neu-Einfärben frei.
+	 * Erst aufrufen, wenn keines der bisher von {@link #get(int, int, boolean)}
+	 * gelieferten Sprites mehr gezeichnet wird (nach dem Zeichnen eines Frames)
+	 */
+	public void recycleEvicted() {
+		for (int i = 0; i < evictedCount; i++) {
+			release(evicted[i], evictedRadius[i]);
+			evicted[i] = null;
+		}
+		evictedCount = 0;
+	}
+
+	private void release(BufferedImage sprite, int radius) {
+		BufferedImage[] stack = spares[radius];
+		if (stack == null || spareCounts[radius] == stack.length) {
+			stack = spares[radius] = Arrays.copyOf(stack == null ? new BufferedImage[0] : stack,
+					Math.max(spareCounts[radius] * 2, 8));
+		}
+		stack[spareCounts[radius]++] = sprite;
+	}
+
+	/**
+	 * Färbt ein Sprite direkt im Raster mit der Maske des Radius ein
+	 */
+	private BufferedImage paint(BufferedImage sprite, int color, int radius) {
+		int[] mask = mask(radius);
+		int[] pixels = ((DataBufferInt) sprite.getRaster().getDataBuffer()).getData();
+		int rgb = color & 0xFFFFFF;
+		for (int alpha : maskAlphas[radius]) {
+			ramp[alpha] = RasterRenderer.premultiply(rgb | alpha << 24);
+		}
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = ramp[mask[i]];
+		}
+		return sprite;
+	}
+
+	/**
+	 * Alpha-Werte der Ringe eines Radius, aus einem weißen Sprite gelesen
+	 */
+	private int[] mask(int radius) {
+		if (radius >= masks.length) {
+			masks = Arrays.copyOf(masks, radius + 1);
+			maskAlphas = Arrays.copyOf(maskAlphas, radius + 1);
+		}
+		if (masks[radius] == null) {
+			BufferedImage white = createSprite(0xFFFFFF, radius);
+			int[] mask = new int[white.getWidth() * white.getHeight()];
+			white.getRGB(0, 0, white.getWidth(), white.getHeight(), mask, 0, white.getWidth());
+			boolean[] present = new boolean[256];
+			int alphas = 0;
+			for (int i = 0; i < mask.length; i++) {
+				mask[i] >>>= 24;
+				if (mask[i] != 0 && !present[mask[i]]) {
+					present[mask[i]] = true;
+					alphas++;
+				}
+			}
+			int[] levels = new int[alphas];
+			for (int alpha = 1, n = 0; alpha < present.length; alpha++) {
+				if (present[alpha]) {
+					levels[n++] = alpha;
+				}
+			}
+			masks[radius] = mask;
+			maskAlphas[radius] = levels;
+		}
+		return masks[radius];
+	}
+
+	/**
+	 * Zeichnet alle Ringe des Leuchtens in ein einzelnes Bild. Der Alpha-Wert wird
+	 * mit steigendem Radius stufenweise herabgesetzt
+	 * 
+	 * @param color  - Farbe des Leuchtens (ARGB)
+	 * @param radius - Radius in Px
+	 * @return Das fertige Sprite
+	 */
+	public static BufferedImage createSprite(int color, int radius) {
+		BufferedImage sprite = new BufferedImage(Math.max(radius * 2, 1), Math.max(radius * 2, 1),
+				BufferedImage.TYPE_INT_ARGB_PRE);
+		if (radius <= 1) {
+			return sprite;
+		}
+
+		double alphaStep = 200 / radius;
+		double alpha = 200;
+
+		Graphics2D g2d = sprite.createGraphics();
+		for (int i = 1; i < radius; i++) {
+			g2d.setColor(new Color((color & 0xFFFFFF) | ((int) alpha << 24), true));
+			g2d.drawOval(radius - i, radius - i, 2 * i, 2 * i);
+			alpha = Math.max(alpha - alphaStep, 0); // Math.max um zu verhindern dass negative Werte vorkommen
+		}
+		g2d.dispose();
+		return sprite;
+	}
+
+	private int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+
+	private void insertIntoTable(int entry) {
+		int h = hash(keys[entry]);
+		while (table[h] != 0) {
+			h = (h + 1) & mask;
+		}
+		table[h] = entry + 1;
+	}
+
+	/**
+	 * Entfernt einen Eintrag aus der Hash-Tabelle und schiebt nachfolgende
+	 * Einträge zurück, damit keine Lücken in den Sondierungsketten entstehen
+	 */
+	private void removeFromTable(int entry) {
+		int i = hash(keys[entry]);
+		while (table[i] != entry + 1) {
+			i = (i + 1) & mask;
+		}
+
+		table[i] = 0;
+		for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+			int home = hash(keys[table[j] - 1]);
+			// Eintrag darf nur zurückrücken wenn sein Ursprung nicht zwischen i und j liegt
+			boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!between) {
+				table[i] = table[j];
+				table[j] = 0;
+				i = j;
+			}
+		}
+	}
+
+	private void moveToFront(int entry) {
+		if (entry != head) {
+			unlink(entry);
+			linkFront(entry);
+		}
+	}
+
+	private void linkFront(int entry) {
+		prev[entry] = -1;
+		next[entry] = head;
+		if (head != -1) {
+			prev[head] = entry;
+		}
+		head = entry;
+		if (tail == -1) {
+			tail = entry;
+		}
+	}
+
+	private void unlink(int entry) {
+		int p = prev[entry];
+		int n = next[entry];
+		if (p != -1) {
+			next[p] = n;
+		} else {
+			head = n;
+		}
+		if (n != -1) {
+			prev[n] = p;
+		} else {
+			tail = p;
+		}
+	}
+
+	/**
+	 * Leert den Cache (Zähler bleiben erhalten)
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(sprites, null);
+		spares = new BufferedImage[0][];
+		spareCounts = new int[0];
+		Arrays.fill(evicted, 0, evictedCount, null);
+		evictedCount = 0;
+		created = new int[0];
+		head = -1;
+		tail = -1;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Anteil der Treffer an allen Anfragen (0.0 - 1.0)
+	 */
+	public double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+}
@@ -0,0 +1,323 @@
+package pr0bob.fireworks;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Rendert eine Show ohne Fenster (und ohne X-Server) so schnell wie möglich in
+ * eine Folge von Einzelbildern
+ * 
+ * Jeder Frame ist genau ein Simulationsschritt, gezeichnet wird von einem
+ * {@link FrameRenderer} ohne Display in ein BufferedImage. Die Bilder werden
+ * als PNG-Dateien oder als rohe RGBA-Daten (4 Byte pro Pixel, zeilenweise)
+ * ausgegeben, oder gar nicht (nur Messung)
+ * 
+ * Aufruf z.B.:
+ * 
+ * <pre>
+ * java -Djava.awt.headless=true pr0bob.fireworks.HeadlessRenderer --width 1920 --height 1080 --frames 600 --format png --out frames/
+ * java pr0bob.fireworks.HeadlessRenderer --format rgba --out - | ffmpeg -f rawvideo -pix_fmt rgba -s 1920x1080 -r 33.3 -i - show.mp4
+ * java pr0bob.fireworks.HeadlessRenderer --replay show.fws
+ * </pre>
+ * 
+ * Mit {@code --record} wird die Show aufgezeichnet ({@link ShowRecorder}), mit
+ * {@code --replay} eine Aufnahme (auch aus der FireworksApplication) statt der
+ * Auto-Raketen so schnell wie möglich abgespielt. {@code --show} spielt eine
+ * Choreografie ({@link ShowSchedule}) statt der Auto-Raketen ab,
+ * {@code --effects} lädt vorher zusätzliche {@link EffectTemplate}s aus einem
+ * Verzeichnis (im Skript unter ihrem Dateinamen verwendbar). Gezeichnet wird
+ * standardmäßig direkt ins Raster, {@code --backend java2d} nimmt zum Vergleich
+ * die Graphics2D-Aufrufe
+ */
+public class HeadlessRenderer {
+
+	public enum Format {
+		PNG, RGBA, NONE
+	}
+
+	private final FireworksSimulation simulation;
+	private final FrameRenderer frameRenderer;
+	private final BufferedImage frame;
+	private final Graphics2D frameG;
+
+	/**
+	 * Schritte zwischen zwei Versuchen eine Auto-Rakete zu starten (wie der
+	 * autoModeTimer in der FireworksApplication)
+	 */
+	private final long autoLaunchTicks;
+	private boolean autoMode = true;
+
+	/**
+	 * Abgespielte Aufnahme oder {@code null}
+	 */
+	private final ShowReplay replay;
+
+	/**
+	 * Laufzeit nach dem letzten Ereignis einer Show (in ms), wenn keine Anzahl an
+	 * Frames angegeben ist
+	 */
+	private static final long SHOW_TAIL_MILLIS = 8000;
+
+	/*
+	 * Statistik des letzten Laufs
+	 */
+	private long framesRendered = 0;
+	private long particlesRendered = 0;
+	private long elapsedNanos = 0;
+
+	public HeadlessRenderer(int width, int height) {
+		this(new FireworksSimulation(width, height), null);
+	}
+
+	/**
+	 * Spielt eine Aufnahme ab (Seed und Größe aus der Aufnahme, keine
+	 * Auto-Raketen)
+	 */
+	public HeadlessRenderer(ShowReplay replay) {
+		this(replay.createSimulation(), replay);
+	}
+
+	private HeadlessRenderer(FireworksSimulation simulation, ShowReplay replay) {
+		this.simulation = simulation;
+		this.replay = replay;
+		autoMode = replay == null;
+		Dimension size = simulation.getInsideBounds();
+		frameRenderer = new FrameRenderer(simulation, size.width, size.height);
+		simulation.addRenderer(frameRenderer);
+		frame = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+		frameG = frame.createGraphics();
+		autoLaunchTicks = Math.max(simulation.getClock().toTicks(FireworksApplication.AUTO_MODE_INTERVAL), 1);
+	}
+
+	/**
+	 * Simuliert und rendert einen einzelnen Frame
+	 * 
+	 * @return Das gerenderte Bild (wird beim nächsten Aufruf überschrieben)
+	 */
+	public BufferedImage renderNextFrame() {
+		long tick = simulation.getCurrentTick();
+		if (replay != null) {
+			replay.apply(simulation);
+		} else if (autoMode && tick > 0 && tick % autoLaunchTicks == 0
+				&& MathUtils.randomChance(FireworksApplication.AUTO_MODE_CHANCE)) {
+			simulation.addRocket();
+		}
+
+		simulation.step();
+		frameRenderer.composeFrame(1.0);
+		simulation.frameFinished();
+		frameG.drawImage(frameRenderer.getFrame(), 0, 0, null);
+
+		framesRendered++;
+		particlesRendered += simulation.getParticles().size();
+		return frame;
+	}
+
+	/**
+	 * Rendert die gegebene Anzahl an Frames und gibt sie im gewünschten Format aus
+	 * 
+	 * @param frames - Anzahl der Frames
+	 * @param format - Ausgabeformat
+	 * @param out    - Verzeichnis für PNG, Datei oder "-" (stdout) für RGBA
+	 * @throws IOException
+	 */
+	public void render(int frames, Format format, String out) throws IOException {
+		OutputStream rawOut = null;
+		byte[] rgba = null;
+		File dir = null;
+
+		if (format == Format.RGBA) {
+			rawOut = new BufferedOutputStream("-".equals(out) ? System.out : new FileOutputStream(out), 1 << 20);
+			rgba = new byte[frame.getWidth() * frame.getHeight() * 4];
+		} else if (format == Format.PNG) {
+			dir = new File(out);
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Konnte Verzeichnis nicht anlegen: " + dir);
+			}
+		}
+
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < frames; i++) {
+				BufferedImage img = renderNextFrame();
+				if (format == Format.PNG) {
+					ImageIO.write(img, "png", new File(dir, String.format("frame_%06d.png", i)));
+				} else if (format == Format.RGBA) {
+					writeRgba(img, rgba, rawOut);
+				}
+			}
+		} finally {
+			if (rawOut != null) {
+				rawOut.flush();
+				if (rawOut != System.out) {
+					rawOut.close();
+				}
+			}
+			elapsedNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Schreibt das Bild als rohe RGBA-Bytes
+	 */
+	private static void writeRgba(BufferedImage img, byte[] rgba, OutputStream out) throws IOException {
+		int width = img.getWidth();
+		int[] row = new int[width];
+		int b = 0;
+		for (int y = 0; y < img.getHeight(); y++) {
+			img.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				int argb = row[x];
+				rgba[b++] = (byte) (argb >> 16);
+				rgba[b++] = (byte) (argb >> 8);
+				rgba[b++] = (byte) argb;
+				rgba[b++] = (byte) (argb >>> 24);
+			}
+		}
+		out.write(rgba);
+	}
+
+	public FireworksSimulation getSimulation() {
+		return simulation;
+	}
+
+	public FrameRenderer getFrameRenderer() {
+		return frameRenderer;
+	}
+
+	public void setAutoMode(boolean autoMode) {
+		this.autoMode = autoMode;
+	}
+
+	public long getFramesRendered() {
+		return framesRendered;
+	}
+
+	public long getParticlesRendered() {
+		return particlesRendered;
+	}
+
+	public double getFramesPerSecond() {
+		return elapsedNanos == 0 ? 0 : framesRendered * 1e9 / elapsedNanos;
+	}
+
+	public double getParticlesPerSecond() {
+		return elapsedNanos == 0 ? 0 : particlesRendered * 1e9 / elapsedNanos;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (System.getProperty("java.awt.headless") == null) {
+			System.setProperty("java.awt.headless", "true");
+		}
+
+		int width = 1280;
+		int height = 720;
+		int frames = -1;
+		Format format = Format.NONE;
+		String out = "frames";
+		FrameRenderer.RenderBackend backend = FrameRenderer.RenderBackend.RASTER;
+		String record = null;
+		String replayFile = null;
+		String showFile = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--width":
+				width = Integer.parseInt(value);
+				break;
+			case "--height":
+				height = Integer.parseInt(value);
+				break;
+			case "--frames":
+				frames = Integer.parseInt(value);
+				break;
+			case "--format":
+				format = Format.valueOf(value.toUpperCase());
+				break;
+			case "--out":
+				out = value;
+				break;
+			case "--backend":
+				backend = FrameRenderer.RenderBackend.valueOf(value.toUpperCase());
+				break;
+			case "--seed":
+				MathUtils.setSeed(Long.parseLong(value));
+				break;
+			case "--record":
+				record = value;
+				break;
+			case "--replay":
+				replayFile = value;
+				break;
+			case "--show":
+				showFile = value;
+				break;
+			case "--effects":
+				FireworksFactory.loadEffects(new File(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unbekannte Option: " + args[i]);
+			}
+		}
+
+		HeadlessRenderer renderer;
+		ShowReplay replay = null;
+		if (replayFile != null) {
+			replay = ShowReplay.load(replayFile);
+			renderer = new HeadlessRenderer(replay);
+			if (frames < 0) {
+				frames = (int) replay.getLastTick();
+			}
+			width = replay.getWidth();
+			height = replay.getHeight();
+		} else {
+			renderer = new HeadlessRenderer(width, height);
+		}
+		FireworksSimulation simulation = renderer.getSimulation();
+		// Vor dem Start der Show, damit ihr Schritt in der Aufnahme steht
+		if (record != null) {
+			simulation.setRecorder(new ShowRecorder(record, simulation));
+		}
+		if (showFile != null) {
+			ShowSchedule show = ShowSchedule.load(showFile, simulation.getClock());
+			if (replay != null && replay.isShowRecorded()) {
+				// Startet im aufgezeichneten Schritt
+				replay.setShow(show);
+			} else {
+				simulation.setShow(show);
+			}
+			renderer.setAutoMode(false);
+			if (frames < 0) {
+				// Nach dem letzten Ereignis noch Zeit für Flug und Explosion
+				frames = (int) (show.getLastTick() + simulation.getClock().toTicks(SHOW_TAIL_MILLIS));
+			}
+		}
+		if (frames < 0) {
+			frames = 300;
+		}
+		renderer.getFrameRenderer().setRenderBackend(backend);
+		renderer.render(frames, format, out);
+		if (simulation.getRecorder() != null) {
+			simulation.getRecorder().close(simulation.getCurrentTick());
+		}
+
+		// Bei RGBA auf stdout darf die Statistik nicht in die Bilddaten geraten
+		System.err.printf("%d Frames (%dx%d) in %.2f s: %.1f Frames/s, %.0f Partikel/s%n", renderer.getFramesRendered(),
+				width, height, renderer.elapsedNanos / 1e9, renderer.getFramesPerSecond(),
+				renderer.getParticlesPerSecond());
+		FrameStats stats = simulation.getFrameStats();
+		for (FrameStats.Phase phase : FrameStats.Phase.values()) {
+			System.err.printf("  %-12s p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms%n", phase.getLabel(),
+					stats.getP50(phase) / 1e6, stats.getP99(phase) / 1e6, stats.getMax(phase) / 1e6);
+		}
+		simulation.getUpdater().shutdown();
+	}
+}
@@ -0,0 +1,40 @@
+package pr0bob.fireworks;
+/**
+ * Zufälliges "Wackeln" der Partikel, jede Komponente wird pro Schritt um einen
+ * zufälligen Wert im Bereich [-amount, amount] verändert
+ */
+public class JitterField extends ForceField {
+
+	public static final double DEFAULT_AMOUNT_X = 0.2;
+	public static final double DEFAULT_AMOUNT_Y = 0.02;
+
+	private final double amountX;
+	private final double amountY;
+
+	/**
+	 * Das Wackeln aller Partikel mit {@link ParticleStore#FLAG_JITTER}
+	 */
+	public JitterField() {
+		this(DEFAULT_AMOUNT_X, DEFAULT_AMOUNT_Y, ParticleStore.FLAG_JITTER);
+	}
+
+	public JitterField(double amountX, double amountY, int requiredFlags) {
+		super(requiredFlags);
+		this.amountX = amountX;
+		this.amountY = amountY;
+	}
+
+	@Override
+	protected void apply(ParticleStore store, int from, int to, long tick) {
+		// Stream des Threads, ist für den Block bereits deterministisch gesetzt
+		RandomStream random = MathUtils.stream();
+		double[] velX = store.velX;
+		double[] velY = store.velY;
+		for (int i = from; i < to; i++) {
+			if (affects(store, i)) {
+				velX[i] += MathUtils.randDouble(random, -amountX, amountX);
+				velY[i] += MathUtils.randDouble(random, -amountY, amountY);
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package pr0bob.fireworks;
+import java.util.Arrays;
+
+/**
+ * Histogramm für Zeitmessungen in Nanosekunden mit fester Speichergröße
+ * 
+ * Die Buckets sind logarithmisch-linear aufgeteilt: Werte unter 64 ns bekommen
+ * je einen eigenen Bucket, darüber wird jede Zweierpotenz in 32 gleich große
+ * Buckets geteilt. Perzentile sind dadurch auf ca. 3% genau, egal ob es um
+ * Mikrosekunden oder Sekunden geht. Aufzeichnen kostet nur ein paar
+ * Bit-Operationen und allokiert nichts. Nicht threadsicher
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	/**
+	 * Zeichnet einen Wert auf, negative Werte zählen als 0
+	 */
+	public void record(long nanos) {
+		long v = Math.max(nanos, 0);
+		counts[bucket(v)]++;
+		count++;
+		sum += v;
+		if (v < min) {
+			min = v;
+		}
+		if (v > max) {
+			max = v;
+		}
+	}
+
+	private static int bucket(long v) {
+		if (v < LINEAR_LIMIT) {
+			return (int) v;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (msb - SUB_BITS - 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Größter Wert der noch in den Bucket fällt
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int msb = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BITS + 1;
+		long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		long lower = (1L << msb) | (sub << (msb - SUB_BITS));
+		return lower + (1L << (msb - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Wert unter dem der gegebene Anteil aller Messungen liegt
+	 * 
+	 * @param percentile - Anteil in Prozent (0 - 100)
+	 * @return Obergrenze des Buckets (höchstens das Maximum), 0 wenn leer
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max((long) Math.ceil(percentile / 100.0 * count), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(upperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Addiert alle Werte eines anderen Histogramms hinzu
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+}
@@ -1,10 +1,115 @@
 package pr0bob.fireworks;
-import java.util.Random;
-
 /**
  * Mathematical utilities
+ * 
+ * All random functions draw from a per-thread {@link RandomStream}, so they
+ * neither allocate nor contend. Every stream is derived from one global seed,
+ * which can be fixed with {@link #setSeed(long)} or the system property
+ * {@code fireworks.seed} to reproduce a whole show.
+ * 
+ * The fast trigonometric functions ({@link #sinDeg(double)} etc.) read a
+ * precomputed sine table with linear interpolation instead of calling
+ * {@link Math#sin(double)}. See {@link #TRIG_RESOLUTION} for the accuracy.
  */
 public class MathUtils {
+	/**
+	 * Global seed all thread streams are derived from
+	 */
+	private static volatile long globalSeed = Long.getLong("fireworks.seed", System.nanoTime());
+
+	/**
+	 * Incremented with every {@link #setSeed(long)}, tells the threads to rederive
+	 * their streams
+	 */
+	private static volatile int seedGeneration = 0;
+
+	/**
+	 * Number of table steps per full turn, a power of two of at least 64. Set with
+	 * the system property {@code fireworks.trigResolution}, default 4096 (about
+	 * 0.088 degrees per step). With linear interpolation the absolute error of
+	 * the fast functions is at most {@code (2 * PI / TRIG_RESOLUTION)^2 / 8}, see
+	 * {@link #TRIG_ERROR_BOUND} (about 2.9e-7 for the default).
+	 */
+	public static final int TRIG_RESOLUTION = trigResolution(Integer.getInteger("fireworks.trigResolution", 4096));
+
+	/**
+	 * Upper bound for the absolute error of {@link #sinDeg(double)},
+	 * {@link #cosDeg(double)}, {@link #sin(double)} and {@link #cos(double)}
+	 * compared to {@link Math#sin(double)}/{@link Math#cos(double)}, for angles
+	 * up to 1e6 degrees
+	 */
+	public static final double TRIG_ERROR_BOUND = Math.pow(2 * Math.PI / TRIG_RESOLUTION, 2) / 8 + 1e-12;
+
+	private static final int TRIG_MASK = TRIG_RESOLUTION - 1;
+	private static final int TRIG_QUARTER = TRIG_RESOLUTION / 4;
+	private static final double STEPS_PER_DEGREE = TRIG_RESOLUTION / 360.0;
+	private static final double STEPS_PER_RADIAN = TRIG_RESOLUTION / (2 * Math.PI);
+
+	/**
+	 * Sine of every step, one extra entry so interpolation never wraps
+	 */
+	private static final double[] SIN_TABLE = new double[TRIG_RESOLUTION + 1];
+
+	static {
+		for (int i = 0; i <= TRIG_RESOLUTION; i++) {
+			SIN_TABLE[i] = Math.sin(i * 2 * Math.PI / TRIG_RESOLUTION);
+		}
+	}
+
+	private static final ThreadLocal<ThreadStream> STREAMS = ThreadLocal.withInitial(ThreadStream::new);
+
+	/**
+	 * Per-thread stream together with the seed generation it was derived from
+	 */
+	private static final class ThreadStream {
+		final RandomStream stream = new RandomStream(0);
+		int generation = -1;
+	}
+
+	/**
+	 * Sets the global seed. Every thread's stream is rederived from it on its next
+	 * use, based on the thread's name so the result does not depend on which
+	 * thread happened to start first.
+	 * 
+	 * @param seed - New global seed
+	 */
+	public static void setSeed(long seed) {
+		globalSeed = seed;
+		seedGeneration++;
+	}
+
+	/**
+	 * @return The current global seed
+	 */
+	public static long getSeed() {
+		return globalSeed;
+	}
+
+	/**
+	 * Derives a seed from the global seed and a salt. Useful to give a unit of
+	 * work (e.g. one chunk of particles in one frame) its own reproducible stream
+	 * no matter which thread runs it.
+	 * 
+	 * @param salt - Salt
+	 * @return Seed derived from the global seed
+	 */
+	public static long seedFor(long salt) {
+		return RandomStream.mix(globalSeed, salt);
+	}
+
+	/**
+	 * @return The random stream of the current thread
+	 */
+	public static RandomStream stream() {
+		ThreadStream ts = STREAMS.get();
+		int generation = seedGeneration;
+		if (ts.generation != generation) {
+			ts.stream.setState(seedFor(Thread.currentThread().getName().hashCode()));
+			ts.generation = generation;
+		}
+		return ts.stream;
+	}
+
 	/**
 	 * Ranged Integer
 	 * 
@@ -13,20 +118,18 @@ public class MathUtils {
 	 * @return Random within the given range
 	 */
 	public static int randInt(int min, int max) {
-		Random r = new Random();
-		return r.nextInt((max - min) + 1) + min;
+		return randInt(stream(), min, max);
 	}
 
 	/**
-	 * Seeded ranged Integer
+	 * Ranged Integer from the given stream
 	 * 
-	 * @param min  - Minimum value
-	 * @param max  - Maximum value
-	 * @param seed - Seed
+	 * @param r   - Random stream
+	 * @param min - Minimum value
+	 * @param max - Maximum value
 	 * @return Random within the given range
 	 */
-	public static int randInt(int min, int max, long seed) {
-		Random r = new Random(seed);
+	public static int randInt(RandomStream r, int min, int max) {
 		return r.nextInt((max - min) + 1) + min;
 	}
 
@@ -38,20 +141,18 @@ public class MathUtils {
 	 * @return Random within the given range
 	 */
 	public static double randDouble(double min, double max) {
-		Random r = new Random();
-		return (min + (max - min) * r.nextDouble());
+		return randDouble(stream(), min, max);
 	}
 
 	/**
-	 * Seeded ranged Double
+	 * Ranged Double from the given stream
 	 * 
-	 * @param min  - Minimum value
-	 * @param max  - Maximum value
-	 * @param seed - Seed
+	 * @param r   - Random stream
+	 * @param min - Minimum value
+	 * @param max - Maximum value
 	 * @return Random within the given range
 	 */
-	public static double randDouble(double min, double max, long seed) {
-		Random r = new Random(seed);
+	public static double randDouble(RandomStream r, double min, double max) {
 		return (min + (max - min) * r.nextDouble());
 	}
 
@@ -63,7 +164,18 @@ public class MathUtils {
 	 * @return Random within the given range
 	 */
 	public static float randFloat(float min, float max) {
-		Random r = new Random();
+		return randFloat(stream(), min, max);
+	}
+
+	/**
+	 * Ranged Float from the given stream
+	 * 
+	 * @param r   - Random stream
+	 * @param min - Minimum value
+	 * @param max - Maximum value
+	 * @return Random within the given range
+	 */
+	public static float randFloat(RandomStream r, float min, float max) {
 		return (min + (max - min) * r.nextFloat());
 	}
 
@@ -75,6 +187,78 @@ public class MathUtils {
 	 * @return Boolean with a {@code chance} chance of being true
 	 */
 	public static boolean randomChance(double chance) {
-		return new Random().nextDouble() < chance;
+		return randomChance(stream(), chance);
+	}
+
+	/**
+	 * Returns true at the given chance in percent, drawn from the given stream
+	 * 
+	 * @param r      - Random stream
+	 * @param chance - Chance for the returned value to be true in a range of 0.0 to
+	 *               1.0 (e.g. 0.5 being 50% chance)
+	 * @return Boolean with a {@code chance} chance of being true
+	 */
+	public static boolean randomChance(RandomStream r, double chance) {
+		return r.nextDouble() < chance;
+	}
+
+	/**
+	 * Fast sine from the lookup table
+	 * 
+	 * @param deg - Angle in degrees
+	 * @return Sine within {@link #TRIG_ERROR_BOUND}
+	 */
+	public static double sinDeg(double deg) {
+		return lookup(deg * STEPS_PER_DEGREE, 0);
+	}
+
+	/**
+	 * Fast cosine from the lookup table
+	 * 
+	 * @param deg - Angle in degrees
+	 * @return Cosine within {@link #TRIG_ERROR_BOUND}
+	 */
+	public static double cosDeg(double deg) {
+		return lookup(deg * STEPS_PER_DEGREE, TRIG_QUARTER);
+	}
+
+	/**
+	 * Fast sine from the lookup table
+	 * 
+	 * @param rad - Angle in radians
+	 * @return Sine within {@link #TRIG_ERROR_BOUND}
+	 */
+	public static double sin(double rad) {
+		return lookup(rad * STEPS_PER_RADIAN, 0);
+	}
+
+	/**
+	 * Fast cosine from the lookup table
+	 * 
+	 * @param rad - Angle in radians
+	 * @return Cosine within {@link #TRIG_ERROR_BOUND}
+	 */
+	public static double cos(double rad) {
+		return lookup(rad * STEPS_PER_RADIAN, TRIG_QUARTER);
+	}
+
+	/**
+	 * Interpolates the sine table
+	 * 
+	 * @param steps  - Angle in table steps
+	 * @param offset - Steps added to the angle (a quarter turn for the cosine)
+	 */
+	private static double lookup(double steps, int offset) {
+		double floor = Math.floor(steps);
+		int i = (int) ((long) floor + offset & TRIG_MASK);
+		double a = SIN_TABLE[i];
+		return a + (SIN_TABLE[i + 1] - a) * (steps - floor);
+	}
+
+	private static int trigResolution(int steps) {
+		if (steps < 64 || Integer.bitCount(steps) != 1) {
+			throw new IllegalArgumentException("fireworks.trigResolution is no power of two >= 64: " + steps);
+		}
+		return steps;
 	}
 }
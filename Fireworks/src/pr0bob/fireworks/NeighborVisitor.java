@@ -0,0 +1,18 @@
+package pr0bob.fireworks;
+/**
+ * Callback für Nachbarschaftsabfragen im {@link ParticleGrid}
+ */
+public interface NeighborVisitor {
+
+	/**
+	 * Wird für jeden Nachbarn innerhalb des Radius einmal aufgerufen
+	 * 
+	 * @param particle - Index des abfragenden Partikels (-1 bei Abfrage einer
+	 *                 Position)
+	 * @param neighbor - Index des Nachbarn im ParticleStore
+	 * @param dx       - X-Abstand vom Abfragepunkt zum Nachbarn
+	 * @param dy       - Y-Abstand vom Abfragepunkt zum Nachbarn
+	 * @param distSq   - Quadrat des Abstands
+	 */
+	void visit(int particle, int neighbor, float dx, float dy, float distSq);
+}
@@ -0,0 +1,31 @@
+package pr0bob.fireworks;
+/**
+ * Statisches Hindernis an dem die Partikel abprallen (z.B. ein Gebäude der
+ * Skyline oder eine einzelne Kante)
+ * 
+ * Ein Hindernis wird in der {@link CollisionWorld} anhand seiner Bounding-Box
+ * in das Raster der Broadphase eingetragen und nur für Partikel geprüft, deren
+ * Weg in einer der gleichen Zellen liegt. Die Bounding-Box darf sich nach dem
+ * Hinzufügen nicht mehr ändern
+ */
+public interface Obstacle {
+
+	double getMinX();
+
+	double getMinY();
+
+	double getMaxX();
+
+	double getMaxY();
+
+	/**
+	 * Prüft ob das Partikel im nächsten Schritt (von der aktuellen Position um
+	 * die Geschwindigkeit weiter) das Hindernis trifft, und lenkt in dem Fall die
+	 * Geschwindigkeit um. Darf nichts allokieren, wird parallel für viele Partikel
+	 * aufgerufen
+	 * 
+	 * @param p - Zeiger auf das Partikel
+	 * @return {@code true} bei einer Kollision
+	 */
+	boolean reflect(Particle p);
+}
@@ -0,0 +1,349 @@
+package pr0bob.fireworks;
+import java.util.Arrays;
+
+/**
+ * Farbpalette eines {@link ParticleStore}
+ *
+ * Partikel speichern ihre Farben nicht als ARGB-Werte, sondern als 16-Bit-Index
+ * in die Palette. Eine Farbe wird beim Erzeugen des Partikels einmal
+ * eingetragen (interniert), dabei werden die vormultiplizierte Farbe für den
+ * {@link RasterRenderer} und die Farbe der Leuchtspur für jede benutzte
+ * Tracer-Stärke ausgerechnet. Die Varianten für das Flackern (dunkler, heller)
+ * werden beim ersten Bedarf berechnet und ebenfalls gemerkt. Beim Zeichnen ist
+ * eine Farbe damit nur noch ein Array-Zugriff
+ *
+ * Einträge, die kein Partikel mehr benutzt, gibt {@link #sweep()} frei (siehe
+ * {@link ParticleStore#compactPalette()}), die Indizes der übrigen Einträge
+ * bleiben dabei gleich. Ist die Palette trotzdem voll, wird eine neue Farbe auf
+ * eine von 4096 fest reservierten groben Farben (4 Bit pro Kanal, deckend)
+ * gerundet
+ *
+ * Nicht threadsicher, Farben werden nur im Thread der Simulation eingetragen
+ * (nie während des parallelen Updates)
+ */
+public class Palette {
+
+	/**
+	 * Anzahl aller Einträge (Indizes passen in ein {@code char})
+	 */
+	public static final int CAPACITY = 1 << 16;
+
+	private static final int COARSE_COLORS = 1 << 12;
+
+	/**
+	 * Erster Index der groben Farben, alles darunter wird frei vergeben
+	 */
+	static final int COARSE_BASE = CAPACITY - COARSE_COLORS;
+
+	/*
+	 * Fest eingetragene Farben
+	 */
+	public static final int TRANSPARENT = 0;
+	public static final int WHITE = 1;
+	private static final int RESERVED = 2;
+
+	/**
+	 * Anzahl der Tracer-Stärken (Stufen von 1/255, siehe
+	 * {@link #tracerLevel(double)})
+	 */
+	public static final int TRACER_LEVELS = 256;
+
+	/**
+	 * Stufe der Default-Tracer-Stärke eines Partikels
+	 */
+	static final int DEFAULT_TRACER_LEVEL = tracerLevel(Particle.DEFAULT_TRACER_STRENGTH);
+
+	/*
+	 * Farbe als ARGB und vormultipliziert
+	 */
+	final int[] argb = new int[CAPACITY];
+	final int[] premultiplied = new int[CAPACITY];
+
+	/**
+	 * Vormultiplizierte Farben der Leuchtspuren pro Tracer-Stufe, eine Tabelle wird
+	 * erst angelegt wenn die Stufe benutzt wird
+	 */
+	private final int[][] tracer = new int[TRACER_LEVELS][];
+	private final int[] tracerLevels = new int[TRACER_LEVELS];
+	private int tracerLevelCount = 0;
+
+	/**
+	 * Index der Varianten für das Flackern, 0 = noch nicht berechnet
+	 */
+	private final char[] darker = new char[CAPACITY];
+	private final char[] brighter = new char[CAPACITY];
+
+	/**
+	 * Hash-Tabelle mit linearem Sondieren für die frei vergebenen Einträge,
+	 * enthält Index + 1 (0 = leer)
+	 */
+	private final char[] table = new char[Integer.highestOneBit(COARSE_BASE) << 2];
+	private final int mask = table.length - 1;
+
+	/**
+	 * Freigegebene Indizes, der kleinste liegt oben
+	 */
+	private final char[] free = new char[COARSE_BASE];
+	private int freeCount = 0;
+
+	/**
+	 * Nächster noch nie vergebener Index
+	 */
+	private int next = RESERVED;
+
+	/**
+	 * Anzahl der belegten frei vergebenen Einträge (inklusive der festen)
+	 */
+	private int used = RESERVED;
+
+	/**
+	 * Markierungen für {@link #sweep()}, ein Bit pro Index
+	 */
+	private final long[] marks = new long[CAPACITY / 64];
+
+	private long compactions = 0;
+	private long overflows = 0;
+
+	public Palette() {
+		set(TRANSPARENT, 0);
+		set(WHITE, 0xFFFFFFFF);
+		insertIntoTable(TRANSPARENT);
+		insertIntoTable(WHITE);
+		for (int i = 0; i < COARSE_COLORS; i++) {
+			set(COARSE_BASE + i, 0xFF000000 | ((i >> 8) & 0xF) * 0x11 << 16 | ((i >> 4) & 0xF) * 0x11 << 8
+					| (i & 0xF) * 0x11);
+		}
+		useTracerLevel(DEFAULT_TRACER_LEVEL);
+	}
+
+	/**
+	 * Trägt eine Farbe ein, falls sie noch nicht in der Palette ist
+	 *
+	 * @param argb - Farbe als ARGB
+	 * @return Index der Farbe
+	 */
+	public int intern(int argb) {
+		int h = hash(argb);
+		for (; table[h] != 0; h = (h + 1) & mask) {
+			int entry = table[h] - 1;
+			if (this.argb[entry] == argb) {
+				return entry;
+			}
+		}
+
+		int entry;
+		if (freeCount > 0) {
+			entry = free[--freeCount];
+		} else if (next < COARSE_BASE) {
+			entry = next++;
+		} else {
+			overflows++;
+			return coarse(argb);
+		}
+		set(entry, argb);
+		table[h] = (char) (entry + 1);
+		used++;
+		return entry;
+	}
+
+	/**
+	 * Nächste der groben Farben
+	 */
+	private static int coarse(int argb) {
+		int red = (((argb >> 16) & 0xFF) * 15 + 127) / 255;
+		int green = (((argb >> 8) & 0xFF) * 15 + 127) / 255;
+		int blue = ((argb & 0xFF) * 15 + 127) / 255;
+		return COARSE_BASE + (red << 8 | green << 4 | blue);
+	}
+
+	private void set(int entry, int argb) {
+		this.argb[entry] = argb;
+		premultiplied[entry] = RasterRenderer.premultiply(argb);
+		darker[entry] = 0;
+		brighter[entry] = 0;
+		for (int l = 0; l < tracerLevelCount; l++) {
+			int level = tracerLevels[l];
+			tracer[level][entry] = tracerColor(argb, level);
+		}
+	}
+
+	/**
+	 * Farbe der Leuchtspur mit der Tracer-Stärke als Alpha (vormultipliziert)
+	 */
+	private static int tracerColor(int argb, int level) {
+		int alpha = (argb >>> 24) * level / 255;
+		return RasterRenderer.premultiply((argb & 0xFFFFFF) | (alpha << 24));
+	}
+
+	/**
+	 * Rundet eine Tracer-Stärke auf eine Stufe, die Stärke wird dabei auf 0.0 - 1.0
+	 * begrenzt
+	 *
+	 * @param strength - Tracer-Stärke
+	 * @return Stufe (0 - 255)
+	 */
+	public static int tracerLevel(double strength) {
+		return (int) Math.round(Math.min(Math.max(strength, 0), 1) * (TRACER_LEVELS - 1));
+	}
+
+	/**
+	 * Stellt sicher, dass die Tabelle für die Tracer-Stufe existiert
+	 *
+	 * @param level - Stufe (0 - 255)
+	 * @return Die Stufe
+	 */
+	public int useTracerLevel(int level) {
+		if (level < 0 || level >= TRACER_LEVELS) {
+			throw new IllegalArgumentException("level out of range: " + level);
+		}
+		if (tracer[level] == null) {
+			int[] colors = new int[CAPACITY];
+			for (int i = 0; i < next; i++) {
+				colors[i] = tracerColor(argb[i], level);
+			}
+			for (int i = COARSE_BASE; i < CAPACITY; i++) {
+				colors[i] = tracerColor(argb[i], level);
+			}
+			tracer[level] = colors;
+			tracerLevels[tracerLevelCount++] = level;
+		}
+		return level;
+	}
+
+	/**
+	 * Vormultiplizierte Farbe der Leuchtspur, die Stufe muss vorher mit
+	 * {@link #useTracerLevel(int)} angelegt worden sein
+	 *
+	 * @param index - Index der Farbe
+	 * @param level - Tracer-Stufe
+	 */
+	public int tracer(int index, int level) {
+		return tracer[level][index];
+	}
+
+	/**
+	 * Index der dunkleren Variante (wie {@link java.awt.Color#darker()})
+	 */
+	public int darker(int index) {
+		int variant = darker[index];
+		if (variant == 0) {
+			variant = intern(SpawnKernel.darker(argb[index]));
+			darker[index] = (char) variant;
+		}
+		return variant;
+	}
+
+	/**
+	 * Index der helleren Variante (wie {@link java.awt.Color#brighter()})
+	 */
+	public int brighter(int index) {
+		int variant = brighter[index];
+		if (variant == 0) {
+			variant = intern(SpawnKernel.brighter(argb[index]));
+			brighter[index] = (char) variant;
+		}
+		return variant;
+	}
+
+	/**
+	 * Farbe als ARGB
+	 */
+	public int argb(int index) {
+		return argb[index];
+	}
+
+	/**
+	 * Farbe vormultipliziert für den {@link RasterRenderer}
+	 */
+	public int premultiplied(int index) {
+		return premultiplied[index];
+	}
+
+	/**
+	 * Löscht alle Markierungen vor dem Markieren der benutzten Einträge
+	 */
+	void clearMarks() {
+		Arrays.fill(marks, 0);
+	}
+
+	/**
+	 * Markiert einen Eintrag als benutzt, er bleibt beim nächsten {@link #sweep()}
+	 * erhalten
+	 */
+	void mark(int index) {
+		marks[index >>> 6] |= 1L << index;
+	}
+
+	private boolean isMarked(int index) {
+		return (marks[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Gibt alle nicht markierten Einträge frei, die übrigen behalten ihren Index
+	 *
+	 * @return Anzahl der freigegebenen Einträge
+	 */
+	int sweep() {
+		compactions++;
+		int before = used;
+		Arrays.fill(table, (char) 0);
+		freeCount = 0;
+		used = RESERVED;
+		insertIntoTable(TRANSPARENT);
+		insertIntoTable(WHITE);
+		// Von oben nach unten, damit die kleinsten Indizes zuerst wieder vergeben
+		// werden
+		for (int i = next - 1; i >= RESERVED; i--) {
+			if (isMarked(i)) {
+				insertIntoTable(i);
+				used++;
+			} else {
+				free[freeCount++] = (char) i;
+			}
+		}
+
+		// Gemerkte Varianten die gerade freigegeben wurden vergessen
+		for (int i = 0; i < CAPACITY; i++) {
+			if (darker[i] >= RESERVED && darker[i] < COARSE_BASE && !isMarked(darker[i])) {
+				darker[i] = 0;
+			}
+			if (brighter[i] >= RESERVED && brighter[i] < COARSE_BASE && !isMarked(brighter[i])) {
+				brighter[i] = 0;
+			}
+		}
+		return before - used;
+	}
+
+	private int hash(int argb) {
+		return (argb * 0x9E3779B9 >>> 15) & mask;
+	}
+
+	private void insertIntoTable(int entry) {
+		int h = hash(argb[entry]);
+		while (table[h] != 0) {
+			h = (h + 1) & mask;
+		}
+		table[h] = (char) (entry + 1);
+	}
+
+	/**
+	 * Anzahl der belegten Einträge (ohne die groben Farben)
+	 */
+	public int size() {
+		return used;
+	}
+
+	/**
+	 * Wie oft unbenutzte Einträge freigegeben wurden
+	 */
+	public long getCompactions() {
+		return compactions;
+	}
+
+	/**
+	 * Anzahl der Farben die wegen voller Palette gerundet wurden
+	 */
+	public long getOverflows() {
+		return overflows;
+	}
+}
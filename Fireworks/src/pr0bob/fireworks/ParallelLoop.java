@@ -0,0 +1,136 @@
+package pr0bob.fireworks;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wiederverwendbare parallele Schleife über die Blöcke [0, count) auf einem
+ * ForkJoinPool
+ *
+ * Statt die Blöcke rekursiv in neue Tasks aufzuteilen, holen sich der
+ * aufrufende Thread und höchstens so viele Tasks wie der Pool weitere Threads
+ * hat die Blöcke über einen gemeinsamen Zähler ab. Die Tasks gehören der
+ * Schleife und werden vor jedem Lauf zurückgesetzt. Auf das Ende der Tasks
+ * wartet der Aufrufer mit park/unpark statt mit join(), ein Thread außerhalb des
+ * Pools legt beim Warten per join() jedes Mal einen Knoten an. Im
+ * eingeschwungenen Zustand wird dadurch nichts allokiert. Welcher Thread
+ * welchen Block bekommt ist zufällig, {@link #block(int)} darf daher nur von
+ * der Nummer des Blocks abhängen
+ *
+ * Nicht threadsicher, es läuft immer nur ein {@link #run(ForkJoinPool, int)}
+ * zur Zeit
+ */
+abstract class ParallelLoop {
+
+	private final AtomicInteger next = new AtomicInteger();
+	private int count;
+
+	/**
+	 * Tasks die noch laufen, der letzte weckt den Aufrufer
+	 */
+	private final AtomicInteger running = new AtomicInteger();
+	private volatile Thread waiter;
+
+	/**
+	 * Erster Fehler eines Tasks im laufenden Durchgang
+	 */
+	private volatile Throwable failure;
+
+	private Worker[] workers = new Worker[0];
+
+	/**
+	 * Bearbeitet einen Block, läuft auf einem beliebigen Thread des Pools oder
+	 * dem aufrufenden
+	 */
+	protected abstract void block(int index);
+
+	/**
+	 * Bearbeitet alle Blöcke [0, count) und kehrt erst zurück wenn alle fertig
+	 * sind. Der aufrufende Thread darf nicht zum Pool gehören
+	 *
+	 * @param pool  - Pool, {@code null} = sequentiell im aufrufenden Thread
+	 * @param count - Anzahl der Blöcke
+	 */
+	final void run(ForkJoinPool pool, int count) {
+		int tasks = pool == null ? 0 : Math.min(pool.getParallelism(), count - 1);
+		if (tasks <= 0) {
+			for (int i = 0; i < count; i++) {
+				block(i);
+			}
+			return;
+		}
+		if (workers.length < tasks) {
+			Worker[] grown = new Worker[tasks];
+			System.arraycopy(workers, 0, grown, 0, workers.length);
+			for (int i = workers.length; i < tasks; i++) {
+				grown[i] = new Worker();
+			}
+			workers = grown;
+		}
+		this.count = count;
+		next.set(0);
+		failure = null;
+		waiter = Thread.currentThread();
+		running.set(tasks);
+		for (int i = 0; i < tasks; i++) {
+			workers[i].reinitialize();
+			pool.execute(workers[i]);
+		}
+		try {
+			drain();
+		} finally {
+			// Auch bei einem Fehler erst zurückkehren wenn kein Task mehr läuft,
+			// sonst würde der nächste Lauf einen laufenden Task zurücksetzen
+			while (running.get() > 0) {
+				LockSupport.park(this);
+			}
+			for (int i = 0; i < tasks; i++) {
+				// Der Zähler sinkt kurz bevor der Task als fertig gilt
+				while (!workers[i].isDone()) {
+					Thread.yield();
+				}
+			}
+			waiter = null;
+		}
+		Throwable t = failure;
+		if (t != null) {
+			failure = null;
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw new IllegalStateException(t);
+		}
+	}
+
+	private void drain() {
+		int i;
+		while ((i = next.getAndIncrement()) < count) {
+			block(i);
+		}
+	}
+
+	private class Worker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			try {
+				drain();
+			} catch (Throwable t) {
+				if (failure == null) {
+					failure = t;
+				}
+				// Übrige Blöcke nicht mehr anfangen
+				next.set(count);
+			} finally {
+				if (running.decrementAndGet() == 0) {
+					LockSupport.unpark(waiter);
+				}
+			}
+		}
+	}
+}
@@ -1,17 +1,16 @@
 package pr0bob.fireworks;
 import java.awt.Color;
-import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
 
 /**
- * Definiert ein Partikel-Objekt
+ * Definiert ein Partikel
  * 
  * Die Eigenschaften bestimmen das physikalische Verhalten sowie die Art der
- * Darstellung beim Rendern
+ * Darstellung beim Rendern. Die eigentlichen Daten liegen im
+ * {@link ParticleStore} der Simulation, ein Particle-Objekt ist nur ein
+ * "Zeiger" auf einen Index darin und kann mit {@link #at(int)} beliebig oft
+ * wiederverwendet werden
  */
 public class Particle {
 	/**
@@ -24,173 +23,154 @@ public class Particle {
 	 * Bestimmt die Default-Sichtbarkeit der Tracer (z.B. 0.2 = 20% der Helligkeit
 	 * der Partikelfarbe)
 	 */
-	private static final double DEFAULT_TRACER_STRENGTH = 0.2d;
+	static final double DEFAULT_TRACER_STRENGTH = 0.2d;
 
-	/**
-	 * Bestimmt die Stärke der Gravitation als Vektor<br>
-	 * (X sollte immer 0 sein, außer man will Gravitation zur Seite hin)<br>
-	 * Positive Y-Werte bedeuten Anziehung nach unten, negative würden quasi die
-	 * Gravitation umkehren
-	 */
-	private static final Vector GRAVITY = new Vector(0.0, 0.087);
-
-	private Color color;
-	private Vector position;
-	private Vector velocity;
+	private final FireworksSimulation simulation; // Simulation in der das Partikel "lebt"
+	private final ParticleStore store;
 
 	/**
-	 * "Lebenszeit" des Partikels in Frames
+	 * Index des Partikels im Store
 	 */
-	private long lifetime;
-	private long birthtime; // Wird mit lifetime abgeglichen um zu bestimmen ob das Partikel "tot" ist
-	private boolean alive = true;
+	private int index = -1;
 
 	/**
-	 * Farbe der "Spuren" die das Partikel ggf. hinterlässt
+	 * Zuletzt für Java2D verwendete Farbe
 	 */
-	private Color tracerColor = null;
-	private boolean tracer = true;
-	private double tracerStrength = DEFAULT_TRACER_STRENGTH;
+	private Color lastAwtColor;
 
 	/**
-	 * Radius in Px für kreisförmiges Leuchten um das Partikel
+	 * Erstellt einen Zeiger auf die Partikel der gegebenen Simulation
+	 * 
+	 * @param simulation
 	 */
-	private int glowRadius = 0;
-	private boolean glow = false;
+	public Particle(FireworksSimulation simulation) {
+		this.simulation = simulation;
+		this.store = simulation.getParticles();
+	}
 
 	/**
-	 * "Flimmer"-Rate des Partikels in Frames (0 = kein Flimmern, gute Werte liegen
-	 * zwischen 1 und 20)
+	 * Setzt den Zeiger auf das Partikel am gegebenen Index
+	 * 
+	 * @param index - Index im ParticleStore
+	 * @return this
 	 */
-	private int flickerRate = 0;
-	private Color flickerColor = null;
-	private boolean flicker = false;
-	private boolean currentFlicker = flicker;
-
-	private boolean gravityOn = true; // Standardmäßig an, kann aber deaktiviert werden für einzelne Partikel
-
-	private Display parentDisplay = null; // Display auf dem das Partikel "lebt"
+	public Particle at(int index) {
+		this.index = index;
+		return this;
+	}
 
-	/**
-	 * Position im letzten Frame (wird genutzt um die Spuren zu erzeigen)
-	 */
-	private Point lastPosition = new Point();
+	public int getIndex() {
+		return index;
+	}
 
 	/**
-	 * Wenn {@code true} "wobbelt" das Partikel bei jedem Update etwas zufällig
-	 * umher
+	 * Erstellt ein neues Partikel im Store mit allen nötigen Parametern zum
+	 * Darstellen und setzt den Zeiger darauf
+	 * 
+	 * @param x         - Initiale X-Position
+	 * @param y         - Initiale Y-Position
+	 * @param color     - Grundfarbe
+	 * @param velocityX - Initiale Geschwindigkeit in X-Richtung
+	 * @param velocityY - Initiale Geschwindigkeit in Y-Richtung
+	 * @param lifetime  - Lebenszeit in Simulationsschritten
+	 * @return {@code false} wenn der Store voll ist, der Zeiger bleibt dann
+	 *         unverändert
 	 */
-	private boolean jitter = true;
-
-	private ArrayList<BufferedImage> glowBuffer = new ArrayList<>();
-	private ArrayList<BufferedImage> glowBufferFlicker = new ArrayList<>();
+	public boolean spawn(int x, int y, Color color, double velocityX, double velocityY, long lifetime) {
+		int i = store.add();
+		if (i < 0) {
+			return false;
+		}
+		index = i;
+		store.posX[index] = x;
+		store.posY[index] = y;
+		store.velX[index] = velocityX;
+		store.velY[index] = velocityY;
+		store.lastX[index] = x;
+		store.lastY[index] = y;
+		store.color[index] = (char) store.palette.intern(color.getRGB());
+		store.tracerColor[index] = store.color[index];
+		store.lifetime[index] = (int) lifetime;
+		store.birth[index] = simulation.getCurrentTick();
+		return true;
+	}
 
 	/**
-	 * Erstellt ein leeres neues Partikel
+	 * Wie {@link #spawn(int, int, Color, double, double, long)}, die
+	 * Geschwindigkeit wird aber direkt aus Betrag und Richtung gesetzt statt
+	 * danach mit {@link #rotateVelocityByDeg(double)} gedreht
 	 * 
-	 * @param parentDisplay
+	 * @param speed - Betrag der Geschwindigkeit
+	 * @param deg   - Richtung in Grad (0 = nach rechts, 90 = nach unten)
 	 */
-	public Particle(Display parentDisplay) {
-		this.parentDisplay = parentDisplay;
+	public boolean spawnPolar(int x, int y, Color color, double speed, double deg, long lifetime) {
+		return spawn(x, y, color, speed * MathUtils.cosDeg(deg), speed * MathUtils.sinDeg(deg), lifetime);
 	}
 
 	/**
-	 * Erstellt ein Partikel mit allen nötigen Parametern zum Darstellen
+	 * Zeichnet das Partikel anhand seiner Eigenschaften auf den gegebenen
+	 * Graphics2D Context (Aus einem Panel, oder einem BufferedImage z.B.)
 	 * 
-	 * @param x             - Initiale X-Position
-	 * @param y             - Initiale Y-Position
-	 * @param color         - Grundfarbe
-	 * @param velocity      - Geschwindigkeits-Vektor (initial)
-	 * @param lifetime      - Lebenszeit in Frames
-	 * @param parentDisplay
+	 * @param g2d
+	 * @param alpha     - Anteil (0.0 - 1.0) zwischen letztem und aktuellem
+	 *                  Simulationsschritt, an dem das Partikel gezeichnet wird
+	 * @param glowCache - Sprites für das Leuchten (pro Renderer)
 	 */
-	public Particle(int x, int y, Color color, Vector velocity, long lifetime, Display parentDisplay) {
-		position = new Vector(x, y);
-		this.velocity = velocity;
-		this.color = color;
-		this.lifetime = lifetime;
-		this.parentDisplay = parentDisplay;
-		lastPosition = new Point((int) position.getX(), (int) position.getY());
-		birthtime = parentDisplay.getCurrentFrame();
-	}
-
-	public ArrayList<BufferedImage> createGlow() {
-		if (glowRadius <= 1) {
-			return new ArrayList<>();
+	public void draw(Graphics2D g2d, double alpha, GlowSpriteCache glowCache) {
+		if (!isAlive()) {
+			return;
 		}
-		double alphaStep = 200 / glowRadius;
-		double alpha = 200;
-
-		ArrayList<BufferedImage> buffer = new ArrayList<>();
-		for (int i = 1; i < glowRadius; i++) {
-			BufferedImage glowB = new BufferedImage(glowRadius * 2, glowRadius * 2, BufferedImage.TYPE_INT_ARGB_PRE);
-			Graphics2D g2d = (Graphics2D) glowB.getGraphics();
 
-			Color baseGlowColor = color;
-			if (currentFlicker) {
-				baseGlowColor = flickerColor; // Flickern wird auch auf das Leuchten übertragen
-			}
+		boolean currentFlicker = hasFlag(ParticleStore.FLAG_CURRENT_FLICKER);
 
-			// Alpha-Wert des Leuchtens wird mit steigendem Radius stufenweise herabgesetzt
-			Color glowCol = new Color(baseGlowColor.getRed(), baseGlowColor.getGreen(), baseGlowColor.getBlue(),
-					(int) alpha);
+		float lastX = store.lastX[index];
+		float lastY = store.lastY[index];
+		int x = (int) (lastX + (store.posX[index] - lastX) * alpha);
+		int y = (int) (lastY + (store.posY[index] - lastY) * alpha);
+		int glowRadius = store.glowRadius[index];
 
-			g2d.setColor(glowCol);
-			g2d.drawOval(glowB.getWidth() / 2 - i, glowB.getHeight() / 2 - i, 2 * i, 2 * i);
-			alpha = Math.max(alpha - alphaStep, 0); // Math.max um zu verhindern dass negative Werte vorkommen
+		int color = store.palette.argb(currentFlicker ? store.flickerColor[index] : store.color[index]);
 
-			buffer.add(glowB);
+		// Leuchten, falls gesetzt (Flackern wird auch auf das Leuchten übertragen)
+		if (hasGlow() && glowRadius > 1) {
+			BufferedImage sprite = glowCache.get(color, glowRadius, currentFlicker);
+			g2d.drawImage(sprite, x - glowRadius, y - glowRadius, null);
 		}
-		return buffer;
+
+		g2d.setColor(awtColor(color));
+		g2d.drawLine(x, y, x, y);
 	}
 
 	/**
-	 * Zeichnet das Partikel anhand seiner Eigenschaften auf den gegebenen
-	 * Graphics2D Context (Aus einem Panel, oder einem BufferedImage z.B.)
+	 * Zeichnet das Partikel direkt in das Raster eines Bildes (siehe
+	 * {@link RasterRenderer})
 	 * 
-	 * @param g2d
+	 * @param raster
+	 * @param alpha     - Anteil (0.0 - 1.0) zwischen letztem und aktuellem
+	 *                  Simulationsschritt, an dem das Partikel gezeichnet wird
+	 * @param glowCache - Sprites für das Leuchten (pro Renderer)
 	 */
-	public void draw(Graphics2D g2d) {
-		if (!alive) {
+	public void draw(RasterRenderer raster, double alpha, GlowSpriteCache glowCache) {
+		if (!isAlive()) {
 			return;
 		}
 
-		// Wenn Leuchten an und der Buffer leer ist, Buffer erstellen
-		if (!currentFlicker && glow && glowBuffer.isEmpty()) {
-			glowBuffer = createGlow();
-		}
-		if (currentFlicker && glow && glowBufferFlicker.isEmpty()) {
-			glowBufferFlicker = createGlow();
-		}
+		boolean currentFlicker = hasFlag(ParticleStore.FLAG_CURRENT_FLICKER);
 
-		// Bestimmt ob das Partikel flackert (true -> false -> true etc. entsprechend
-		// der Flacker-Rate)
-		if (flickerRate > 0 && flickerColor != null && (parentDisplay.getCurrentFrame() - birthtime) % flickerRate == 0
-				&& !currentFlicker) {
-			currentFlicker = MathUtils.randomChance(0.90d); // Minimal zufällig um zu verhindern dass gleichzeitig
-															// erstellte
-			// Partikel synchron flackern
-		} else {
-			currentFlicker = false;
-		}
+		float lastX = store.lastX[index];
+		float lastY = store.lastY[index];
+		int x = (int) (lastX + (store.posX[index] - lastX) * alpha);
+		int y = (int) (lastY + (store.posY[index] - lastY) * alpha);
+		int glowRadius = store.glowRadius[index];
 
-		// Leuchten, falls gesetzt
-		if (!currentFlicker && glow && glowRadius > 1) {
-			for (BufferedImage glowB : glowBuffer) {
-				g2d.drawImage(glowB, (int) position.getX() - glowRadius, (int) position.getY() - glowRadius, null);
-			}
-		} else if (currentFlicker && glow && glowRadius > 1) {
-			for (BufferedImage glowB : glowBufferFlicker) {
-				g2d.drawImage(glowB, (int) position.getX() - glowRadius, (int) position.getY() - glowRadius, null);
-			}
-		}
+		int color = currentFlicker ? store.flickerColor[index] : store.color[index];
 
-		if (currentFlicker) {
-			g2d.setColor(flickerColor);
-		} else {
-			g2d.setColor(color);
+		if (hasGlow() && glowRadius > 1) {
+			BufferedImage sprite = glowCache.get(store.palette.argb(color), glowRadius, currentFlicker);
+			raster.blit(sprite, x - glowRadius, y - glowRadius);
 		}
-		g2d.drawLine((int) position.getX(), (int) position.getY(), (int) position.getX(), (int) position.getY());
+
+		raster.plot(x, y, store.palette.premultiplied(color));
 	}
 
 	/**
@@ -200,272 +180,369 @@ public class Particle {
 	 * @param g2d
 	 */
 	public void drawTracer(Graphics2D g2d) {
-		if (!tracer) {
+		if (!hasTracers()) {
+			return;
+		}
+
+		g2d.setColor(awtColor(getTracerDrawColor()));
+		g2d.drawLine((int) store.lastX[index], (int) store.lastY[index], (int) store.posX[index],
+				(int) store.posY[index]);
+	}
+
+	/**
+	 * Color-Objekt für Java2D, das letzte wird wiederverwendet solange die Farbe
+	 * gleich bleibt (Partikel eines Ausbruchs liegen meist hintereinander)
+	 */
+	private Color awtColor(int argb) {
+		if (lastAwtColor == null || lastAwtColor.getRGB() != argb) {
+			lastAwtColor = new Color(argb, true);
+		}
+		return lastAwtColor;
+	}
+
+	/**
+	 * Zeichnet die Leuchtspuren direkt in das Raster eines Bildes (falls tracer =
+	 * {@code true})
+	 * 
+	 * @param raster
+	 */
+	public void drawTracer(RasterRenderer raster) {
+		if (!hasTracers()) {
 			return;
 		}
 
-		Color tracerCol = tracerColor == null ? color : tracerColor;
-		g2d.setColor(new Color(tracerCol.getRed(), tracerCol.getGreen(), tracerCol.getBlue(),
-				(int) (tracerCol.getAlpha() * tracerStrength)));
-		g2d.drawLine((int) lastPosition.getX(), (int) lastPosition.getY(), (int) position.getX(),
-				(int) position.getY());
+		raster.line((int) store.lastX[index], (int) store.lastY[index], (int) store.posX[index],
+				(int) store.posY[index], store.tracerDrawColor(index));
 	}
 
 	/**
-	 * Prüft die Kollision des Partikels mit den Rändern des Panels und lässt es
-	 * ggf. abprallen
+	 * Farbe der Leuchtspur mit der Tracer-Stärke als Alpha (nicht vormultipliziert)
+	 */
+	private int getTracerDrawColor() {
+		int tracerCol = getTracerColor();
+		int alpha = (tracerCol >>> 24) * (store.tracerLevel[index] & 0xFF) / (Palette.TRACER_LEVELS - 1);
+		return (tracerCol & 0xFFFFFF) | (alpha << 24);
+	}
+
+	/**
+	 * Bestimmt ob das Partikel im aktuellen Simulationsschritt flackert (true ->
+	 * false -> true etc. entsprechend der Flacker-Rate)
+	 * 
+	 * @param tick - Aktueller Simulationsschritt
+	 */
+	public void updateFlicker(long tick) {
+		int flickerRate = store.flickerRate[index];
+		if (flickerRate > 0 && hasFlag(ParticleStore.FLAG_HAS_FLICKER_COLOR)
+				&& (tick - store.birth[index]) % flickerRate == 0 && !hasFlag(ParticleStore.FLAG_CURRENT_FLICKER)) {
+			// Minimal zufällig um zu verhindern dass gleichzeitig erstellte Partikel
+			// synchron flackern
+			setFlag(ParticleStore.FLAG_CURRENT_FLICKER, MathUtils.randomChance(0.90d));
+		} else {
+			setFlag(ParticleStore.FLAG_CURRENT_FLICKER, false);
+		}
+	}
+
+	/**
+	 * Prüft die Kollision des Partikels mit den Rändern des Panels und den
+	 * Hindernissen der {@link CollisionWorld} und lässt es ggf. abprallen
 	 */
 	public void collide() {
-		Dimension bounds = parentDisplay.getInsideBounds();
-		Rectangle north = new Rectangle(0, -500, (int) bounds.getWidth(), 500);
-		Rectangle east = new Rectangle((int) bounds.getWidth(), 0, 500, (int) bounds.getHeight());
-		Rectangle west = new Rectangle(-500, 0, 500, (int) bounds.getHeight());
-		Rectangle south = new Rectangle(0, (int) bounds.getHeight(), (int) bounds.getWidth(), 500);
+		CollisionWorld world = simulation.getCollisionWorld();
 
-		lastPosition = new Point((int) position.getX(), (int) position.getY());
-		Point futurePosition = new Point((int) (position.getX() + velocity.getX()),
-				(int) (position.getY() + velocity.getY()));
+		double x = store.posX[index];
+		double y = store.posY[index];
+		store.lastX[index] = (float) x;
+		store.lastY[index] = (float) y;
+		int futureX = (int) (x + store.velX[index]);
+		int futureY = (int) (y + store.velY[index]);
 
 		boolean collision = false;
 
-		if (north.contains(futurePosition) || south.contains(futurePosition)) {
-			velocity.reverseY();
-			velocity.addX(MathUtils.randDouble(-COLLISION_SPREAD_FACTOR, COLLISION_SPREAD_FACTOR));
+		if (world.hitsHorizontalWall(futureX, futureY)) {
+			store.velY[index] = -store.velY[index];
+			store.velX[index] += MathUtils.randDouble(-COLLISION_SPREAD_FACTOR, COLLISION_SPREAD_FACTOR);
 			collision = true;
 		}
 
-		if (east.contains(futurePosition) || west.contains(futurePosition)) {
-			velocity.reverseX();
-			velocity.addY(MathUtils.randDouble(-COLLISION_SPREAD_FACTOR, COLLISION_SPREAD_FACTOR));
+		if (world.hitsVerticalWall(futureX, futureY)) {
+			store.velX[index] = -store.velX[index];
+			store.velY[index] += MathUtils.randDouble(-COLLISION_SPREAD_FACTOR, COLLISION_SPREAD_FACTOR);
 			collision = true;
 		}
 
+		// Hindernisse nur wenn keine Wand getroffen wurde
+		if (!collision) {
+			collision = world.collideObstacles(this);
+		}
+
 		// Wenn Kollision, dann leichte Verlangsamung und etwas zufllige Rotation
 		if (collision) {
-			velocity.magnitude(MathUtils.randDouble(0.7, 0.9));
-			velocity.rotateByDeg(MathUtils.randDouble(-15, 15));
+			scaleVelocity(MathUtils.randDouble(0.7, 0.9));
+			rotateVelocityByDeg(MathUtils.randDouble(-15, 15));
 		}
 	}
 
 	/**
-	 * Fügt der Geschwindigkeit in jedem Frame die Gravitation hinzu und falls
-	 * jitter = {@code true} wird ein "Wackeln" hinzugefügt
+	 * Ruft den Visitor für alle Partikel im Radius um dieses Partikel auf (Stand
+	 * zu Beginn des Schritts, siehe {@link ParticleGrid})
 	 */
-	public void addGravityAndJitter() {
-		if (gravityOn) {
-			velocity.add(GRAVITY);
-		}
+	public void forEachNeighbor(double radius, NeighborVisitor visitor) {
+		simulation.getParticleGrid().forEachNeighbor(index, (float) radius, visitor);
+	}
 
-		if (jitter) {
-			velocity.add(new Vector(MathUtils.randDouble(-0.2, 0.2), MathUtils.randDouble(-0.02, 0.02)));
-		}
+	/**
+	 * Anzahl der Partikel im Radius um dieses Partikel
+	 */
+	public int countNeighbors(double radius) {
+		return simulation.getParticleGrid().countNeighbors(index, (float) radius);
 	}
 
 	/**
 	 * Zusammenfassende Funktion zum Upate der Partikelposition<br>
-	 * Prüft Kollision, erneuert die Position, fügt ggf. geltende Kräfte hinzu
+	 * Prüft Kollision, erneuert die Position und bremst leicht ab. Gravitation
+	 * und andere Kräfte kommen danach blockweise aus den {@link ForceField}s der
+	 * Simulation
 	 */
 	public void updatePosition() {
 		collide();
-		position.add(velocity);
+		store.posX[index] += store.velX[index];
+		store.posY[index] += store.velY[index];
 
-		velocity.magnitude(MathUtils.randDouble(0.975, 0.985)); // Simuliert quasi einen leichten Luftwiderstand
-		addGravityAndJitter();
+		scaleVelocity(MathUtils.randDouble(0.975, 0.985)); // Simuliert quasi einen leichten Luftwiderstand
+	}
+
+	/**
+	 * Multipliziert die Geschwindigkeit mit dem gegebenen Faktor
+	 */
+	public void scaleVelocity(double factor) {
+		store.velX[index] *= factor;
+		store.velY[index] *= factor;
+	}
+
+	/**
+	 * Rotiert die Geschwindigkeit um n Grad (über die Sinus-Tabelle von
+	 * {@link MathUtils})
+	 */
+	public void rotateVelocityByDeg(double deg) {
+		double cos = MathUtils.cosDeg(deg);
+		double sin = MathUtils.sinDeg(deg);
+		double x = store.velX[index];
+		double y = store.velY[index];
+		store.velX[index] = x * cos - y * sin;
+		store.velY[index] = x * sin + y * cos;
 	}
 
 	/**
 	 * Klon-Funktion für das "Aufspalten" eines Partikels in zwei
 	 * 
-	 * @return Kopie des Partikels mit verminderter Geschwindigkeit und Lebenszeit
+	 * @return Index der Kopie mit verminderter Geschwindigkeit und Lebenszeit
+	 *         oder -1 wenn der Store voll ist
 	 */
-	public Particle cloneForSplit() {
-		Particle p = (Particle) this.clone();
-		p.getPosition().add(new Vector(MathUtils.randInt(-1, 1), MathUtils.randInt(-1, 1)));
-		p.getVelocity().magnitude(MathUtils.randDouble(0, 1.25));
-		p.setLifetime(p.getLifetime() / 2);
-		return p;
+	public int cloneForSplit() {
+		int i = copy();
+		if (i < 0) {
+			return i;
+		}
+		store.posX[i] += MathUtils.randInt(-1, 1);
+		store.posY[i] += MathUtils.randInt(-1, 1);
+		double slowdown = MathUtils.randDouble(0, 1.25);
+		store.velX[i] *= slowdown;
+		store.velY[i] *= slowdown;
+		store.lifetime[i] /= 2;
+		return i;
 	}
 
 	/**
-	 * Klont ein Partikel 1:1
+	 * Kopiert ein Partikel 1:1 (bis auf die Geburt, die ist der aktuelle
+	 * Simulationsschritt)
+	 * 
+	 * @return Index der Kopie oder -1 wenn der Store voll ist
 	 */
-	@Override
-	public Object clone() {
-		Particle p = new Particle((int) position.getX(), (int) position.getY(), color, velocity, lifetime,
-				parentDisplay);
-		p.setFlicker(hasFlicker());
-		p.setFlickerRate(getFlickerRate());
-		p.setFlickerColor(getFlickerColor());
-		p.setGlow(hasGlow());
-		p.setGlowRadius(getGlowRadius());
-		p.setGravity(hasGravity());
-		p.setJitter(hasJitter());
-		p.setLastPosition(getLastPosition());
-		p.setTracerColor(getTracerColor());
-		p.setTracers(hasTracers());
-		p.setTracerStrength(getTracerStrength());
-		return p;
+	public int copy() {
+		int i = store.copy(index);
+		if (i < 0) {
+			return i;
+		}
+		store.birth[i] = simulation.getCurrentTick();
+		store.flags[i] &= ~ParticleStore.FLAG_CURRENT_FLICKER;
+		return i;
 	}
 
 	public boolean isAlive() {
-		return alive;
+		return !hasFlag(ParticleStore.FLAG_DEAD);
 	}
 
 	public void setAlive(boolean alive) {
-		this.alive = alive;
+		setFlag(ParticleStore.FLAG_DEAD, !alive);
 	}
 
 	public long getLifetime() {
-		return lifetime;
+		return store.lifetime[index];
 	}
 
 	/**
 	 * Prüft ob die Lebenszeit abgelaufen ist und setzt ggf. alive auf {@code false}
 	 * 
-	 * @param currentFrame - Aktuelle Frame-Zahl vom Display
+	 * @param tick - Aktueller Simulationsschritt
 	 * @return - Aktueller Wert von alive
 	 */
-	public boolean setAlive(long currentFrame) {
-		if (currentFrame - birthtime >= lifetime) {
-			alive = false;
+	public boolean setAlive(long tick) {
+		if (tick - store.birth[index] >= store.lifetime[index]) {
+			setAlive(false);
 			return false;
 		}
 		return true;
 	}
 
+	private boolean hasFlag(int flag) {
+		return (store.flags[index] & flag) != 0;
+	}
+
+	private void setFlag(int flag, boolean value) {
+		if (value) {
+			store.flags[index] |= flag;
+		} else {
+			store.flags[index] &= ~flag;
+		}
+	}
+
 	/*
 	 * Der ganze mehr oder weniger nötige Getter-Setter Kram...
 	 */
 
-	public Color getColor() {
-		return color;
+	public int getColor() {
+		return store.palette.argb(store.color[index]);
 	}
 
 	public void setColor(Color color) {
-		this.color = color;
+		store.color[index] = (char) store.palette.intern(color.getRGB());
 	}
 
-	public Vector getPosition() {
-		return position;
+	public double getX() {
+		return store.posX[index];
 	}
 
-	public void setPosition(Vector position) {
-		this.position = position;
+	public double getY() {
+		return store.posY[index];
 	}
 
-	public Vector getVelocity() {
-		return velocity;
+	public void setPosition(double x, double y) {
+		store.posX[index] = x;
+		store.posY[index] = y;
 	}
 
-	public void setVelocity(Vector velocity) {
-		this.velocity = velocity;
+	public double getVelocityX() {
+		return store.velX[index];
+	}
+
+	public double getVelocityY() {
+		return store.velY[index];
+	}
+
+	public void setVelocity(double x, double y) {
+		store.velX[index] = x;
+		store.velY[index] = y;
 	}
 
 	public long getBirthtime() {
-		return birthtime;
+		return store.birth[index];
 	}
 
 	public void setBirthtime(long birthtime) {
-		this.birthtime = birthtime;
+		store.birth[index] = birthtime;
 	}
 
-	public Color getTracerColor() {
-		return tracerColor;
+	public int getTracerColor() {
+		return store.palette.argb(store.tracerColor[index]);
 	}
 
 	public void setTracerColor(Color tracerColor) {
-		this.tracerColor = tracerColor;
+		store.tracerColor[index] = (char) store.palette.intern(tracerColor.getRGB());
 	}
 
 	public boolean hasGlow() {
-		return glow;
+		return hasFlag(ParticleStore.FLAG_GLOW);
 	}
 
 	public void setGlow(boolean glow) {
-		this.glow = glow;
+		setFlag(ParticleStore.FLAG_GLOW, glow);
 	}
 
 	public int getGlowRadius() {
-		return glowRadius;
+		return store.glowRadius[index];
 	}
 
 	public void setGlowRadius(int glowRadius) {
-		this.glowRadius = glowRadius;
+		store.glowRadius[index] = glowRadius;
 	}
 
-	public Color getFlickerColor() {
-		return flickerColor;
+	public int getFlickerColor() {
+		return store.palette.argb(store.flickerColor[index]);
 	}
 
 	public void setFlickerColor(Color flickerColor) {
-		this.flickerColor = flickerColor;
+		setFlag(ParticleStore.FLAG_HAS_FLICKER_COLOR, flickerColor != null);
+		store.flickerColor[index] = (char) (flickerColor == null ? Palette.TRANSPARENT
+				: store.palette.intern(flickerColor.getRGB()));
 	}
 
 	public boolean hasFlicker() {
-		return flicker;
+		return hasFlag(ParticleStore.FLAG_FLICKER);
 	}
 
 	public void setFlicker(boolean flicker) {
-		this.flicker = flicker;
+		setFlag(ParticleStore.FLAG_FLICKER, flicker);
 	}
 
 	public int getFlickerRate() {
-		return flickerRate;
+		return store.flickerRate[index];
 	}
 
 	public void setFlickerRate(int flickerRate) {
-		this.flickerRate = flickerRate;
+		store.flickerRate[index] = flickerRate;
 	}
 
 	public boolean hasTracers() {
-		return tracer;
+		return hasFlag(ParticleStore.FLAG_TRACER);
 	}
 
 	public void setTracers(boolean tracer) {
-		this.tracer = tracer;
+		setFlag(ParticleStore.FLAG_TRACER, tracer);
 	}
 
 	public double getTracerStrength() {
-		return tracerStrength;
+		return (store.tracerLevel[index] & 0xFF) / (double) (Palette.TRACER_LEVELS - 1);
 	}
 
+	/**
+	 * Setzt die Tracer-Stärke, sie wird auf Stufen von 1/255 gerundet (siehe
+	 * {@link Palette#tracerLevel(double)})
+	 */
 	public void setTracerStrength(double tracerStrength) {
-		this.tracerStrength = tracerStrength;
+		store.tracerLevel[index] = (byte) store.palette.useTracerLevel(Palette.tracerLevel(tracerStrength));
 	}
 
 	public boolean hasGravity() {
-		return gravityOn;
+		return hasFlag(ParticleStore.FLAG_GRAVITY);
 	}
 
 	public void setGravity(boolean gravity) {
-		this.gravityOn = gravity;
-	}
-
-	public Display getParentDisplay() {
-		return parentDisplay;
-	}
-
-	public void setParentDisplay(Display parentDisplay) {
-		this.parentDisplay = parentDisplay;
-	}
-
-	public Point getLastPosition() {
-		return lastPosition;
+		setFlag(ParticleStore.FLAG_GRAVITY, gravity);
 	}
 
-	public void setLastPosition(Point lastPosition) {
-		this.lastPosition = lastPosition;
+	public FireworksSimulation getSimulation() {
+		return simulation;
 	}
 
 	public boolean hasJitter() {
-		return jitter;
+		return hasFlag(ParticleStore.FLAG_JITTER);
 	}
 
 	public void setJitter(boolean jitter) {
-		this.jitter = jitter;
+		setFlag(ParticleStore.FLAG_JITTER, jitter);
 	}
 
 	public void setLifetime(long lifetime) {
-		this.lifetime = lifetime;
+		store.lifetime[index] = (int) lifetime;
 	}
 }
@@ -0,0 +1,353 @@
+package pr0bob.fireworks;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Gleichmäßiges Raster über die Positionen der Partikel für
+ * Nachbarschaftsabfragen (z.B. Funken die sich anziehen oder Rauch der sich
+ * abstößt), ohne jedes Partikel mit jedem vergleichen zu müssen
+ * 
+ * Das Raster wird mit jedem Schritt per Counting Sort neu aufgebaut: erst wird
+ * pro Zelle gezählt, dann werden die Partikel nach Zelle sortiert in flache
+ * Arrays geschrieben (Index sowie eine Kopie der Position). Die Arrays werden
+ * wiederverwendet, ein Aufbau kostet O(n) ohne Allokation. Ab
+ * {@link #PARALLEL_THRESHOLD} Partikeln zählen und sortieren mehrere Threads
+ * je einen Block, die Reihenfolge innerhalb einer Zelle bleibt trotzdem immer
+ * die der Indizes
+ * 
+ * Das Raster gibt den Stand zu Beginn des Schritts wieder und darf während des
+ * parallelen Updates gelesen werden. Die Indizes gelten nur bis zum Entfernen
+ * der toten Partikel am Ende des Schritts. Positionen außerhalb des Bereichs
+ * landen in den Randzellen
+ */
+public class ParticleGrid {
+
+	/**
+	 * Kantenlänge einer Zelle in Px, sollte etwa dem größten Abfrage-Radius
+	 * entsprechen
+	 */
+	public static final int DEFAULT_CELL_SIZE = 32;
+
+	/**
+	 * Ab dieser Anzahl an Partikeln wird parallel aufgebaut
+	 */
+	public static final int PARALLEL_THRESHOLD = 16384;
+
+	/**
+	 * Anzahl der Partikel die ein Thread beim Aufbau am Stück bearbeitet
+	 */
+	public static final int CHUNK_SIZE = 4096;
+
+	private final int cellSize;
+	private boolean enabled = false;
+
+	private int columns = 1;
+	private int rows = 1;
+	private int size = 0;
+
+	/*
+	 * Die Partikel der Zelle c liegen in den Slots cellStart[c] bis
+	 * cellStart[c + 1] - 1, für jeden Slot gibt es den Index im ParticleStore und
+	 * die Position
+	 */
+	private int[] cellStart = new int[2];
+	private int[] order = new int[0];
+	private float[] sortedX = new float[0];
+	private float[] sortedY = new float[0];
+
+	/*
+	 * Zelle und Slot für jeden Index im ParticleStore
+	 */
+	private int[] cellOf = new int[0];
+	private int[] slotOf = new int[0];
+
+	/**
+	 * Zähler pro Block und Zelle, nach dem Aufsummieren der nächste freie Slot
+	 */
+	private int[] chunkCounts = new int[0];
+
+	public ParticleGrid() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public ParticleGrid(int cellSize) {
+		if (cellSize < 1) {
+			throw new IllegalArgumentException("cellSize < 1: " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Baut das Raster für alle Partikel im Store auf
+	 * 
+	 * @param store  - Partikel
+	 * @param width  - Breite des Bereichs in Px
+	 * @param height - Höhe des Bereichs in Px
+	 * @param pool   - Pool für den parallelen Aufbau, {@code null} = sequentiell
+	 */
+	public void build(ParticleStore store, int width, int height, ForkJoinPool pool) {
+		int n = store.size();
+		columns = Math.max((width + cellSize - 1) / cellSize, 1);
+		rows = Math.max((height + cellSize - 1) / cellSize, 1);
+		int cells = columns * rows;
+		int chunks = pool == null || n < PARALLEL_THRESHOLD ? 1 : (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		int chunkSize = chunks == 1 ? Math.max(n, 1) : CHUNK_SIZE;
+
+		ensureCapacity(n, cells, chunks);
+		size = n;
+		Arrays.fill(chunkCounts, 0, chunks * cells, 0);
+
+		// 1. Zellen bestimmen und pro Block zählen
+		if (chunks == 1) {
+			count(store, 0, 0, n, cells);
+		} else {
+			runBuild(pool, store, chunks, chunkSize, cells, true);
+		}
+
+		// 2. Startslot jeder Zelle und jedes Blocks innerhalb der Zelle
+		int slot = 0;
+		for (int c = 0; c < cells; c++) {
+			cellStart[c] = slot;
+			for (int k = 0; k < chunks; k++) {
+				int i = k * cells + c;
+				int count = chunkCounts[i];
+				chunkCounts[i] = slot;
+				slot += count;
+			}
+		}
+		cellStart[cells] = slot;
+
+		// 3. In die Slots einsortieren
+		if (chunks == 1) {
+			scatter(store, 0, 0, n, cells);
+		} else {
+			runBuild(pool, store, chunks, chunkSize, cells, false);
+		}
+	}
+
+	private void runBuild(ForkJoinPool pool, ParticleStore store, int chunks, int chunkSize, int cells,
+			boolean counting) {
+		buildStore = store;
+		buildChunkSize = chunkSize;
+		buildCells = cells;
+		buildCounting = counting;
+		try {
+			buildLoop.run(pool, chunks);
+		} finally {
+			buildStore = null;
+		}
+	}
+
+	private void ensureCapacity(int n, int cells, int chunks) {
+		if (order.length < n) {
+			int capacity = Math.max(n, order.length * 2);
+			order = new int[capacity];
+			sortedX = new float[capacity];
+			sortedY = new float[capacity];
+			cellOf = new int[capacity];
+			slotOf = new int[capacity];
+		}
+		if (cellStart.length < cells + 1) {
+			cellStart = new int[cells + 1];
+		}
+		if (chunkCounts.length < chunks * cells) {
+			chunkCounts = new int[chunks * cells];
+		}
+	}
+
+	private void count(ParticleStore store, int chunk, int from, int to, int cells) {
+		double[] posX = store.posX;
+		double[] posY = store.posY;
+		int base = chunk * cells;
+		for (int i = from; i < to; i++) {
+			int cell = row(posY[i]) * columns + column(posX[i]);
+			cellOf[i] = cell;
+			chunkCounts[base + cell]++;
+		}
+	}
+
+	private void scatter(ParticleStore store, int chunk, int from, int to, int cells) {
+		double[] posX = store.posX;
+		double[] posY = store.posY;
+		int base = chunk * cells;
+		for (int i = from; i < to; i++) {
+			int slot = chunkCounts[base + cellOf[i]]++;
+			order[slot] = i;
+			sortedX[slot] = (float) posX[i];
+			sortedY[slot] = (float) posY[i];
+			slotOf[i] = slot;
+		}
+	}
+
+	/*
+	 * Zählen bzw. Einsortieren in Blöcken, die Werte des laufenden Aufbaus liegen
+	 * in Feldern statt in neuen Tasks
+	 */
+	private final ParallelLoop buildLoop = new ParallelLoop() {
+		@Override
+		protected void block(int chunk) {
+			int from = chunk * buildChunkSize;
+			int to = Math.min(from + buildChunkSize, size);
+			if (buildCounting) {
+				count(buildStore, chunk, from, to, buildCells);
+			} else {
+				scatter(buildStore, chunk, from, to, buildCells);
+			}
+		}
+	};
+	private ParticleStore buildStore;
+	private int buildChunkSize;
+	private int buildCells;
+	private boolean buildCounting;
+
+	/**
+	 * Ruft den Visitor für alle anderen Partikel im gegebenen Radius um ein
+	 * Partikel auf
+	 * 
+	 * @param particle - Index im ParticleStore
+	 * @param radius   - Radius in Px
+	 * @param visitor  - Callback
+	 */
+	public void forEachNeighbor(int particle, float radius, NeighborVisitor visitor) {
+		if (particle < 0 || particle >= size) {
+			return; // Erst nach dem Aufbau entstanden
+		}
+		int slot = slotOf[particle];
+		visit(particle, sortedX[slot], sortedY[slot], radius, visitor);
+	}
+
+	/**
+	 * Ruft den Visitor für alle Partikel im gegebenen Radius um eine Position auf
+	 */
+	public void forEachNeighbor(float x, float y, float radius, NeighborVisitor visitor) {
+		visit(-1, x, y, radius, visitor);
+	}
+
+	private void visit(int particle, float x, float y, float radius, NeighborVisitor visitor) {
+		float radiusSq = radius * radius;
+		int c0 = column(x - radius);
+		int c1 = column(x + radius);
+		int r0 = row(y - radius);
+		int r1 = row(y + radius);
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * columns + c;
+				for (int s = cellStart[cell]; s < cellStart[cell + 1]; s++) {
+					int other = order[s];
+					if (other == particle) {
+						continue;
+					}
+					float dx = sortedX[s] - x;
+					float dy = sortedY[s] - y;
+					float distSq = dx * dx + dy * dy;
+					if (distSq <= radiusSq) {
+						visitor.visit(particle, other, dx, dy, distSq);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Anzahl der anderen Partikel im Radius um ein Partikel
+	 */
+	public int countNeighbors(int particle, float radius) {
+		if (particle < 0 || particle >= size) {
+			return 0;
+		}
+		float x = sortedX[slotOf[particle]];
+		float y = sortedY[slotOf[particle]];
+		float radiusSq = radius * radius;
+		int count = 0;
+		for (int r = row(y - radius); r <= row(y + radius); r++) {
+			for (int c = column(x - radius); c <= column(x + radius); c++) {
+				int cell = r * columns + c;
+				for (int s = cellStart[cell]; s < cellStart[cell + 1]; s++) {
+					float dx = sortedX[s] - x;
+					float dy = sortedY[s] - y;
+					if (dx * dx + dy * dy <= radiusSq) {
+						count++;
+					}
+				}
+			}
+		}
+		return count - 1; // ohne sich selbst
+	}
+
+	private int column(double x) {
+		return Math.min(Math.max((int) Math.floor(x / cellSize), 0), columns - 1);
+	}
+
+	private int row(double y) {
+		return Math.min(Math.max((int) Math.floor(y / cellSize), 0), rows - 1);
+	}
+
+	/**
+	 * Zelle in der die gegebene Position liegt
+	 */
+	public int cellAt(double x, double y) {
+		return row(y) * columns + column(x);
+	}
+
+	/*
+	 * Zugriff auf einzelne Zellen, z.B. um Zelle für Zelle über alle Partikel zu
+	 * gehen: for (s = getCellStart(c); s < getCellEnd(c); s++) getParticle(s)
+	 */
+
+	public int getCellCount() {
+		return columns * rows;
+	}
+
+	public int getCellStart(int cell) {
+		return cellStart[cell];
+	}
+
+	public int getCellEnd(int cell) {
+		return cellStart[cell + 1];
+	}
+
+	/**
+	 * Index im ParticleStore des Partikels im gegebenen Slot
+	 */
+	public int getParticle(int slot) {
+		return order[slot];
+	}
+
+	public float getX(int slot) {
+		return sortedX[slot];
+	}
+
+	public float getY(int slot) {
+		return sortedY[slot];
+	}
+
+	/**
+	 * Anzahl der Partikel beim letzten Aufbau
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * {@code true} wenn die Simulation das Raster in jedem Schritt aufbauen soll
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+}
@@ -0,0 +1,421 @@
+package pr0bob.fireworks;
+import java.util.Arrays;
+
+/**
+ * Speicher für alle Partikel einer Simulation als "Structure of Arrays"
+ * 
+ * Anstatt einzelner Objekte liegen die Eigenschaften aller Partikel in
+ * parallelen primitiven Arrays, ein Partikel ist nur noch ein Index. Tote
+ * Partikel werden per Swap-Remove entfernt (das letzte Partikel rückt an die
+ * freie Stelle), dadurch bleibt der Speicher immer lückenlos
+ * 
+ * Der Speicher ist gleichzeitig der Pool für neue Partikel: die Plätze hinter
+ * {@link #size()} gehören Partikeln die schon gestorben sind und werden von
+ * {@link #add()} einfach neu beschrieben. Die Arrays wachsen nur bis
+ * {@link #getMaxParticles()}, danach werden neue Partikel abgelehnt
+ */
+public class ParticleStore {
+
+	/*
+	 * Bits für das flags-Array
+	 */
+	public static final int FLAG_DEAD = 1;
+	public static final int FLAG_GLOW = 1 << 1;
+	public static final int FLAG_TRACER = 1 << 2;
+	public static final int FLAG_FLICKER = 1 << 3;
+	public static final int FLAG_CURRENT_FLICKER = 1 << 4;
+	public static final int FLAG_HAS_FLICKER_COLOR = 1 << 5;
+	public static final int FLAG_GRAVITY = 1 << 6;
+	public static final int FLAG_JITTER = 1 << 7;
+
+	/**
+	 * Flags mit denen ein neues Partikel startet (entspricht den Defaults der
+	 * Particle-Klasse: Tracer, Gravitation und Jitter an)
+	 */
+	public static final int DEFAULT_FLAGS = FLAG_TRACER | FLAG_GRAVITY | FLAG_JITTER;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Ab dieser Anzahl an Einträgen gibt {@link #compactPalette()} unbenutzte
+	 * Farben frei
+	 */
+	private static final int PALETTE_COMPACT_AT = Palette.COARSE_BASE * 3 / 4;
+
+	/**
+	 * Obergrenze für die Anzahl gleichzeitig lebender Partikel
+	 */
+	public static final int DEFAULT_MAX_PARTICLES = 250_000;
+
+	/*
+	 * Position und Geschwindigkeit
+	 */
+	double[] posX;
+	double[] posY;
+	double[] velX;
+	double[] velY;
+
+	/**
+	 * Position vor dem letzten Simulationsschritt (für die Leuchtspuren und zum
+	 * Interpolieren beim Zeichnen)
+	 */
+	float[] lastX;
+	float[] lastY;
+
+	/**
+	 * Farben aller Partikel
+	 */
+	final Palette palette = new Palette();
+
+	/*
+	 * Farben als Index in die Palette
+	 */
+	char[] color;
+	char[] flickerColor;
+	char[] tracerColor;
+
+	/*
+	 * Lebenszeit in Simulationsschritten und Schritt der "Geburt"
+	 */
+	int[] lifetime;
+	long[] birth;
+
+	int[] flickerRate;
+	int[] glowRadius;
+	/**
+	 * Tracer-Stärke als Stufe der Palette (0 - 255, ohne Vorzeichen)
+	 */
+	byte[] tracerLevel;
+	int[] flags;
+
+	/**
+	 * Farben eines Ausbruchs im {@link SpawnKernel}, gehört wie die Partikel dem
+	 * Thread der Simulation
+	 */
+	private int[] burstColors = new int[8];
+
+	private int size = 0;
+	private int maxParticles = DEFAULT_MAX_PARTICLES;
+	private int paletteCompactAt = PALETTE_COMPACT_AT;
+
+	/**
+	 * Höchster jemals belegter Platz + 1, alles darunter wurde schon einmal
+	 * benutzt und wird beim nächsten add() wiederverwendet
+	 */
+	private int highWaterMark = 0;
+
+	/*
+	 * Statistik des Pools
+	 */
+	private long spawned = 0;
+	private long reused = 0;
+	private long released = 0;
+	private long rejected = 0;
+	private int grows = 0;
+
+	public ParticleStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public ParticleStore(int capacity) {
+		allocate(Math.max(capacity, 16));
+	}
+
+	private void allocate(int capacity) {
+		posX = new double[capacity];
+		posY = new double[capacity];
+		velX = new double[capacity];
+		velY = new double[capacity];
+		lastX = new float[capacity];
+		lastY = new float[capacity];
+		color = new char[capacity];
+		flickerColor = new char[capacity];
+		tracerColor = new char[capacity];
+		lifetime = new int[capacity];
+		birth = new long[capacity];
+		flickerRate = new int[capacity];
+		glowRadius = new int[capacity];
+		tracerLevel = new byte[capacity];
+		flags = new int[capacity];
+	}
+
+	/**
+	 * Vergrößert alle Arrays auf die doppelte Kapazität
+	 */
+	private void grow() {
+		int capacity = posX.length * 2;
+		posX = Arrays.copyOf(posX, capacity);
+		posY = Arrays.copyOf(posY, capacity);
+		velX = Arrays.copyOf(velX, capacity);
+		velY = Arrays.copyOf(velY, capacity);
+		lastX = Arrays.copyOf(lastX, capacity);
+		lastY = Arrays.copyOf(lastY, capacity);
+		color = Arrays.copyOf(color, capacity);
+		flickerColor = Arrays.copyOf(flickerColor, capacity);
+		tracerColor = Arrays.copyOf(tracerColor, capacity);
+		lifetime = Arrays.copyOf(lifetime, capacity);
+		birth = Arrays.copyOf(birth, capacity);
+		flickerRate = Arrays.copyOf(flickerRate, capacity);
+		glowRadius = Arrays.copyOf(glowRadius, capacity);
+		tracerLevel = Arrays.copyOf(tracerLevel, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		grows++;
+	}
+
+	/**
+	 * Reserviert einen neuen Platz am Ende des Speichers und setzt ihn auf die
+	 * Default-Werte. Der Platz eines toten Partikels wird dabei wiederverwendet,
+	 * die Arrays wachsen nur wenn kein freier Platz mehr da ist
+	 * 
+	 * @return Index des neuen Partikels oder -1 wenn die Obergrenze
+	 *         ({@link #getMaxParticles()}) erreicht ist
+	 */
+	public int add() {
+		if (size >= maxParticles) {
+			rejected++;
+			return -1;
+		}
+		if (size == posX.length) {
+			grow();
+		}
+		int i = size++;
+		spawned++;
+		if (i < highWaterMark) {
+			reused++;
+		} else {
+			highWaterMark = size;
+		}
+		posX[i] = 0;
+		posY[i] = 0;
+		velX[i] = 0;
+		velY[i] = 0;
+		lastX[i] = 0;
+		lastY[i] = 0;
+		color[i] = Palette.TRANSPARENT;
+		flickerColor[i] = Palette.TRANSPARENT;
+		tracerColor[i] = Palette.TRANSPARENT;
+		lifetime[i] = 0;
+		birth[i] = 0;
+		flickerRate[i] = 0;
+		glowRadius[i] = 0;
+		tracerLevel[i] = (byte) Palette.DEFAULT_TRACER_LEVEL;
+		flags[i] = DEFAULT_FLAGS;
+		return i;
+	}
+
+	/**
+	 * Kopiert alle Eigenschaften eines Partikels in einen neuen Platz
+	 * 
+	 * @param from - Index des Original-Partikels
+	 * @return Index der Kopie oder -1 wenn der Speicher voll ist
+	 */
+	public int copy(int from) {
+		int i = add();
+		if (i >= 0) {
+			move(from, i);
+		}
+		return i;
+	}
+
+	/**
+	 * Entfernt das Partikel am gegebenen Index, das letzte Partikel rückt an
+	 * dessen Stelle
+	 * 
+	 * @param i - Index des zu entfernenden Partikels
+	 */
+	public void remove(int i) {
+		released++;
+		int last = --size;
+		if (i != last) {
+			move(last, i);
+		}
+	}
+
+	private void move(int from, int to) {
+		posX[to] = posX[from];
+		posY[to] = posY[from];
+		velX[to] = velX[from];
+		velY[to] = velY[from];
+		lastX[to] = lastX[from];
+		lastY[to] = lastY[from];
+		color[to] = color[from];
+		flickerColor[to] = flickerColor[from];
+		tracerColor[to] = tracerColor[from];
+		lifetime[to] = lifetime[from];
+		birth[to] = birth[from];
+		flickerRate[to] = flickerRate[from];
+		glowRadius[to] = glowRadius[from];
+		tracerLevel[to] = tracerLevel[from];
+		flags[to] = flags[from];
+	}
+
+	/**
+	 * Puffer für mindestens n Farben eines Ausbruchs, wächst nur bei Bedarf
+	 */
+	int[] burstColors(int n) {
+		if (burstColors.length < n) {
+			burstColors = new int[Math.max(n, burstColors.length * 2)];
+		}
+		return burstColors;
+	}
+
+	/**
+	 * Farbe der Leuchtspur von Partikel i mit der Tracer-Stärke als Alpha
+	 * (vormultipliziert)
+	 */
+	int tracerDrawColor(int i) {
+		return palette.tracer(tracerColor[i], tracerLevel[i] & 0xFF);
+	}
+
+	/**
+	 * Gibt die Einträge der Palette frei, die kein Partikel mehr benutzt. Passiert
+	 * nur wenn die Palette zu drei Vierteln voll ist, darf aber nur aufgerufen
+	 * werden wenn außerhalb des Speichers niemand Indizes der Palette hält (das
+	 * macht die Simulation zu Beginn jedes Schritts)
+	 * 
+	 * @return Anzahl der freigegebenen Farben
+	 */
+	public int compactPalette() {
+		if (palette.size() < paletteCompactAt) {
+			return 0;
+		}
+		palette.clearMarks();
+		for (int i = 0; i < size; i++) {
+			palette.mark(color[i]);
+			palette.mark(flickerColor[i]);
+			palette.mark(tracerColor[i]);
+		}
+		int freed = palette.sweep();
+		// Bleibt die Palette fast voll, erst wieder aufräumen wenn die Hälfte des
+		// Rests verbraucht ist
+		paletteCompactAt = Math.max(PALETTE_COMPACT_AT, palette.size() + (Palette.COARSE_BASE - palette.size()) / 2);
+		return freed;
+	}
+
+	public Palette getPalette() {
+		return palette;
+	}
+
+	/**
+	 * Entfernt alle Partikel
+	 */
+	public void clear() {
+		released += size;
+		size = 0;
+	}
+
+	/**
+	 * Anzahl der aktuell gespeicherten Partikel
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return posX.length;
+	}
+
+	/*
+	 * Zugriff auf einzelne Partikel für Code außerhalb des Pakets (z.B. eigene
+	 * ForceFields), intern wird direkt auf den Arrays gearbeitet
+	 */
+
+	public double getX(int i) {
+		return posX[i];
+	}
+
+	public double getY(int i) {
+		return posY[i];
+	}
+
+	public double getVelocityX(int i) {
+		return velX[i];
+	}
+
+	public double getVelocityY(int i) {
+		return velY[i];
+	}
+
+	/**
+	 * Ändert die Geschwindigkeit von Partikel i um (dx, dy)
+	 */
+	public void addVelocity(int i, double dx, double dy) {
+		velX[i] += dx;
+		velY[i] += dy;
+	}
+
+	/**
+	 * Flags von Partikel i (siehe {@code FLAG_*})
+	 */
+	public int getFlags(int i) {
+		return flags[i];
+	}
+
+	/**
+	 * Maximale Anzahl gleichzeitig lebender Partikel
+	 */
+	public int getMaxParticles() {
+		return maxParticles;
+	}
+
+	/**
+	 * Setzt die Obergrenze, bereits lebende Partikel über der Grenze bleiben
+	 * erhalten, es kommen nur keine neuen mehr dazu
+	 */
+	public void setMaxParticles(int maxParticles) {
+		if (maxParticles < 1) {
+			throw new IllegalArgumentException("maxParticles < 1: " + maxParticles);
+		}
+		this.maxParticles = maxParticles;
+	}
+
+	/**
+	 * Anzahl der Plätze die schon einmal belegt waren (wird nie kleiner)
+	 */
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * Anzahl aller erfolgreich angelegten Partikel
+	 */
+	public long getSpawned() {
+		return spawned;
+	}
+
+	/**
+	 * Anzahl der Partikel die in den Platz eines toten Partikels gelegt wurden
+	 */
+	public long getReused() {
+		return reused;
+	}
+
+	/**
+	 * Anzahl der entfernten (toten) Partikel
+	 */
+	public long getReleased() {
+		return released;
+	}
+
+	/**
+	 * Anzahl der Partikel die wegen der Obergrenze abgelehnt wurden
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Wie oft die Arrays vergrößert werden mussten
+	 */
+	public int getGrows() {
+		return grows;
+	}
+
+	/**
+	 * Anteil der wiederverwendeten Plätze an allen angelegten Partikeln (0.0 -
+	 * 1.0)
+	 */
+	public double getReuseRate() {
+		return spawned == 0 ? 0 : (double) reused / spawned;
+	}
+}
@@ -0,0 +1,199 @@
+package pr0bob.fireworks;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Führt das Update der Partikel (Position, Kraftfelder, Lebenszeit, Flackern) in Blöcken
+ * parallel auf einem ForkJoinPool aus
+ * 
+ * Tote Partikel werden dabei nur markiert ({@link ParticleStore#FLAG_DEAD}), das
+ * eigentliche Entfernen passiert danach sequentiell in der Simulation, da Swap-Remove
+ * die Reihenfolge im Speicher verändert
+ */
+public class ParticleUpdater {
+
+	/**
+	 * Anzahl der Partikel die ein einzelner Task am Stück abarbeitet
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	/**
+	 * Unterhalb dieser Anzahl an Partikeln lohnt sich der Overhead der Threads
+	 * nicht, dann wird sequentiell gearbeitet
+	 */
+	public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 8192;
+
+	private final FireworksSimulation simulation;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int sequentialThreshold = DEFAULT_SEQUENTIAL_THRESHOLD;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Zeiger für den sequentiellen Fall
+	 */
+	private final Particle cursor;
+
+	/**
+	 * Zeiger der Worker-Threads, einer pro Thread statt einem pro Block und
+	 * Schritt
+	 */
+	private final ThreadLocal<Particle> workerCursor;
+
+	/*
+	 * Paralleles Update, die Werte des laufenden Schritts liegen in Feldern statt
+	 * in neuen Tasks
+	 */
+	private final ParallelLoop updateLoop = new ParallelLoop() {
+		@Override
+		protected void block(int chunk) {
+			loopDead.addAndGet(updateChunk(workerCursor.get(), loopFields, chunk, loopSize, loopTick));
+		}
+	};
+	private final AtomicInteger loopDead = new AtomicInteger();
+	private ForceField[] loopFields;
+	private int loopSize;
+	private long loopTick;
+
+	public ParticleUpdater(FireworksSimulation simulation) {
+		this.simulation = simulation;
+		this.cursor = new Particle(simulation);
+		this.workerCursor = ThreadLocal.withInitial(() -> new Particle(simulation));
+	}
+
+	/**
+	 * Aktualisiert alle Partikel im Speicher der Simulation
+	 * 
+	 * @param tick - Aktueller Simulationsschritt zum Abgleich der Lebenszeit
+	 * @return Anzahl der Partikel die in diesem Schritt gestorben sind
+	 */
+	public int update(long tick) {
+		int size = simulation.getParticles().size();
+		int chunks = (size + chunkSize - 1) / chunkSize;
+		ForceField[] fields = simulation.getForceFieldArray();
+		if (parallelism <= 1 || size < sequentialThreshold) {
+			int dead = 0;
+			for (int c = 0; c < chunks; c++) {
+				dead += updateChunk(cursor, fields, c, size, tick);
+			}
+			return dead;
+		}
+		loopFields = fields;
+		loopSize = size;
+		loopTick = tick;
+		loopDead.set(0);
+		try {
+			updateLoop.run(getPool(), chunks);
+		} finally {
+			loopFields = null;
+		}
+		return loopDead.get();
+	}
+
+	/**
+	 * Aktualisiert die Partikel eines Blocks. Jeder Block zieht seine Zufallszahlen
+	 * aus einem eigenen, aus Seed der Simulation, Schritt und Block-Nummer
+	 * abgeleiteten Stream, damit das Ergebnis nicht davon abhängt welcher Thread
+	 * den Block bearbeitet
+	 */
+	private int updateChunk(Particle p, ForceField[] fields, int chunk, int size, long tick) {
+		int from = chunk * chunkSize;
+		int to = Math.min(from + chunkSize, size);
+
+		RandomStream random = MathUtils.stream();
+		long savedState = random.getState();
+		// Schritt und Block gemischt statt zusammengesetzt, sonst fallen bei mehr als
+		// 0x10000 Blöcken die Streams benachbarter Schritte zusammen. Basis ist der
+		// Seed der Simulation, nicht der globale, der sich danach noch ändern kann
+		random.setState(RandomStream.mix(simulation.getSeed(), RandomStream.mix(tick, chunk)));
+		try {
+			for (int i = from; i < to; i++) {
+				p.at(i).updatePosition();
+			}
+
+			// Kräfte pro Feld über den ganzen Block
+			ParticleStore store = simulation.getParticles();
+			for (ForceField field : fields) {
+				field.apply(store, from, to, tick);
+			}
+
+			int dead = 0;
+			for (int i = from; i < to; i++) {
+				if (p.at(i).setAlive(tick)) {
+					p.updateFlicker(tick);
+				} else {
+					dead++;
+				}
+			}
+			return dead;
+		} finally {
+			// Auch wenn ein Kraftfeld wirft, behält der Thread seinen eigenen Stream
+			random.setState(savedState);
+		}
+	}
+
+	private ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * Pool für andere parallele Arbeiten der Simulation (z.B. das Ausblenden der
+	 * Tracer)
+	 * 
+	 * @return Der Pool, oder {@code null} wenn sequentiell gearbeitet werden soll
+	 */
+	ForkJoinPool getParallelPool() {
+		return parallelism <= 1 ? null : getPool();
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Setzt die Anzahl der Threads (1 = immer sequentiell)
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+		}
+		if (parallelism != this.parallelism) {
+			shutdown();
+			this.parallelism = parallelism;
+		}
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize < 1: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	public int getSequentialThreshold() {
+		return sequentialThreshold;
+	}
+
+	public void setSequentialThreshold(int sequentialThreshold) {
+		this.sequentialThreshold = sequentialThreshold;
+	}
+
+	/**
+	 * Beendet den Thread-Pool (wird bei Bedarf neu erstellt)
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+}
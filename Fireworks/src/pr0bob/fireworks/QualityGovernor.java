@@ -0,0 +1,194 @@
+package pr0bob.fireworks;
+/**
+ * Passt die Detailstufe der Effekte an die gemessene Dauer der Frames an
+ * 
+ * Die Dauer jedes Frames fließt in einen gleitenden Mittelwert (EWMA). Liegt
+ * der einige Frames am Stück über dem Ziel, wird eine Stufe zurückgeschaltet:
+ * weniger Partikel pro Effekt, kleineres Leuchten, weniger Tracer und seltener
+ * Aufspalten. Erst wenn der Mittelwert deutlich (siehe
+ * {@link #RESTORE_THRESHOLD}) und über längere Zeit unter dem Ziel liegt, geht
+ * es wieder eine Stufe hoch. Der Abstand der beiden Schwellen und die Pause
+ * nach jedem Wechsel verhindern ein ständiges Hin und Her
+ * 
+ * Auf Stufe 0 verändert der Governor nichts (auch nicht die Folge der
+ * Zufallszahlen), ohne Echtzeit (z.B. HeadlessRenderer) ist er aus
+ */
+public class QualityGovernor {
+
+	/*
+	 * Faktoren pro Stufe: Anzahl der Partikel, Radius des Leuchtens, Anteil der
+	 * Partikel mit Tracer und Wahrscheinlichkeit des Aufspaltens
+	 */
+	private static final double[] PARTICLE_SCALE = { 1.0, 0.8, 0.6, 0.45, 0.3 };
+	private static final double[] GLOW_SCALE = { 1.0, 1.0, 0.75, 0.5, 0.5 };
+	private static final double[] TRACER_SHARE = { 1.0, 0.85, 0.7, 0.5, 0.35 };
+	private static final double[] SPLIT_SCALE = { 1.0, 0.75, 0.5, 0.25, 0.0 };
+
+	public static final int MAX_LEVEL = PARTICLE_SCALE.length - 1;
+
+	/**
+	 * Ziel für die Dauer eines Frames, etwas unter dem Simulationsschritt von 30
+	 * ms damit noch Luft für das System bleibt
+	 */
+	public static final long DEFAULT_TARGET_NANOS = 25_000_000L;
+
+	/**
+	 * Gewicht eines neuen Frames im gleitenden Mittelwert
+	 */
+	public static final double SMOOTHING = 0.1;
+
+	/**
+	 * Unter diesem Anteil des Ziels gilt ein Frame als "Luft nach oben"
+	 */
+	public static final double RESTORE_THRESHOLD = 0.6;
+
+	/*
+	 * Anzahl der Frames am Stück über bzw. unter der Schwelle bis gewechselt wird,
+	 * und Frames nach einem Wechsel in denen nicht erneut gewechselt wird
+	 */
+	public static final int DEGRADE_FRAMES = 3;
+	public static final int RESTORE_FRAMES = 90;
+	public static final int COOLDOWN_FRAMES = 20;
+
+	private boolean enabled = true;
+	private long targetNanos = DEFAULT_TARGET_NANOS;
+
+	private volatile int level = 0;
+	private double average = -1;
+	private int framesOver = 0;
+	private int framesUnder = 0;
+	private int cooldown = 0;
+
+	private long degrades = 0;
+	private long restores = 0;
+
+	/**
+	 * Meldet die Dauer eines Frames
+	 * 
+	 * @param frameNanos - Dauer (Summe aller Phasen) in Nanosekunden
+	 */
+	public void frameFinished(long frameNanos) {
+		if (!enabled) {
+			return;
+		}
+		average = average < 0 ? frameNanos : average + SMOOTHING * (frameNanos - average);
+
+		if (average > targetNanos) {
+			framesOver++;
+			framesUnder = 0;
+		} else if (average < targetNanos * RESTORE_THRESHOLD) {
+			framesUnder++;
+			framesOver = 0;
+		} else {
+			framesOver = 0;
+			framesUnder = 0;
+		}
+
+		if (cooldown > 0) {
+			cooldown--;
+			return;
+		}
+		if (framesOver >= DEGRADE_FRAMES && level < MAX_LEVEL) {
+			changeLevel(level + 1);
+			degrades++;
+		} else if (framesUnder >= RESTORE_FRAMES && level > 0) {
+			changeLevel(level - 1);
+			restores++;
+		}
+	}
+
+	private void changeLevel(int newLevel) {
+		level = newLevel;
+		framesOver = 0;
+		framesUnder = 0;
+		cooldown = COOLDOWN_FRAMES;
+	}
+
+	/**
+	 * Anzahl der Partikel eines Effekts auf der aktuellen Stufe
+	 */
+	public int scaleCount(int count) {
+		int l = level;
+		return l == 0 ? count : Math.max((int) Math.round(count * PARTICLE_SCALE[l]), 1);
+	}
+
+	/**
+	 * Radius des Leuchtens auf der aktuellen Stufe
+	 */
+	public int scaleGlowRadius(int radius) {
+		int l = level;
+		return l == 0 ? radius : (int) Math.round(radius * GLOW_SCALE[l]);
+	}
+
+	/**
+	 * Ob ein Partikel auf der aktuellen Stufe einen Tracer bekommen darf (auf
+	 * Stufe 0 immer, ohne eine Zufallszahl zu ziehen)
+	 */
+	public boolean allowTracer() {
+		int l = level;
+		return l == 0 || MathUtils.randomChance(TRACER_SHARE[l]);
+	}
+
+	/**
+	 * Wahrscheinlichkeit des Aufspaltens auf der aktuellen Stufe
+	 */
+	public double scaleSplitChance(double chance) {
+		return chance * SPLIT_SCALE[level];
+	}
+
+	/**
+	 * Aktuelle Stufe (0 = volle Qualität, {@link #MAX_LEVEL} = geringste)
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Setzt die Stufe von Hand (z.B. zum Testen), der Governor regelt danach von
+	 * dort aus weiter
+	 */
+	public void setLevel(int level) {
+		changeLevel(Math.min(Math.max(level, 0), MAX_LEVEL));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Ein-/Ausschalten, beim Ausschalten geht es zurück auf volle Qualität
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			changeLevel(0);
+			average = -1;
+		}
+	}
+
+	public long getTargetNanos() {
+		return targetNanos;
+	}
+
+	public void setTargetNanos(long targetNanos) {
+		if (targetNanos <= 0) {
+			throw new IllegalArgumentException("targetNanos <= 0: " + targetNanos);
+		}
+		this.targetNanos = targetNanos;
+	}
+
+	/**
+	 * Gleitender Mittelwert der Frame-Dauer in Nanosekunden
+	 */
+	public double getAverageNanos() {
+		return Math.max(average, 0);
+	}
+
+	public long getDegrades() {
+		return degrades;
+	}
+
+	public long getRestores() {
+		return restores;
+	}
+}
@@ -0,0 +1,50 @@
+package pr0bob.fireworks;
+/**
+ * Anziehung (positive Stärke) bzw. Abstoßung (negative Stärke) zu einem Punkt.
+ * Die Kraft nimmt linear mit dem Abstand ab und ist ab dem Radius 0
+ */
+public class RadialField extends ForceField {
+
+	private final double centerX;
+	private final double centerY;
+	private final double strength;
+	private final double radius;
+
+	/**
+	 * @param centerX  - X-Position des Zentrums
+	 * @param centerY  - Y-Position des Zentrums
+	 * @param strength - Beschleunigung pro Schritt direkt am Zentrum
+	 * @param radius   - Reichweite in Px
+	 */
+	public RadialField(double centerX, double centerY, double strength, double radius) {
+		if (radius <= 0) {
+			throw new IllegalArgumentException("radius <= 0: " + radius);
+		}
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.strength = strength;
+		this.radius = radius;
+	}
+
+	@Override
+	protected void apply(ParticleStore store, int from, int to, long tick) {
+		double[] posX = store.posX;
+		double[] posY = store.posY;
+		double[] velX = store.velX;
+		double[] velY = store.velY;
+		double radiusSq = radius * radius;
+		for (int i = from; i < to; i++) {
+			double dx = centerX - posX[i];
+			double dy = centerY - posY[i];
+			double distSq = dx * dx + dy * dy;
+			// Direkt im Zentrum gibt es keine Richtung
+			if (distSq >= radiusSq || distSq < 1e-6 || !affects(store, i)) {
+				continue;
+			}
+			double dist = Math.sqrt(distSq);
+			double a = strength * (1 - dist / radius) / dist;
+			velX[i] += dx * a;
+			velY[i] += dy * a;
+		}
+	}
+}
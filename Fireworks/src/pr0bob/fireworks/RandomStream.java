@@ -0,0 +1,93 @@
+package pr0bob.fireworks;
+/**
+ * Small, fast and non thread-safe pseudo random generator (SplitMix64)
+ * 
+ * The whole state is a single {@code long}, so a stream can be saved,
+ * restored and reseeded without allocating anything. Not meant for anything
+ * security related.
+ */
+public final class RandomStream {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Current state of the stream
+	 */
+	private long state;
+
+	/**
+	 * Creates a new stream starting at the given seed
+	 * 
+	 * @param seed - Seed
+	 */
+	public RandomStream(long seed) {
+		this.state = seed;
+	}
+
+	/**
+	 * @return Next random long (all 64 bits random)
+	 */
+	public long nextLong() {
+		return mix64(state += GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Random integer from 0 (inclusive) to bound (exclusive)
+	 * 
+	 * @param bound - Upper bound, has to be positive
+	 * @return Random within the given range
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+		}
+		// Multiply-shift instead of modulo, the bias is below 2^-32
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * @return Random double from 0.0 (inclusive) to 1.0 (exclusive)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * @return Random float from 0.0 (inclusive) to 1.0 (exclusive)
+	 */
+	public float nextFloat() {
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * @return The current state, can be restored with {@link #setState(long)}
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Restores a state returned by {@link #getState()}
+	 * 
+	 * @param state - State to restore
+	 */
+	public void setState(long state) {
+		this.state = state;
+	}
+
+	/**
+	 * Combines a seed and a salt into a new, well distributed seed
+	 * 
+	 * @param seed - Base seed
+	 * @param salt - Salt (e.g. frame number or chunk index)
+	 * @return Derived seed
+	 */
+	public static long mix(long seed, long salt) {
+		return mix64(seed + mix64(salt * GOLDEN_GAMMA));
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
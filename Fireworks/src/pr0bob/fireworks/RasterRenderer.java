@@ -0,0 +1,387 @@
+package pr0bob.fireworks;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Zeichnet Punkte, Linien und Sprites direkt in das int-Array eines
+ * {@link BufferedImage#TYPE_INT_ARGB_PRE} Bildes
+ * 
+ * Für die winzigen Primitive der Partikel (1 Px Punkte, kurze Spuren) ist der
+ * Overhead eines Graphics2D-Aufrufs um ein Vielfaches größer als die eigentliche
+ * Pixelarbeit. Hier wird ohne Umweg mit "Source Over" und vormultipliziertem
+ * Alpha gemischt. Das Ergebnis entspricht dem von Java2D bis auf Rundung und
+ * einzelne Pixel der Linien
+ */
+public class RasterRenderer {
+
+	/**
+	 * Ab dieser Anzahl an Pixeln wird das Ausblenden auf mehrere Threads verteilt
+	 */
+	public static final int FADE_PARALLEL_THRESHOLD = 1 << 18;
+
+	/**
+	 * Anzahl der Zeilen die ein Thread beim Ausblenden am Stück bearbeitet
+	 */
+	public static final int FADE_ROWS_PER_STRIPE = 64;
+
+	private int[] data;
+	private int width;
+	private int height;
+
+	/*
+	 * Zeichenbereich (x1/y1 exklusiv), alles außerhalb wird verworfen
+	 */
+	private int clipX0;
+	private int clipY0;
+	private int clipX1;
+	private int clipY1;
+
+	/**
+	 * Bindet den Renderer an ein Bild, alle folgenden Zeichenaufrufe gehen dort
+	 * hinein
+	 * 
+	 * @param image - Bild vom Typ TYPE_INT_ARGB_PRE
+	 * @return this
+	 */
+	public RasterRenderer bind(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB_PRE) {
+			throw new IllegalArgumentException("Bild muss TYPE_INT_ARGB_PRE sein, ist aber Typ " + image.getType());
+		}
+		data = pixels(image);
+		width = image.getWidth();
+		height = image.getHeight();
+		return clip(0, 0, width, height);
+	}
+
+	/**
+	 * Beschränkt alle folgenden Zeichenaufrufe auf ein Rechteck des gebundenen
+	 * Bildes (bis zum nächsten {@link #bind(BufferedImage)}). Pixel innerhalb
+	 * bekommen exakt den gleichen Wert wie ohne Beschränkung, dadurch können
+	 * mehrere Renderer getrennte Bereiche eines Bildes gleichzeitig bemalen
+	 * 
+	 * @param x0 - Linker Rand
+	 * @param y0 - Oberer Rand
+	 * @param x1 - Rechter Rand (exklusiv)
+	 * @param y1 - Unterer Rand (exklusiv)
+	 * @return this
+	 */
+	public RasterRenderer clip(int x0, int y0, int x1, int y1) {
+		clipX0 = Math.max(x0, 0);
+		clipY0 = Math.max(y0, 0);
+		clipX1 = Math.min(x1, width);
+		clipY1 = Math.min(y1, height);
+		return this;
+	}
+
+	/**
+	 * Direkter Zugriff auf die Pixel eines Bildes mit int-Raster
+	 */
+	static int[] pixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Rechnet eine ARGB-Farbe in vormultiplizierte Form um
+	 */
+	public static int premultiply(int argb) {
+		int a = argb >>> 24;
+		if (a == 255) {
+			return argb;
+		}
+		if (a == 0) {
+			return 0;
+		}
+		int r = div255(((argb >> 16) & 0xFF) * a);
+		int g = div255(((argb >> 8) & 0xFF) * a);
+		int b = div255((argb & 0xFF) * a);
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Mischt eine vormultiplizierte Farbe per "Source Over" auf ein
+	 * vormultipliziertes Pixel
+	 * 
+	 * @param dst - Vorhandenes Pixel
+	 * @param src - Neue Farbe (vormultipliziert)
+	 * @return Ergebnis
+	 */
+	public static int blend(int dst, int src) {
+		int sa = src >>> 24;
+		if (sa == 255) {
+			return src;
+		}
+		if (sa == 0) {
+			return dst;
+		}
+		int inv = 255 - sa;
+		// Zwei Kanäle pro Multiplikation (R+B und A+G)
+		int rb = (dst & 0x00FF00FF) * inv + 0x00800080;
+		rb = ((rb + ((rb >>> 8) & 0x00FF00FF)) >>> 8) & 0x00FF00FF;
+		int ag = ((dst >>> 8) & 0x00FF00FF) * inv + 0x00800080;
+		ag = (ag + ((ag >>> 8) & 0x00FF00FF)) & 0xFF00FF00;
+		return src + (ag | rb);
+	}
+
+	private static int div255(int v) {
+		v += 128;
+		return (v + (v >>> 8)) >>> 8;
+	}
+
+	/**
+	 * Setzt einen einzelnen Punkt
+	 * 
+	 * @param x     - X-Position
+	 * @param y     - Y-Position
+	 * @param color - Farbe (vormultipliziert)
+	 */
+	public void plot(int x, int y, int color) {
+		if (x >= clipX0 && y >= clipY0 && x < clipX1 && y < clipY1) {
+			int i = y * width + x;
+			data[i] = blend(data[i], color);
+		}
+	}
+
+	/**
+	 * Zeichnet eine 1 Px breite Linie (Bresenham, inklusive beider Endpunkte)
+	 * 
+	 * @param color - Farbe (vormultipliziert)
+	 */
+	public void line(int x0, int y0, int x1, int y1, int color) {
+		if (color >>> 24 == 0) {
+			return;
+		}
+		// Komplett außerhalb, nichts zu tun
+		if ((x0 < clipX0 && x1 < clipX0) || (y0 < clipY0 && y1 < clipY0) || (x0 >= clipX1 && x1 >= clipX1)
+				|| (y0 >= clipY1 && y1 >= clipY1)) {
+			return;
+		}
+
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int sx = x0 < x1 ? 1 : -1;
+		int sy = y0 < y1 ? 1 : -1;
+		int err = dx + dy;
+		while (true) {
+			plot(x0, y0, color);
+			if (x0 == x1 && y0 == y1) {
+				return;
+			}
+			int e2 = 2 * err;
+			if (e2 >= dy) {
+				err += dy;
+				x0 += sx;
+			}
+			if (e2 <= dx) {
+				err += dx;
+				y0 += sy;
+			}
+		}
+	}
+
+	/**
+	 * Zeichnet ein Sprite (TYPE_INT_ARGB_PRE) per "Source Over" an die gegebene
+	 * Position (obere linke Ecke)
+	 */
+	public void blit(BufferedImage sprite, int x, int y) {
+		int[] src = pixels(sprite);
+		int sw = sprite.getWidth();
+		int sh = sprite.getHeight();
+
+		// Auf den Zeichenbereich zuschneiden
+		int fromX = Math.max(0, clipX0 - x);
+		int fromY = Math.max(0, clipY0 - y);
+		int toX = Math.min(sw, clipX1 - x);
+		int toY = Math.min(sh, clipY1 - y);
+
+		for (int sy = fromY; sy < toY; sy++) {
+			int srcRow = sy * sw;
+			int dstRow = (y + sy) * width + x;
+			for (int sx = fromX; sx < toX; sx++) {
+				int c = src[srcRow + sx];
+				if (c != 0) {
+					data[dstRow + sx] = blend(data[dstRow + sx], c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blendet ein vormultipliziertes Bild direkt im Raster aus, indem alle Kanäle
+	 * (inklusive Alpha) mit dem Faktor multipliziert werden. Entspricht dem
+	 * Zeichnen des Bildes mit AlphaComposite(SRC_OVER, amount) auf ein leeres
+	 * Bild, nur ohne neues Bild
+	 * 
+	 * @param image  - Bild vom Typ TYPE_INT_ARGB_PRE
+	 * @param amount - Faktor (0.0 - 1.0)
+	 * @param pool   - Pool für die Aufteilung in Streifen, {@code null} =
+	 *               sequentiell
+	 * @see Fader
+	 */
+	public static void fade(BufferedImage image, float amount, ForkJoinPool pool) {
+		new Fader().fade(image, amount, pool);
+	}
+
+	/**
+	 * Faktor als Festkommazahl mit 8 Bit Nachkommastellen
+	 */
+	private static int fadeFactor(float amount) {
+		return Math.min(Math.max((int) (amount * 256 + 0.5f), 0), 256);
+	}
+
+	/**
+	 * Wie {@link #fade(BufferedImage, float, ForkJoinPool)}, aber nur für die
+	 * gegebenen Streifen (siehe {@link DirtyTiles#spans(long, int[])})
+	 * 
+	 * @param spans - Je 4 Werte pro Streifen (x0, y0, x1, y1, x1/y1 exklusiv)
+	 * @param count - Anzahl der Streifen
+	 */
+	public static void fade(BufferedImage image, int[] spans, int count, float amount, ForkJoinPool pool) {
+		new Fader().fade(image, spans, count, amount, pool);
+	}
+
+	private static void fadeSpans(int[] pixels, int width, int[] spans, int from, int to, int factor) {
+		for (int s = from * 4; s < to * 4; s += 4) {
+			for (int y = spans[s + 1]; y < spans[s + 3]; y++) {
+				fade(pixels, y * width + spans[s], y * width + spans[s + 2], factor);
+			}
+		}
+	}
+
+	private static int area(int[] spans, int from, int to) {
+		int area = 0;
+		for (int s = from * 4; s < to * 4; s += 4) {
+			area += (spans[s + 2] - spans[s]) * (spans[s + 3] - spans[s + 1]);
+		}
+		return area;
+	}
+
+	/**
+	 * Setzt alle Pixel der Streifen auf 0 (transparent)
+	 */
+	public static void clear(BufferedImage image, int[] spans, int count) {
+		int[] pixels = pixels(image);
+		int width = image.getWidth();
+		for (int s = 0; s < count * 4; s += 4) {
+			for (int y = spans[s + 1]; y < spans[s + 3]; y++) {
+				Arrays.fill(pixels, y * width + spans[s], y * width + spans[s + 2], 0);
+			}
+		}
+	}
+
+	/**
+	 * Setzt die Ebenen in den gegebenen Streifen per "Source Over" zusammen: dst =
+	 * background, darüber tracer, darüber particles. Alle Bilder müssen
+	 * TYPE_INT_ARGB_PRE mit gleicher Größe sein
+	 */
+	public static void composite(BufferedImage dst, BufferedImage background, BufferedImage tracer,
+			BufferedImage particles, int[] spans, int count) {
+		int[] out = pixels(dst);
+		int[] bg = pixels(background);
+		int[] tr = pixels(tracer);
+		int[] pa = pixels(particles);
+		int width = dst.getWidth();
+		for (int s = 0; s < count * 4; s += 4) {
+			for (int y = spans[s + 1]; y < spans[s + 3]; y++) {
+				int to = y * width + spans[s + 2];
+				for (int i = y * width + spans[s]; i < to; i++) {
+					out[i] = blend(blend(bg[i], tr[i]), pa[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Multipliziert die Pixel im Bereich [from, to) mit factor / 256. Es wird
+	 * abgerundet, damit schwache Spuren sicher bei 0 ankommen
+	 */
+	private static void fade(int[] pixels, int from, int to, int factor) {
+		for (int i = from; i < to; i++) {
+			int px = pixels[i];
+			if (px != 0) {
+				// Zwei Kanäle pro Multiplikation (R+B und A+G)
+				int rb = (((px & 0x00FF00FF) * factor) >>> 8) & 0x00FF00FF;
+				int ag = (((px >>> 8) & 0x00FF00FF) * factor) & 0xFF00FF00;
+				pixels[i] = ag | rb;
+			}
+		}
+	}
+
+	/**
+	 * Blendet wie {@link RasterRenderer#fade(BufferedImage, float, ForkJoinPool)}
+	 * aus, verteilt die Arbeit aber ohne pro Aufruf neue Tasks anzulegen: ganze
+	 * Bilder in Streifen aus {@link #FADE_ROWS_PER_STRIPE} Zeilen, sonst Streifen
+	 * für Streifen. Für wiederholtes Ausblenden (z.B. pro Schritt) einen Fader
+	 * behalten, nicht threadsicher
+	 */
+	static final class Fader extends ParallelLoop {
+
+		/*
+		 * Werte des laufenden Aufrufs, spans == null für das ganze Bild
+		 */
+		private int[] pixels;
+		private int width;
+		private int height;
+		private int[] spans;
+		private int factor;
+
+		void fade(BufferedImage image, float amount, ForkJoinPool pool) {
+			int[] pixels = pixels(image);
+			int factor = fadeFactor(amount);
+			if (pool == null || pixels.length < FADE_PARALLEL_THRESHOLD) {
+				RasterRenderer.fade(pixels, 0, pixels.length, factor);
+				return;
+			}
+			start(pixels, image.getWidth(), image.getHeight(), null, factor);
+			try {
+				run(pool, (height + FADE_ROWS_PER_STRIPE - 1) / FADE_ROWS_PER_STRIPE);
+			} finally {
+				this.pixels = null;
+			}
+		}
+
+		void fade(BufferedImage image, int[] spans, int count, float amount, ForkJoinPool pool) {
+			int[] pixels = pixels(image);
+			int factor = fadeFactor(amount);
+			if (pool == null || area(spans, 0, count) < FADE_PARALLEL_THRESHOLD) {
+				fadeSpans(pixels, image.getWidth(), spans, 0, count, factor);
+				return;
+			}
+			start(pixels, image.getWidth(), image.getHeight(), spans, factor);
+			try {
+				run(pool, count);
+			} finally {
+				this.pixels = null;
+				this.spans = null;
+			}
+		}
+
+		private void start(int[] pixels, int width, int height, int[] spans, int factor) {
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.spans = spans;
+			this.factor = factor;
+		}
+
+		@Override
+		protected void block(int index) {
+			if (spans != null) {
+				fadeSpans(pixels, width, spans, index, index + 1, factor);
+				return;
+			}
+			int fromRow = index * FADE_ROWS_PER_STRIPE;
+			int toRow = Math.min(fromRow + FADE_ROWS_PER_STRIPE, height);
+			RasterRenderer.fade(pixels, fromRow * width, toRow * width, factor);
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
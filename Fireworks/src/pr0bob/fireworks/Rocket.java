@@ -1,4 +1,6 @@
 package pr0bob.fireworks;
+import java.awt.Color;
+
 /**
  * Klasse für eine Feuerwerksrakete die vom gegebenen X/Y-Punkt aus aufsteigt
  */
@@ -16,13 +18,13 @@ public class Rocket {
 	private Vector velocity;
 
 	/**
-	 * Display-Objekt auf dem die Rakete "zuhause" ist
+	 * Simulation in der die Rakete "zuhause" ist
 	 */
-	private Display display;
+	private FireworksSimulation simulation;
 
 	/**
-	 * Lebenszeit in Frames, wird heruntergezählt bis 0 erreicht ist, dann
-	 * explodiert die Rakete und wird für "tot" erklärt um in der Display Klasse aus
+	 * Lebenszeit in Simulationsschritten, wird heruntergezählt bis 0 erreicht ist, dann
+	 * explodiert die Rakete und wird für "tot" erklärt um in der Simulation aus
 	 * der Liste entfernt zu werden
 	 */
 	private long lifetime = MathUtils.randInt(150, 200);
@@ -45,15 +47,33 @@ public class Rocket {
 	 */
 	private boolean crazy = MathUtils.randomChance(0.05);
 
+	/*
+	 * Farben der Explosion, {@code null} für zufällige Farben
+	 */
+	private final Color primaryColor;
+	private final Color secondaryColor;
+
 	/**
 	 * Erstellt eine neue Rakete
 	 * 
-	 * @param x       - Initiale X-Position
-	 * @param y       - Initiale Y-Position
-	 * @param display - Display auf dem die Rakete angezeigt werden soll
+	 * @param x          - Initiale X-Position
+	 * @param y          - Initiale Y-Position
+	 * @param simulation - Simulation in der die Rakete fliegen soll
+	 */
+	public Rocket(int x, int y, FireworksSimulation simulation) {
+		this(x, y, simulation, null, null);
+	}
+
+	/**
+	 * Erstellt eine neue Rakete mit festen Farben für die Explosion
+	 * 
+	 * @param primary   - Hauptfarbe oder {@code null} für zufällig
+	 * @param secondary - Zweite Farbe oder {@code null} für zufällig
 	 */
-	public Rocket(int x, int y, Display display) {
-		this.display = display;
+	public Rocket(int x, int y, FireworksSimulation simulation, Color primary, Color secondary) {
+		this.simulation = simulation;
+		this.primaryColor = primary;
+		this.secondaryColor = secondary;
 		position = new Vector(x, y);
 		velocity = new Vector(0, MathUtils.randInt(-7, -4));
 	}
@@ -67,27 +87,25 @@ public class Rocket {
 	}
 
 	/**
-	 * Update der Position der Rakete auf dem Display. Erzeugt entsprechenden
+	 * Update der Position der Rakete in der Simulation. Erzeugt entsprechenden
 	 * Partikeleffekt, je nachdem ob die Rakete abgeeuert wurde, gerade aufsteigt
 	 * oder explodiert und rotiert den Velocity-Vektor zufällig, damit die Rakete
 	 * nicht nur vollkommen gerade fliegt
 	 */
 	public void update() {
 		if (initial) {
-			display.getParticles()
-					.addAll(FireworksFactory.getShotSparks((int) position.getX(), (int) position.getY(), display));
+			FireworksFactory.spawnShotSparks((int) position.getX(), (int) position.getY(), simulation);
 			initial = false;
-		} else if (lifetime > 0 && position.getY() <= display.getHeight()
-				&& position.getY() >= display.getHeight() * 0.33 // Wenn näher als 1/3 am oberen Rand, wird Explosion
+		} else if (lifetime > 0 && position.getY() <= simulation.getInsideBounds().height
+				&& position.getY() >= simulation.getInsideBounds().height * 0.33 // Wenn näher als 1/3 am oberen Rand, wird Explosion
 																	// ausgelöst
-				&& position.getX() > 1 && position.getX() < display.getWidth() - 1) {
+				&& position.getX() > 1 && position.getX() < simulation.getInsideBounds().width - 1) {
 			position.add(velocity);
 			velocity.rotateByDeg(MathUtils.randDouble(crazy ? -25 : -4.5, crazy ? 25 : 4.5));
-			display.getParticles()
-					.addAll(FireworksFactory.getTrailSparks((int) position.getX(), (int) position.getY(), display));
+			FireworksFactory.spawnTrailSparks((int) position.getX(), (int) position.getY(), simulation);
 		} else {
-			display.getParticles().addAll(
-					FireworksFactory.getFireworksExplosion((int) position.getX(), (int) position.getY(), display));
+			FireworksFactory.spawnFireworksExplosion((int) position.getX(), (int) position.getY(), simulation,
+					primaryColor, secondaryColor);
 			alive = false;
 		}
 
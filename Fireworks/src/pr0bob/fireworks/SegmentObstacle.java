@@ -0,0 +1,79 @@
+package pr0bob.fireworks;
+/**
+ * Strecke als Hindernis (z.B. eine schräge Dachkante), Partikel prallen von
+ * beiden Seiten ab
+ */
+public class SegmentObstacle implements Obstacle {
+
+	private final double x0;
+	private final double y0;
+	private final double x1;
+	private final double y1;
+
+	/*
+	 * Normierte Normale der Strecke
+	 */
+	private final double nx;
+	private final double ny;
+
+	public SegmentObstacle(double x0, double y0, double x1, double y1) {
+		double length = Math.hypot(x1 - x0, y1 - y0);
+		if (length == 0) {
+			throw new IllegalArgumentException("Strecke hat die Länge 0");
+		}
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = x1;
+		this.y1 = y1;
+		this.nx = -(y1 - y0) / length;
+		this.ny = (x1 - x0) / length;
+	}
+
+	@Override
+	public boolean reflect(Particle p) {
+		double x = p.getX();
+		double y = p.getY();
+		double vx = p.getVelocityX();
+		double vy = p.getVelocityY();
+
+		// Schnitt der Strecken (x,y)->(x+vx,y+vy) und (x0,y0)->(x1,y1)
+		double ex = x1 - x0;
+		double ey = y1 - y0;
+		double denom = vx * ey - vy * ex;
+		if (denom == 0) {
+			return false; // parallel
+		}
+		double dx = x0 - x;
+		double dy = y0 - y;
+		double t = (dx * ey - dy * ex) / denom;
+		double u = (dx * vy - dy * vx) / denom;
+		if (t < 0 || t > 1 || u < 0 || u > 1) {
+			return false;
+		}
+
+		// Spiegeln an der Normalen: v' = v - 2 (v.n) n
+		double dot = vx * nx + vy * ny;
+		p.setVelocity(vx - 2 * dot * nx, vy - 2 * dot * ny);
+		return true;
+	}
+
+	@Override
+	public double getMinX() {
+		return Math.min(x0, x1);
+	}
+
+	@Override
+	public double getMinY() {
+		return Math.min(y0, y1);
+	}
+
+	@Override
+	public double getMaxX() {
+		return Math.max(x0, x1);
+	}
+
+	@Override
+	public double getMaxY() {
+		return Math.max(y0, y1);
+	}
+}
@@ -0,0 +1,198 @@
+package pr0bob.fireworks;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Zeichnet alles auf, was von außen in eine Simulation eingreift,
+ * damit eine Show mit {@link ShowReplay} exakt wiederholt werden kann (z.B. um
+ * einen Ruckler oder einen Darstellungsfehler nachzustellen)
+ *
+ * Die Simulation selbst ist deterministisch (eigener Zufalls-Stream pro
+ * Simulation, Blöcke des Updates mit festem Seed). Aufgezeichnet werden deshalb
+ * nur Seed und Größe im Kopf, danach jeder Effekt aus der {@link SpawnQueue}
+ * (Raketen, Mausklicks), jede Änderung der Ränder und der Qualitätsstufe und
+ * Start und Ende einer Choreografie ({@link ShowSchedule}), jeweils mit dem
+ * Simulationsschritt in dem sie wirksam wurden. Die Choreografie selbst steht
+ * nicht in der Aufnahme, beim Abspielen wird das gleiche Skript übergeben
+ * ({@link ShowReplay#setShow(ShowSchedule)})
+ *
+ * Format (alle Zahlen nach dem Kopf als Varint, Schritte als Abstand zum
+ * vorherigen Ereignis):
+ *
+ * <pre>
+ * Kopf:     int MAGIC, byte VERSION, long seed, int width, int height
+ * Ereignis: byte type, varint tickDelta, Daten je nach Typ
+ *   SPAWN:   byte effect, zigzag x, zigzag y
+ *   BOUNDS:  varint width, varint height
+ *   QUALITY: byte level
+ *   SHOW:    byte running (1 = Start bei Zeit 0 im Skript, 0 = Ende)
+ *   END:     keine (tickDelta bis zum letzten Schritt)
+ * </pre>
+ *
+ * Alle Methoden (auch das Schließen) müssen vom Thread der Simulation
+ * aufgerufen werden, Schreibfehler werden bis zum Schließen gesammelt
+ */
+public class ShowRecorder implements Closeable {
+
+	static final int MAGIC = 0x46575348; // "FWSH"
+	static final int VERSION = 2;
+
+	static final int END = 0;
+	static final int SPAWN = 1;
+	static final int BOUNDS = 2;
+	static final int QUALITY = 3;
+	static final int SHOW = 4;
+
+	private final DataOutputStream out;
+
+	private long lastTick = 0;
+	private int width;
+	private int height;
+	private int level = 0;
+	private long events = 0;
+	private boolean closed = false;
+	private IOException error;
+
+	/**
+	 * Beginnt die Aufnahme, muss vor dem ersten Schritt der Simulation angemeldet
+	 * werden ({@link FireworksSimulation#setRecorder(ShowRecorder)})
+	 *
+	 * @param out        - Ziel der Aufnahme
+	 * @param simulation - Aufgezeichnete Simulation
+	 * @throws IOException
+	 */
+	public ShowRecorder(OutputStream out, FireworksSimulation simulation) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		width = simulation.getInsideBounds().width;
+		height = simulation.getInsideBounds().height;
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.out.writeLong(simulation.getSeed());
+		this.out.writeInt(width);
+		this.out.writeInt(height);
+	}
+
+	public ShowRecorder(String file, FireworksSimulation simulation) throws IOException {
+		this(new FileOutputStream(file), simulation);
+	}
+
+	/**
+	 * Zu Beginn jedes Schritts: merkt sich geänderte Ränder und Qualitätsstufe
+	 */
+	void beforeStep(FireworksSimulation simulation, long tick) {
+		int w = simulation.getInsideBounds().width;
+		int h = simulation.getInsideBounds().height;
+		if (w != width || h != height) {
+			width = w;
+			height = h;
+			write(BOUNDS, tick, w, h, 0);
+		}
+		int l = simulation.getQualityGovernor().getLevel();
+		if (l != level) {
+			level = l;
+			write(QUALITY, tick, l, 0, 0);
+		}
+	}
+
+	/**
+	 * Ein Effekt wurde aus der {@link SpawnQueue} geholt und erzeugt
+	 */
+	void spawn(long tick, SpawnQueue.Effect effect, int x, int y) {
+		write(SPAWN, tick, effect.ordinal(), x, y);
+	}
+
+	/**
+	 * Eine Choreografie wurde gestartet oder beendet
+	 * ({@link FireworksSimulation#setShow(ShowSchedule)})
+	 */
+	void show(long tick, boolean running) {
+		write(SHOW, tick, running ? 1 : 0, 0, 0);
+	}
+
+	private void write(int type, long tick, int a, int b, int c) {
+		if (closed || error != null) {
+			return;
+		}
+		try {
+			out.writeByte(type);
+			writeVarLong(out, tick - lastTick);
+			lastTick = tick;
+			switch (type) {
+			case SPAWN:
+				out.writeByte(a);
+				writeVarLong(out, zigzag(b));
+				writeVarLong(out, zigzag(c));
+				break;
+			case BOUNDS:
+				writeVarLong(out, a);
+				writeVarLong(out, b);
+				break;
+			case QUALITY:
+			case SHOW:
+				out.writeByte(a);
+				break;
+			default:
+				break;
+			}
+			events++;
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	/**
+	 * Beendet die Aufnahme mit dem gegebenen Schritt als letztem
+	 *
+	 * @param tick - Aktueller Schritt der Simulation
+	 * @throws IOException - Erster Fehler beim Schreiben der Aufnahme
+	 */
+	public void close(long tick) throws IOException {
+		if (closed) {
+			return;
+		}
+		write(END, Math.max(tick, lastTick), 0, 0, 0);
+		closed = true;
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Beendet die Aufnahme beim letzten aufgezeichneten Schritt
+	 */
+	@Override
+	public void close() throws IOException {
+		close(lastTick);
+	}
+
+	static void writeVarLong(DataOutputStream out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	private static long zigzag(int v) {
+		return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,267 @@
+package pr0bob.fireworks;
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Spielt eine Aufnahme des {@link ShowRecorder} wieder ab
+ *
+ * Die Aufnahme wird komplett eingelesen. Vor jedem Schritt der Simulation
+ * reicht {@link #apply(FireworksSimulation)} alle Ereignisse dieses Schritts
+ * weiter, Effekte gehen wie im Original über die {@link SpawnQueue}. Die
+ * Simulation muss mit dem Seed der Aufnahme erstellt werden
+ * ({@link MathUtils#setSeed(long)} vorher, siehe {@link #createSimulation()})
+ * und darf nicht in Echtzeit laufen, die Qualitätsstufe kommt dann nur noch aus
+ * der Aufnahme
+ *
+ * Lief bei der Aufnahme eine Choreografie, muss das gleiche Skript mit
+ * {@link #setShow(ShowSchedule)} übergeben werden, es startet dann im
+ * aufgezeichneten Schritt
+ *
+ * Ohne Fenster (z.B. im {@link HeadlessRenderer}) läuft die Wiedergabe so
+ * schnell wie möglich und eignet sich damit auch als realistische Last für
+ * Messungen
+ */
+public class ShowReplay {
+
+	private final long seed;
+	private final int width;
+	private final int height;
+
+	/*
+	 * Ereignisse in Reihenfolge der Aufnahme
+	 */
+	private int count = 0;
+	private int[] types = new int[64];
+	private long[] ticks = new long[64];
+	private int[] as = new int[64];
+	private int[] bs = new int[64];
+	private int[] cs = new int[64];
+
+	private long lastTick = 0;
+	private int next = 0;
+
+	/**
+	 * Choreografie die bei einem SHOW-Ereignis gestartet wird oder {@code null}
+	 */
+	private ShowSchedule show;
+	private boolean showRecorded = false;
+
+	/**
+	 * Liest eine komplette Aufnahme ein
+	 *
+	 * @param in - Quelle, wird nicht geschlossen
+	 * @throws IOException - Bei Lesefehlern oder ungültigem Format
+	 */
+	public ShowReplay(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != ShowRecorder.MAGIC) {
+			throw new IOException("Keine Aufnahme eines ShowRecorders");
+		}
+		int version = data.readUnsignedByte();
+		// Version 1 kannte noch keine SHOW-Ereignisse, ist sonst gleich
+		if (version < 1 || version > ShowRecorder.VERSION) {
+			throw new IOException("Nicht unterstützte Version: " + version);
+		}
+		seed = data.readLong();
+		width = data.readInt();
+		height = data.readInt();
+
+		long tick = 0;
+		while (true) {
+			int type;
+			try {
+				type = data.readUnsignedByte();
+			} catch (EOFException e) {
+				// Aufnahme wurde nicht sauber beendet (z.B. Absturz), bis hier abspielen
+				break;
+			}
+			tick += readVarLong(data);
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			switch (type) {
+			case ShowRecorder.SPAWN:
+				a = data.readUnsignedByte();
+				if (a >= SpawnQueue.Effect.values().length) {
+					throw new IOException("Unbekannter Effekt: " + a);
+				}
+				b = unzigzag(readVarLong(data));
+				c = unzigzag(readVarLong(data));
+				break;
+			case ShowRecorder.BOUNDS:
+				a = (int) readVarLong(data);
+				b = (int) readVarLong(data);
+				break;
+			case ShowRecorder.QUALITY:
+				a = data.readUnsignedByte();
+				break;
+			case ShowRecorder.SHOW:
+				a = data.readUnsignedByte();
+				showRecorded |= a != 0;
+				break;
+			case ShowRecorder.END:
+				break;
+			default:
+				throw new IOException("Unbekanntes Ereignis: " + type);
+			}
+			add(type, tick, a, b, c);
+			lastTick = tick;
+			if (type == ShowRecorder.END) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Liest eine Aufnahme aus einer Datei
+	 */
+	public static ShowReplay load(String file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return new ShowReplay(in);
+		}
+	}
+
+	private void add(int type, long tick, int a, int b, int c) {
+		if (count == types.length) {
+			int n = count * 2;
+			types = Arrays.copyOf(types, n);
+			ticks = Arrays.copyOf(ticks, n);
+			as = Arrays.copyOf(as, n);
+			bs = Arrays.copyOf(bs, n);
+			cs = Arrays.copyOf(cs, n);
+		}
+		types[count] = type;
+		ticks[count] = tick;
+		as[count] = a;
+		bs[count] = b;
+		cs[count] = c;
+		count++;
+	}
+
+	/**
+	 * Setzt den Seed der Aufnahme und erstellt eine passende Simulation (ohne
+	 * Echtzeit)
+	 */
+	public FireworksSimulation createSimulation() {
+		MathUtils.setSeed(seed);
+		return new FireworksSimulation(width, height);
+	}
+
+	/**
+	 * Reicht alle Ereignisse bis einschließlich des aktuellen Schritts an die
+	 * Simulation weiter, muss vor jedem {@link FireworksSimulation#step()}
+	 * aufgerufen werden
+	 *
+	 * @return Anzahl der weitergereichten Ereignisse
+	 */
+	public int apply(FireworksSimulation simulation) {
+		long tick = simulation.getCurrentTick();
+		int applied = 0;
+		while (next < count && ticks[next] <= tick) {
+			switch (types[next]) {
+			case ShowRecorder.SPAWN:
+				simulation.getSpawnQueue().offer(SpawnQueue.Effect.values()[as[next]], bs[next], cs[next]);
+				break;
+			case ShowRecorder.BOUNDS:
+				simulation.setBounds(new Dimension(as[next], bs[next]));
+				break;
+			case ShowRecorder.QUALITY:
+				simulation.getQualityGovernor().setLevel(as[next]);
+				break;
+			case ShowRecorder.SHOW:
+				if (show != null) {
+					simulation.setShow(as[next] != 0 ? show : null);
+				}
+				break;
+			default:
+				break;
+			}
+			next++;
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * {@code true} sobald alle aufgezeichneten Schritte abgespielt sind
+	 */
+	public boolean isFinished(FireworksSimulation simulation) {
+		return simulation.getCurrentTick() >= lastTick;
+	}
+
+	/**
+	 * Spult an den Anfang zurück (für ein neues Simulation)
+	 */
+	public void rewind() {
+		next = 0;
+	}
+
+	static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Varint zu lang");
+	}
+
+	private static int unzigzag(long v) {
+		int z = (int) v;
+		return (z >>> 1) ^ -(z & 1);
+	}
+
+	public ShowSchedule getShow() {
+		return show;
+	}
+
+	/**
+	 * Choreografie die bei der Aufnahme lief, sie wird in den aufgezeichneten
+	 * Schritten gestartet und beendet
+	 */
+	public void setShow(ShowSchedule show) {
+		this.show = show;
+	}
+
+	/**
+	 * {@code true} wenn während der Aufnahme eine Choreografie gestartet wurde
+	 * (ältere Aufnahmen enthalten den Start nicht)
+	 */
+	public boolean isShowRecorded() {
+		return showRecorded;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Anzahl der aufgezeichneten Schritte
+	 */
+	public long getLastTick() {
+		return lastTick;
+	}
+
+	/**
+	 * Anzahl der Ereignisse (inklusive Ende)
+	 */
+	public int getEvents() {
+		return count;
+	}
+}
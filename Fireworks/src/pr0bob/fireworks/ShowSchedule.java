@@ -0,0 +1,325 @@
+package pr0bob.fireworks;
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Choreografie einer Show: ein zur Ladezeit kompilierter Zeitplan aus
+ * Raketen und Effekten
+ *
+ * Ein Skript hat eine Zeile pro Ereignis, Leerzeilen und alles ab {@code #}
+ * werden ignoriert:
+ *
+ * <pre>
+ * # Zeit(s)  Effekt     Parameter
+ * 0.5        rocket     x=0.5 colors=#ff2020,#ffffff
+ * 2.0        explosion  x=0.25 y=0.3 colors=#20ff20 bursts=5 every=0.1
+ * 3.0        sparks     x=0.5
+ * 3.5        trail      x=0.5 y=0.8
+ * </pre>
+ *
+ * Effekte: {@code rocket}, {@code explosion}, {@code sparks} (Abschuss-Funken)
+ * und {@code trail} (Funken der Leuchtspur), außerdem jeder Name eines in der
+ * {@link FireworksFactory} registrierten {@link EffectTemplate} (z.B.
+ * {@code willow}, Templates müssen vor dem Kompilieren geladen sein). Positionen sind Anteile der
+ * Innenmaße der Simulation (Standard x=0.5, y=1.0 für den unteren Rand), fehlende
+ * Farben werden wie bisher zufällig gewählt. {@code bursts} wiederholt das
+ * Ereignis im Abstand von {@code every} Sekunden
+ *
+ * Beim Laden werden alle Zeilen geparst, Farben in {@link Color}-Objekte und
+ * Zeiten in Simulationsschritte umgerechnet und stabil nach Zeit sortiert. Zur
+ * Laufzeit holt {@link #launch(FireworksSimulation, long)} die fälligen Ereignisse über
+ * einen Zeiger vom Anfang der Arrays (O(1) pro Ereignis, Springen per binärer
+ * Suche), ohne zu parsen oder nachzuschlagen. Der Zeitplan gehört zur
+ * Simulation: eine Aufnahme ({@link ShowRecorder}) enthält ihn nicht, beim
+ * Abspielen muss das gleiche Skript wieder angegeben werden
+ */
+public class ShowSchedule {
+
+	/**
+	 * Effekte eines Ereignisses
+	 */
+	public enum Effect {
+		ROCKET, EXPLOSION, SPARKS, TRAIL,
+		/**
+		 * Registriertes {@link EffectTemplate}
+		 */
+		TEMPLATE
+	}
+
+	private static final Effect[] EFFECTS = Effect.values();
+
+	/*
+	 * Ereignisse nach Schritt sortiert
+	 */
+	private final int count;
+	private final long[] ticks;
+	private final int[] effects;
+	private final float[] xs;
+	private final float[] ys;
+	private final Color[] primaryColors;
+	private final Color[] secondaryColors;
+	private final SpawnKernel[] kernels;
+
+	/**
+	 * Nächstes fälliges Ereignis
+	 */
+	private int next = 0;
+	private long launched = 0;
+
+	private ShowSchedule(List<Event> events) {
+		// Stabil sortieren, gleichzeitige Ereignisse bleiben in Skript-Reihenfolge
+		Event[] sorted = events.toArray(new Event[0]);
+		Arrays.sort(sorted, Comparator.comparingLong(e -> e.tick));
+
+		count = sorted.length;
+		ticks = new long[count];
+		effects = new int[count];
+		xs = new float[count];
+		ys = new float[count];
+		primaryColors = new Color[count];
+		secondaryColors = new Color[count];
+		kernels = new SpawnKernel[count];
+		for (int i = 0; i < count; i++) {
+			Event e = sorted[i];
+			ticks[i] = e.tick;
+			effects[i] = e.effect.ordinal();
+			xs[i] = e.x;
+			ys[i] = e.y;
+			primaryColors[i] = e.primary;
+			secondaryColors[i] = e.secondary;
+			kernels[i] = e.kernel;
+		}
+	}
+
+	/**
+	 * Ereignis während des Kompilierens
+	 */
+	private static class Event {
+		long tick;
+		Effect effect;
+		float x;
+		float y;
+		Color primary;
+		Color secondary;
+		SpawnKernel kernel;
+	}
+
+	/**
+	 * Lädt und kompiliert ein Skript aus einer Datei
+	 *
+	 * @param file  - Pfad zum Skript
+	 * @param clock - Uhr der Simulation, gibt die Länge eines Schritts vor
+	 */
+	public static ShowSchedule load(String file, SimulationClock clock) throws IOException {
+		try (Reader in = new FileReader(file, StandardCharsets.UTF_8)) {
+			return compile(in, clock);
+		}
+	}
+
+	/**
+	 * Kompiliert ein Skript
+	 *
+	 * @param script - Quelle, wird nicht geschlossen
+	 * @param clock  - Uhr der Simulation, gibt die Länge eines Schritts vor
+	 * @throws IllegalArgumentException - Bei Fehlern im Skript (mit Zeilennummer)
+	 */
+	public static ShowSchedule compile(Reader script, SimulationClock clock) throws IOException {
+		BufferedReader reader = new BufferedReader(script);
+		List<Event> events = new ArrayList<>();
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			int comment = line.indexOf('#');
+			// '#' direkt nach '=' gehört zu einer Farbe
+			while (comment > 0 && (line.charAt(comment - 1) == '=' || line.charAt(comment - 1) == ',')) {
+				comment = line.indexOf('#', comment + 1);
+			}
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			try {
+				parseLine(line, clock, events);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Zeile " + lineNumber + ": " + e.getMessage(), e);
+			}
+		}
+		return new ShowSchedule(events);
+	}
+
+	private static void parseLine(String line, SimulationClock clock, List<Event> events) {
+		String[] parts = line.split("\\s+");
+		if (parts.length < 2) {
+			throw new IllegalArgumentException("Zeit und Effekt erwartet: " + line);
+		}
+		double time = Double.parseDouble(parts[0]);
+		if (time < 0) {
+			throw new IllegalArgumentException("time < 0: " + time);
+		}
+		Effect effect;
+		SpawnKernel kernel = null;
+		try {
+			effect = Effect.valueOf(parts[1].toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			effect = null;
+		}
+		if (effect == null || effect == Effect.TEMPLATE) {
+			kernel = FireworksFactory.getEffect(parts[1]);
+			if (kernel == null) {
+				throw new IllegalArgumentException("Unbekannter Effekt: " + parts[1]);
+			}
+			effect = Effect.TEMPLATE;
+		}
+
+		float x = 0.5f;
+		float y = 1.0f;
+		Color primary = null;
+		Color secondary = null;
+		int bursts = 1;
+		double every = 0.1;
+		for (int i = 2; i < parts.length; i++) {
+			int eq = parts[i].indexOf('=');
+			if (eq < 0) {
+				throw new IllegalArgumentException("Parameter ohne Wert: " + parts[i]);
+			}
+			String key = parts[i].substring(0, eq);
+			String value = parts[i].substring(eq + 1);
+			switch (key) {
+			case "x":
+				x = Float.parseFloat(value);
+				break;
+			case "y":
+				y = Float.parseFloat(value);
+				break;
+			case "colors":
+				String[] colors = value.split(",");
+				primary = Color.decode(colors[0]);
+				secondary = colors.length > 1 ? Color.decode(colors[1]) : primary;
+				break;
+			case "bursts":
+				bursts = Integer.parseInt(value);
+				if (bursts < 1) {
+					throw new IllegalArgumentException("bursts < 1: " + bursts);
+				}
+				break;
+			case "every":
+				every = Double.parseDouble(value);
+				if (every < 0) {
+					throw new IllegalArgumentException("every < 0: " + every);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unbekannter Parameter: " + key);
+			}
+		}
+
+		for (int b = 0; b < bursts; b++) {
+			Event e = new Event();
+			e.tick = clock.toTicks(Math.round((time + b * every) * 1000));
+			e.effect = effect;
+			e.x = x;
+			e.y = y;
+			e.primary = primary;
+			e.secondary = secondary;
+			e.kernel = kernel;
+			events.add(e);
+		}
+	}
+
+	/**
+	 * Startet alle Ereignisse bis einschließlich des gegebenen Schritts (ab Beginn
+	 * der Show), wird von der Simulation zu Beginn jedes Schritts aufgerufen
+	 *
+	 * @return Anzahl der gestarteten Ereignisse
+	 */
+	int launch(FireworksSimulation simulation, long tick) {
+		int started = 0;
+		while (next < count && ticks[next] <= tick) {
+			launch(next, simulation);
+			next++;
+			started++;
+		}
+		launched += started;
+		return started;
+	}
+
+	private void launch(int i, FireworksSimulation simulation) {
+		int x = (int) (xs[i] * simulation.getInsideBounds().width);
+		int y = (int) (ys[i] * simulation.getInsideBounds().height);
+		switch (EFFECTS[effects[i]]) {
+		case ROCKET:
+			simulation.getRockets().add(new Rocket(x, y, simulation, primaryColors[i], secondaryColors[i]));
+			break;
+		case EXPLOSION:
+			FireworksFactory.spawnFireworksExplosion(x, y, simulation, primaryColors[i], secondaryColors[i]);
+			break;
+		case SPARKS:
+			FireworksFactory.spawnShotSparks(x, y, simulation);
+			break;
+		case TRAIL:
+			FireworksFactory.spawnTrailSparks(x, y, simulation);
+			break;
+		case TEMPLATE:
+			kernels[i].spawn(x, y, simulation, primaryColors[i], secondaryColors[i]);
+			break;
+		default:
+			throw new IllegalArgumentException("Unbekannter Effekt: " + effects[i]);
+		}
+	}
+
+	/**
+	 * Springt zum ersten Ereignis ab dem gegebenen Schritt (binäre Suche),
+	 * frühere Ereignisse werden übersprungen
+	 */
+	public void seek(long tick) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ticks[mid] < tick) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		next = lo;
+	}
+
+	/**
+	 * {@code true} wenn alle Ereignisse gestartet wurden
+	 */
+	public boolean isFinished() {
+		return next >= count;
+	}
+
+	/**
+	 * Anzahl der Ereignisse (Wiederholungen einzeln gezählt)
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Schritt des letzten Ereignisses, -1 für einen leeren Zeitplan
+	 */
+	public long getLastTick() {
+		return count == 0 ? -1 : ticks[count - 1];
+	}
+
+	public long getLaunched() {
+		return launched;
+	}
+}
@@ -0,0 +1,130 @@
+package pr0bob.fireworks;
+/**
+ * Uhr der Simulation mit festem Zeitschritt
+ * 
+ * Die Physik läuft immer in Schritten gleicher Länge, unabhängig davon wie oft
+ * oder wie pünktlich gerendert wird. Die vergangene Echtzeit wird gesammelt und
+ * in ganze Schritte umgerechnet, der Rest ergibt den Anteil ({@link #getAlpha()})
+ * mit dem beim Rendern zwischen zwei Schritten interpoliert wird. Hängt das
+ * Rendern hinterher, holt die Simulation auf, aber höchstens
+ * {@link #getMaxCatchUpSteps()} Schritte pro Aufruf, der Rest wird verworfen
+ * (die Show läuft dann kurz langsamer, statt sich immer weiter aufzustauen)
+ */
+public class SimulationClock {
+
+	/**
+	 * Länge eines Simulationsschritts, entspricht dem alten Frame-Timer damit die
+	 * Partikel genauso schnell fliegen wie bisher
+	 */
+	public static final long DEFAULT_STEP_NANOS = 30_000_000L;
+
+	public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+
+	private final long stepNanos;
+	private int maxCatchUpSteps = DEFAULT_MAX_CATCH_UP_STEPS;
+
+	/**
+	 * Anzahl der bisher ausgeführten Schritte, dient dazu die verbleibende
+	 * Lebenszeit der Raketen und Partikel zu bestimmen
+	 */
+	private long tick = 0;
+
+	/**
+	 * Gesammelte Zeit die noch nicht simuliert wurde
+	 */
+	private long accumulator = 0;
+	private long lastTime = -1;
+
+	/**
+	 * Zeit die wegen der Begrenzung beim Aufholen verworfen wurde
+	 */
+	private long droppedNanos = 0;
+
+	public SimulationClock() {
+		this(DEFAULT_STEP_NANOS);
+	}
+
+	/**
+	 * @param stepNanos - Länge eines Schritts in Nanosekunden
+	 */
+	public SimulationClock(long stepNanos) {
+		if (stepNanos <= 0) {
+			throw new IllegalArgumentException("stepNanos <= 0: " + stepNanos);
+		}
+		this.stepNanos = stepNanos;
+	}
+
+	/**
+	 * Lässt die Uhr bis zur gegebenen Zeit laufen
+	 * 
+	 * @param nowNanos - Aktuelle Zeit (z.B. {@link System#nanoTime()})
+	 * @return Anzahl der Schritte die jetzt simuliert werden müssen
+	 */
+	public int advance(long nowNanos) {
+		if (lastTime < 0) {
+			lastTime = nowNanos;
+			return 0;
+		}
+		accumulator += nowNanos - lastTime;
+		lastTime = nowNanos;
+
+		long steps = accumulator / stepNanos;
+		if (steps > maxCatchUpSteps) {
+			long dropped = (steps - maxCatchUpSteps) * stepNanos;
+			accumulator -= dropped;
+			droppedNanos += dropped;
+			steps = maxCatchUpSteps;
+		}
+		return (int) steps;
+	}
+
+	/**
+	 * Markiert einen Schritt als ausgeführt
+	 */
+	public void step() {
+		tick++;
+		accumulator = Math.max(accumulator - stepNanos, 0);
+	}
+
+	/**
+	 * Anteil (0.0 - 1.0) der Zeit zwischen dem letzten und dem nächsten Schritt,
+	 * zum Interpolieren der Positionen beim Rendern
+	 */
+	public double getAlpha() {
+		return Math.min((double) accumulator / stepNanos, 1.0);
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Simulierte Zeit in Sekunden
+	 */
+	public double getTime() {
+		return tick * stepNanos / 1e9;
+	}
+
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * Rechnet eine Dauer in Millisekunden in Simulationsschritte um
+	 */
+	public long toTicks(long millis) {
+		return Math.round(millis * 1_000_000.0 / stepNanos);
+	}
+
+	public int getMaxCatchUpSteps() {
+		return maxCatchUpSteps;
+	}
+
+	public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+		this.maxCatchUpSteps = Math.max(maxCatchUpSteps, 1);
+	}
+
+	public long getDroppedNanos() {
+		return droppedNanos;
+	}
+}
@@ -0,0 +1,21 @@
+package pr0bob.fireworks;
+
+/**
+ * Ausgabe einer {@link FireworksSimulation} (Fenster, Encoder, Aufnahme, ...)
+ *
+ * Angemeldete Renderer ({@link FireworksSimulation#addRenderer}) werden am Ende
+ * jedes Schritts der Reihe nach benachrichtigt, im Thread der Simulation. Dort
+ * wird alles gezeichnet was von jedem einzelnen Schritt abhängt (z.B. die
+ * Leuchtspuren), das eigentliche Bild setzt der Renderer zusammen wann er
+ * eines braucht
+ */
+public interface SimulationRenderer {
+
+	/**
+	 * Wird nach dem Update der Partikel aufgerufen, bevor die Uhr weiterzählt
+	 *
+	 * @param simulation - Simulation die den Schritt ausgeführt hat
+	 * @param tick       - Der gerade berechnete Schritt
+	 */
+	void afterStep(FireworksSimulation simulation, long tick);
+}
@@ -0,0 +1,309 @@
+package pr0bob.fireworks;
+import java.awt.Color;
+
+/**
+ * Kompilierte Form eines {@link EffectTemplate}
+ *
+ * Alles was nicht vom Zufall abhängt (Flags, Paletten als ARGB, Verteilungen
+ * ohne Streuung) wird beim Kompilieren einmal ausgerechnet. Ein Ausbruch wird
+ * dann pro Ebene in einem Durchlauf direkt in die Arrays des
+ * {@link ParticleStore} geschrieben, ohne {@link Particle}-Zeiger, Setter oder
+ * {@link Color}-Objekte. Die Farben werden dabei in die {@link Palette} des
+ * Speichers eingetragen, dunklere und hellere Varianten kommen aus deren
+ * Tabellen. Zufallszahlen kommen aus dem Stream des aufrufenden Threads, die
+ * Stufe des {@link QualityGovernor} wird wie bisher auf Anzahl, Leuchten,
+ * Tracer und Aufspalten angewendet
+ *
+ * Ein Kernel ist nach dem Kompilieren unveränderlich und wird von allen
+ * Simulationen geteilt, die Farben eines Ausbruchs liegen im Puffer des
+ * jeweiligen {@link ParticleStore}
+ */
+public class SpawnKernel {
+
+	/**
+	 * Faktor von {@link Color#darker()} und {@link Color#brighter()}
+	 */
+	private static final double SHADE_FACTOR = 0.7;
+
+	/**
+	 * Eine kompilierte Ebene
+	 */
+	private static class Layer {
+		final EffectTemplate.Layer template;
+		final int flags;
+		final boolean flickerColor;
+
+		/**
+		 * Keine Geschwindigkeit in Y-Richtung vor der Drehung, dann ist die
+		 * Geschwindigkeit direkt (Betrag, Winkel)
+		 */
+		final boolean polar;
+
+		Layer(EffectTemplate.Layer template) {
+			this.template = template;
+			int f = (ParticleStore.DEFAULT_FLAGS & ~(ParticleStore.FLAG_TRACER | ParticleStore.FLAG_GRAVITY))
+					| ParticleStore.FLAG_GLOW;
+			if (template.gravity) {
+				f |= ParticleStore.FLAG_GRAVITY;
+			}
+			flickerColor = template.flickerShade != EffectTemplate.Shade.NONE;
+			if (flickerColor) {
+				f |= ParticleStore.FLAG_HAS_FLICKER_COLOR;
+			}
+			flags = f;
+			polar = template.velocityYMin == 0 && template.velocityYMax == 0;
+		}
+	}
+
+	private final EffectTemplate template;
+	private final Layer[] layers;
+
+	SpawnKernel(EffectTemplate template) {
+		this.template = template;
+		layers = new Layer[template.getLayers().size()];
+		for (int l = 0; l < layers.length; l++) {
+			layers[l] = new Layer(template.getLayers().get(l));
+		}
+	}
+
+	/**
+	 * Erzeugt einen Ausbruch mit zufälligen Farben
+	 *
+	 * @param x          - X-Position
+	 * @param y          - Y-Position
+	 * @param simulation - Simulation in der die Partikel entstehen sollen
+	 * @return Anzahl der erzeugten Partikel
+	 */
+	public int spawn(int x, int y, FireworksSimulation simulation) {
+		return spawn(x, y, simulation, null, null);
+	}
+
+	/**
+	 * Erzeugt einen Ausbruch
+	 *
+	 * @param x          - X-Position
+	 * @param y          - Y-Position
+	 * @param simulation - Simulation in der die Partikel entstehen sollen
+	 * @param primary    - Ersetzt die erste pro Ausbruch gewählte Farbe der Ebenen
+	 *                     mit Palette {@code random}, {@code null} für zufällig
+	 * @param secondary  - Ersetzt die zweite Farbe, {@code null} für zufällig
+	 * @return Anzahl der erzeugten Partikel
+	 */
+	public int spawn(int x, int y, FireworksSimulation simulation, Color primary, Color secondary) {
+		int count = 0;
+		for (Layer layer : layers) {
+			int spawned = spawnLayer(layer, x, y, simulation, primary, secondary);
+			if (spawned < 0) {
+				// Speicher voll, weitere Partikel würden nur abgelehnt
+				return count - spawned - 1;
+			}
+			count += spawned;
+		}
+		return count;
+	}
+
+	/**
+	 * @return Anzahl der erzeugten Partikel oder {@code -(Anzahl + 1)} wenn der
+	 *         Speicher voll wurde
+	 */
+	private static int spawnLayer(Layer layer, int x, int y, FireworksSimulation simulation, Color primary,
+			Color secondary) {
+		EffectTemplate.Layer t = layer.template;
+		ParticleStore store = simulation.getParticles();
+		Palette palette = store.palette;
+		QualityGovernor quality = simulation.getQualityGovernor();
+		RandomStream r = MathUtils.stream();
+		long tick = simulation.getCurrentTick();
+
+		int n = quality.scaleCount(range(r, t.countMin, t.countMax));
+
+		// Werte pro Ausbruch, Farben als Index in die Palette
+		int colors = t.colors;
+		int[] burstColors = store.burstColors(colors);
+		for (int c = 0; c < colors; c++) {
+			burstColors[c] = palette.intern(pickColor(t, r));
+		}
+		if (t.palette == EffectTemplate.Palette.RANDOM && colors > 0) {
+			if (primary != null) {
+				burstColors[0] = palette.intern(primary.getRGB());
+			}
+			if (secondary != null && colors > 1) {
+				burstColors[1] = palette.intern(secondary.getRGB());
+			}
+		}
+		boolean variant = t.variantChance > 0 && MathUtils.randomChance(r, t.variantChance);
+		// Immer ziehen, damit die Folge der Zufallszahlen nicht von der Variante
+		// abhängt, aufgeweitet wird aber nur die Variante
+		int spread = range(r, t.variantSpreadMin, t.variantSpreadMax);
+		double vxMin = variant ? t.variantVelocityXMin : t.velocityXMin;
+		double vxMax = variant ? t.variantVelocityXMax : t.velocityXMax;
+		double angleMin = variant ? t.variantAngleMin - spread : t.angleMin;
+		double angleMax = variant ? t.variantAngleMax + spread : t.angleMax;
+		int fixedGlow = t.glowRadiusMin == t.glowRadiusMax ? quality.scaleGlowRadius(t.glowRadiusMin) : -1;
+		double splitChance = quality.scaleSplitChance(t.splitChance);
+		boolean flickerColor = layer.flickerColor;
+
+		int count = 0;
+		for (int k = 0; k < n; k++) {
+			int i = store.add();
+			if (i < 0) {
+				return -count - 1;
+			}
+			int color;
+			if (colors == 0) {
+				color = palette.intern(pickColor(t, r));
+			} else if (colors == 1) {
+				color = burstColors[0];
+			} else {
+				color = burstColors[MathUtils.randInt(r, 0, colors - 1)];
+			}
+			int burstPrimary = colors == 0 ? color : burstColors[0];
+
+			double vx = range(r, vxMin, vxMax);
+			double angle = range(r, angleMin, angleMax);
+			double cos = MathUtils.cosDeg(angle);
+			double sin = MathUtils.sinDeg(angle);
+
+			store.posX[i] = x;
+			store.posY[i] = y;
+			store.lastX[i] = x;
+			store.lastY[i] = y;
+			if (layer.polar) {
+				store.velX[i] = vx * cos;
+				store.velY[i] = vx * sin;
+			} else {
+				double vy = range(r, t.velocityYMin, t.velocityYMax);
+				store.velX[i] = vx * cos - vy * sin;
+				store.velY[i] = vx * sin + vy * cos;
+			}
+			store.color[i] = (char) color;
+			store.tracerColor[i] = (char) (t.tracerBase == EffectTemplate.Base.PRIMARY ? burstPrimary : color);
+			store.lifetime[i] = range(r, t.lifetimeMin, t.lifetimeMax);
+			store.birth[i] = tick;
+			store.flickerRate[i] = range(r, t.flickerRateMin, t.flickerRateMax);
+			if (flickerColor) {
+				store.flickerColor[i] = (char) flickerColor(t, r, palette,
+						t.flickerBase == EffectTemplate.Base.PRIMARY ? burstPrimary : color);
+			}
+			store.glowRadius[i] = fixedGlow >= 0 ? fixedGlow
+					: quality.scaleGlowRadius(range(r, t.glowRadiusMin, t.glowRadiusMax));
+			boolean tracer = (t.tracerChance >= 1 || MathUtils.randomChance(r, t.tracerChance)) && quality.allowTracer();
+			store.flags[i] = tracer ? layer.flags | ParticleStore.FLAG_TRACER : layer.flags;
+			count++;
+
+			// Aufspalten wie Particle#cloneForSplit()
+			if (splitChance > 0 && MathUtils.randomChance(r, splitChance)) {
+				int j = store.copy(i);
+				if (j >= 0) {
+					store.posX[j] += MathUtils.randInt(r, -1, 1);
+					store.posY[j] += MathUtils.randInt(r, -1, 1);
+					double slowdown = MathUtils.randDouble(r, 0, 1.25);
+					store.velX[j] *= slowdown;
+					store.velY[j] *= slowdown;
+					store.lifetime[j] /= 2;
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Eine Farbe aus der Palette der Ebene
+	 */
+	private static int pickColor(EffectTemplate.Layer t, RandomStream r) {
+		switch (t.palette) {
+		case SPARK:
+			return sparkColor(r);
+		case FIXED:
+			return t.fixedColors[range(r, 0, t.fixedColors.length - 1)];
+		default:
+			return fireworksColor(r);
+		}
+	}
+
+	/**
+	 * Index der Flacker-Farbe, die Varianten der Grundfarbe merkt sich die Palette
+	 */
+	private static int flickerColor(EffectTemplate.Layer t, RandomStream r, Palette palette, int base) {
+		if (t.flickerWhiteChance > 0 && MathUtils.randomChance(r, t.flickerWhiteChance)) {
+			return Palette.WHITE;
+		}
+		if (t.flickerRandomChance > 0 && MathUtils.randomChance(r, t.flickerRandomChance)) {
+			return palette.intern(brighter(fireworksColor(r)));
+		}
+		switch (t.flickerShade) {
+		case DARKER:
+			return palette.darker(base);
+		case BRIGHTER:
+			return palette.brighter(base);
+		default:
+			return base;
+		}
+	}
+
+	/**
+	 * Leicht variierende Orangetöne für Funken
+	 */
+	static int sparkColor(RandomStream r) {
+		return 0xFF000000 | MathUtils.randInt(r, 180, 220) << 16 | MathUtils.randInt(r, 80, 180) << 8 | 25;
+	}
+
+	/**
+	 * Zufällige kräftige Farbe, ein Kanal ist immer fast voll
+	 */
+	static int fireworksColor(RandomStream r) {
+		int colD = MathUtils.randInt(r, 0, 2);
+		int red = MathUtils.randInt(r, colD == 0 ? 230 : 0, 255);
+		int green = MathUtils.randInt(r, colD == 1 ? 230 : 0, 255);
+		int blue = MathUtils.randInt(r, colD == 2 ? 230 : 0, 255);
+		return 0xFF000000 | red << 16 | green << 8 | blue;
+	}
+
+	/**
+	 * Wie {@link Color#darker()} für einen ARGB-Wert
+	 */
+	static int darker(int argb) {
+		int red = (int) (((argb >> 16) & 0xFF) * SHADE_FACTOR);
+		int green = (int) (((argb >> 8) & 0xFF) * SHADE_FACTOR);
+		int blue = (int) ((argb & 0xFF) * SHADE_FACTOR);
+		return (argb & 0xFF000000) | Math.max(red, 0) << 16 | Math.max(green, 0) << 8 | Math.max(blue, 0);
+	}
+
+	/**
+	 * Wie {@link Color#brighter()} für einen ARGB-Wert
+	 */
+	static int brighter(int argb) {
+		int red = (argb >> 16) & 0xFF;
+		int green = (argb >> 8) & 0xFF;
+		int blue = argb & 0xFF;
+		int alpha = argb & 0xFF000000;
+		int i = (int) (1.0 / (1.0 - SHADE_FACTOR));
+		if (red == 0 && green == 0 && blue == 0) {
+			return alpha | i << 16 | i << 8 | i;
+		}
+		if (red > 0 && red < i) {
+			red = i;
+		}
+		if (green > 0 && green < i) {
+			green = i;
+		}
+		if (blue > 0 && blue < i) {
+			blue = i;
+		}
+		return alpha | Math.min((int) (red / SHADE_FACTOR), 255) << 16 | Math.min((int) (green / SHADE_FACTOR), 255) << 8
+				| Math.min((int) (blue / SHADE_FACTOR), 255);
+	}
+
+	private static int range(RandomStream r, int min, int max) {
+		return min == max ? min : MathUtils.randInt(r, min, max);
+	}
+
+	private static double range(RandomStream r, double min, double max) {
+		return min == max ? min : MathUtils.randDouble(r, min, max);
+	}
+
+	public EffectTemplate getTemplate() {
+		return template;
+	}
+}
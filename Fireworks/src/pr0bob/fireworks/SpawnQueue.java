@@ -0,0 +1,219 @@
+package pr0bob.fireworks;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warteschlange für Partikeleffekte und Raketen die von außerhalb der
+ * Simulation ausgelöst werden (Maus, Auto-Modus, andere Threads)
+ * 
+ * Beliebig viele Threads können gleichzeitig Effekte einreihen, ohne zu
+ * blockieren (Ringpuffer fester Größe mit Sequenznummer pro Platz). Die
+ * Simulation holt sie zu Beginn jedes Schritts mit {@link #drain(FireworksSimulation)} ab
+ * und erzeugt erst dann die Partikel, dadurch wird der ParticleStore nie
+ * während eines Updates verändert. Ist der Puffer voll, wird der neue Effekt
+ * verworfen (die älteren sind schon länger sichtbar gewollt)
+ */
+public class SpawnQueue {
+
+	/**
+	 * Effekte die eingereiht werden können
+	 */
+	public enum Effect {
+		/**
+		 * {@link FireworksFactory#spawnShotSparks(int, int, FireworksSimulation)}
+		 */
+		SHOT_SPARKS,
+		/**
+		 * {@link FireworksFactory#spawnTrailSparks(int, int, FireworksSimulation)}
+		 */
+		TRAIL_SPARKS,
+		/**
+		 * {@link FireworksFactory#spawnFireworksExplosion(int, int, FireworksSimulation)}
+		 */
+		EXPLOSION,
+		/**
+		 * Rakete an zufälliger Stelle des unteren Rands, Position wird ignoriert
+		 * ({@link FireworksSimulation#addRocket()})
+		 */
+		ROCKET
+	}
+
+	private static final Effect[] EFFECTS = Effect.values();
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	private final int mask;
+
+	/*
+	 * Inhalt der Plätze, sichtbar gemacht über die Sequenznummer
+	 */
+	private final int[] effects;
+	private final int[] xs;
+	private final int[] ys;
+
+	/**
+	 * Sequenznummer pro Platz: == Position wenn frei zum Schreiben, == Position +
+	 * 1 wenn fertig geschrieben und bereit zum Lesen
+	 */
+	private final AtomicLongArray sequence;
+
+	/**
+	 * Nächste Position zum Schreiben (Producer) bzw. Lesen (nur der Consumer)
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	private long head = 0;
+
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private volatile long drained = 0;
+	private volatile long drainedParticles = 0;
+
+	public SpawnQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity - Anzahl der Plätze, wird auf die nächste Zweierpotenz
+	 *                 aufgerundet
+	 */
+	public SpawnQueue(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Ungültige Kapazität: " + capacity);
+		}
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		effects = new int[this.capacity];
+		xs = new int[this.capacity];
+		ys = new int[this.capacity];
+		sequence = new AtomicLongArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++) {
+			sequence.set(i, i);
+		}
+	}
+
+	/**
+	 * Reiht einen Effekt ein, kann von jedem Thread aus aufgerufen werden
+	 * 
+	 * @param effect - Effekt
+	 * @param x      - X-Position
+	 * @param y      - Y-Position
+	 * @return {@code false} wenn die Warteschlange voll ist und der Effekt
+	 *         verworfen wurde
+	 */
+	public boolean offer(Effect effect, int x, int y) {
+		long pos = tail.get();
+		while (true) {
+			int i = (int) pos & mask;
+			long diff = sequence.get(i) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					effects[i] = effect.ordinal();
+					xs[i] = x;
+					ys[i] = y;
+					sequence.set(i, pos + 1);
+					queued.increment();
+					return true;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				// Der Consumer hat diesen Platz noch nicht gelesen
+				dropped.increment();
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Erzeugt die Partikel aller bis jetzt eingereihten Effekte. Darf nur von dem
+	 * Thread aufgerufen werden, der die Simulation ausführt
+	 * 
+	 * @param simulation - Simulation in der die Partikel entstehen
+	 * @return Anzahl der erzeugten Partikel
+	 */
+	public int drain(FireworksSimulation simulation) {
+		int particles = 0;
+		int commands = 0;
+		// Höchstens einmal rundherum, damit ständig neue Effekte den Schritt nicht
+		// aufhalten
+		for (int n = 0; n < capacity; n++) {
+			int i = (int) head & mask;
+			if (sequence.get(i) != head + 1) {
+				break;
+			}
+			Effect effect = EFFECTS[effects[i]];
+			int x = xs[i];
+			int y = ys[i];
+			sequence.set(i, head + capacity);
+			head++;
+			commands++;
+			if (simulation.getRecorder() != null) {
+				simulation.getRecorder().spawn(simulation.getCurrentTick(), effect, x, y);
+			}
+			particles += spawn(effect, x, y, simulation);
+		}
+		if (commands > 0) {
+			drained += commands;
+			drainedParticles += particles;
+		}
+		return particles;
+	}
+
+	private static int spawn(Effect effect, int x, int y, FireworksSimulation simulation) {
+		switch (effect) {
+		case SHOT_SPARKS:
+			return FireworksFactory.spawnShotSparks(x, y, simulation);
+		case TRAIL_SPARKS:
+			return FireworksFactory.spawnTrailSparks(x, y, simulation);
+		case EXPLOSION:
+			return FireworksFactory.spawnFireworksExplosion(x, y, simulation);
+		case ROCKET:
+			simulation.launchRocket();
+			return 0;
+		default:
+			throw new IllegalArgumentException("Unbekannter Effekt: " + effect);
+		}
+	}
+
+	/**
+	 * Ungefähre Anzahl der wartenden Effekte
+	 */
+	public int size() {
+		return (int) Math.max(Math.min(tail.get() - head, capacity), 0);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Anzahl der erfolgreich eingereihten Effekte
+	 */
+	public long getQueued() {
+		return queued.sum();
+	}
+
+	/**
+	 * Anzahl der Effekte die wegen voller Warteschlange verworfen wurden
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Anzahl der abgearbeiteten Effekte
+	 */
+	public long getDrained() {
+		return drained;
+	}
+
+	/**
+	 * Anzahl der Partikel die beim Abarbeiten entstanden sind
+	 */
+	public long getDrainedParticles() {
+		return drainedParticles;
+	}
+}
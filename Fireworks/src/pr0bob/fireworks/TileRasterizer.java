@@ -0,0 +1,288 @@
+package pr0bob.fireworks;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Zeichnet Partikel (Punkt + Leuchten) und Tracer auf mehreren Threads in das
+ * Raster einer Ebene
+ *
+ * Zuerst werden sequentiell alle Zeichenbefehle gesammelt (dabei wird auch der
+ * {@link GlowSpriteCache} abgefragt, der nicht threadsicher ist) und per
+ * Counting Sort in Kacheln von {@link #TILE_SIZE} Px einsortiert. Ein Befehl
+ * der über eine Kachelgrenze ragt (z.B. ein großes Leuchten) landet in jeder
+ * berührten Kachel. Danach bemalt jeder Thread nur ganze Kacheln, mit dem
+ * {@link RasterRenderer} auf die Kachel beschränkt. Kein Pixel wird von zwei
+ * Threads beschrieben und innerhalb einer Kachel bleibt die Reihenfolge die der
+ * Indizes, das Ergebnis ist daher exakt das gleiche wie sequentiell
+ *
+ * Die Arrays werden zwischen den Frames wiederverwendet. Nicht threadsicher,
+ * gedacht für den Thread der zeichnet
+ */
+public class TileRasterizer {
+
+	/**
+	 * Kantenlänge einer Kachel in Px
+	 */
+	public static final int TILE_SIZE = 64;
+
+	/**
+	 * Unterhalb dieser Anzahl an Zeichenbefehlen lohnt das Einsortieren nicht,
+	 * dann wird direkt sequentiell gezeichnet
+	 */
+	public static final int PARALLEL_THRESHOLD = 2048;
+
+	/*
+	 * Gesammelte Zeichenbefehle: Punkt (x0, y0) bzw. Linie nach (x1, y1), Farbe
+	 * (vormultipliziert aus der {@link Palette}) und optional ein Sprite mit
+	 * Radius um den Punkt
+	 */
+	private int commands = 0;
+	private int[] x0 = new int[0];
+	private int[] y0 = new int[0];
+	private int[] x1 = new int[0];
+	private int[] y1 = new int[0];
+	private int[] colors = new int[0];
+	private BufferedImage[] sprites = new BufferedImage[0];
+	private int[] radius = new int[0];
+	private boolean lines;
+
+	/*
+	 * Die Befehle der Kachel t stehen in entries[tileStart[t]] bis
+	 * entries[tileStart[t + 1] - 1]
+	 */
+	private int columns;
+	private int rows;
+	private int[] tileStart = new int[2];
+	private int[] entries = new int[0];
+
+	private BufferedImage target;
+
+	/**
+	 * Renderer für den sequentiellen Fall
+	 */
+	private final RasterRenderer raster = new RasterRenderer();
+
+	/**
+	 * Renderer der Worker-Threads, einer pro Thread
+	 */
+	private final ThreadLocal<RasterRenderer> workerRaster = ThreadLocal.withInitial(RasterRenderer::new);
+
+	/**
+	 * Zeichnet alle lebenden Partikel, zwischen letzter und aktueller Position
+	 * interpoliert (entspricht {@link Particle#draw(RasterRenderer, double)} für
+	 * jedes Partikel)
+	 *
+	 * @param store - Partikel
+	 * @param image - Ziel vom Typ TYPE_INT_ARGB_PRE
+	 * @param alpha - Anteil (0.0 - 1.0) zwischen letztem und aktuellem
+	 *              Simulationsschritt
+	 * @param cache - Cache für die Leuchten-Sprites
+	 * @param pool  - Pool für die Kacheln oder {@code null} für sequentiell
+	 */
+	public void drawParticles(ParticleStore store, BufferedImage image, double alpha, GlowSpriteCache cache,
+			ForkJoinPool pool) {
+		ensureCapacity(store.size());
+		// Ein Sprite pro Partikel, wächst nur zusammen mit dem Speicher
+		cache.reserveEvictions(store.capacity());
+		commands = 0;
+		lines = false;
+		int[] flags = store.flags;
+		Palette palette = store.palette;
+		for (int i = 0; i < store.size(); i++) {
+			if ((flags[i] & ParticleStore.FLAG_DEAD) != 0) {
+				continue;
+			}
+			boolean currentFlicker = (flags[i] & ParticleStore.FLAG_CURRENT_FLICKER) != 0;
+			float lastX = store.lastX[i];
+			float lastY = store.lastY[i];
+			int x = (int) (lastX + (store.posX[i] - lastX) * alpha);
+			int y = (int) (lastY + (store.posY[i] - lastY) * alpha);
+			int glowRadius = store.glowRadius[i];
+			int color = currentFlicker ? store.flickerColor[i] : store.color[i];
+
+			int c = commands++;
+			x0[c] = x;
+			y0[c] = y;
+			x1[c] = x;
+			y1[c] = y;
+			colors[c] = palette.premultiplied[color];
+			if ((flags[i] & ParticleStore.FLAG_GLOW) != 0 && glowRadius > 1) {
+				sprites[c] = cache.get(palette.argb[color], glowRadius, currentFlicker);
+				radius[c] = glowRadius;
+			} else {
+				sprites[c] = null;
+				radius[c] = 0;
+			}
+		}
+		rasterize(image, pool);
+		// Erst jetzt dürfen die in diesem Frame verdrängten Sprites neu eingefärbt
+		// werden, vorher wurden sie evtl. noch gezeichnet
+		cache.recycleEvicted();
+	}
+
+	/**
+	 * Zeichnet die Leuchtspuren aller Partikel mit Tracer vom letzten zum aktuellen
+	 * Schritt (entspricht {@link Particle#drawTracer(RasterRenderer)} für jedes
+	 * Partikel)
+	 *
+	 * @param store - Partikel
+	 * @param image - Ziel vom Typ TYPE_INT_ARGB_PRE
+	 * @param pool  - Pool für die Kacheln oder {@code null} für sequentiell
+	 */
+	public void drawTracers(ParticleStore store, BufferedImage image, ForkJoinPool pool) {
+		ensureCapacity(store.size());
+		commands = 0;
+		lines = true;
+		int[] flags = store.flags;
+		for (int i = 0; i < store.size(); i++) {
+			if ((flags[i] & ParticleStore.FLAG_TRACER) == 0) {
+				continue;
+			}
+			int color = store.tracerDrawColor(i);
+			if (color >>> 24 == 0) {
+				continue;
+			}
+			int c = commands++;
+			x0[c] = (int) store.lastX[i];
+			y0[c] = (int) store.lastY[i];
+			x1[c] = (int) store.posX[i];
+			y1[c] = (int) store.posY[i];
+			colors[c] = color;
+			sprites[c] = null;
+			radius[c] = 0;
+		}
+		rasterize(image, pool);
+	}
+
+	private void rasterize(BufferedImage image, ForkJoinPool pool) {
+		target = image;
+		if (pool == null || commands < PARALLEL_THRESHOLD) {
+			raster.bind(image);
+			for (int c = 0; c < commands; c++) {
+				draw(raster, c);
+			}
+		} else {
+			bin(image.getWidth(), image.getHeight());
+			tileLoop.run(pool, columns * rows);
+		}
+		// Sprites nicht über den Frame hinaus festhalten
+		Arrays.fill(sprites, 0, commands, null);
+		target = null;
+	}
+
+	private void draw(RasterRenderer raster, int c) {
+		if (lines) {
+			raster.line(x0[c], y0[c], x1[c], y1[c], colors[c]);
+			return;
+		}
+		if (sprites[c] != null) {
+			raster.blit(sprites[c], x0[c] - radius[c], y0[c] - radius[c]);
+		}
+		raster.plot(x0[c], y0[c], colors[c]);
+	}
+
+	/**
+	 * Sortiert die Befehle per Counting Sort in die Kacheln ein, die ihr
+	 * umschließendes Rechteck berührt
+	 */
+	private void bin(int width, int height) {
+		columns = Math.max((width + TILE_SIZE - 1) / TILE_SIZE, 1);
+		rows = Math.max((height + TILE_SIZE - 1) / TILE_SIZE, 1);
+		int tiles = columns * rows;
+		if (tileStart.length < tiles + 1) {
+			tileStart = new int[tiles + 1];
+		} else {
+			Arrays.fill(tileStart, 0, tiles + 1, 0);
+		}
+
+		// Zählen (um eins versetzt, damit nach dem Aufsummieren der Anfang dasteht)
+		int total = 0;
+		for (int c = 0; c < commands; c++) {
+			int minX = Math.min(x0[c], x1[c]) - radius[c];
+			int maxX = Math.max(x0[c], x1[c]) + radius[c];
+			int minY = Math.min(y0[c], y1[c]) - radius[c];
+			int maxY = Math.max(y0[c], y1[c]) + radius[c];
+			if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+				continue;
+			}
+			int c0 = tile(minX, width);
+			int c1 = tile(maxX, width);
+			int r0 = tile(minY, height);
+			int r1 = tile(maxY, height);
+			for (int r = r0; r <= r1; r++) {
+				for (int col = c0; col <= c1; col++) {
+					tileStart[r * columns + col + 1]++;
+				}
+			}
+			total += (r1 - r0 + 1) * (c1 - c0 + 1);
+		}
+		for (int t = 0; t < tiles; t++) {
+			tileStart[t + 1] += tileStart[t];
+		}
+		if (entries.length < total) {
+			entries = new int[total + total / 2];
+		}
+
+		// Einsortieren, tileStart[t] läuft dabei bis zum Anfang der nächsten Kachel
+		for (int c = 0; c < commands; c++) {
+			int minX = Math.min(x0[c], x1[c]) - radius[c];
+			int maxX = Math.max(x0[c], x1[c]) + radius[c];
+			int minY = Math.min(y0[c], y1[c]) - radius[c];
+			int maxY = Math.max(y0[c], y1[c]) + radius[c];
+			if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+				continue;
+			}
+			int c0 = tile(minX, width);
+			int c1 = tile(maxX, width);
+			int r0 = tile(minY, height);
+			int r1 = tile(maxY, height);
+			for (int r = r0; r <= r1; r++) {
+				for (int col = c0; col <= c1; col++) {
+					entries[tileStart[r * columns + col]++] = c;
+				}
+			}
+		}
+		System.arraycopy(tileStart, 0, tileStart, 1, tiles);
+		tileStart[0] = 0;
+	}
+
+	/**
+	 * Spalte bzw. Zeile einer Koordinate, auf das Bild begrenzt
+	 */
+	private static int tile(int v, int size) {
+		return Math.min(Math.max(v, 0), size - 1) / TILE_SIZE;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (x0.length < capacity) {
+			int n = Math.max(capacity, x0.length + x0.length / 2);
+			x0 = new int[n];
+			y0 = new int[n];
+			x1 = new int[n];
+			y1 = new int[n];
+			colors = new int[n];
+			sprites = new BufferedImage[n];
+			radius = new int[n];
+		}
+	}
+
+	/**
+	 * Bemalt je eine Kachel, beschränkt auf deren Fläche
+	 */
+	private final ParallelLoop tileLoop = new ParallelLoop() {
+		@Override
+		protected void block(int t) {
+			if (tileStart[t] == tileStart[t + 1]) {
+				return;
+			}
+			RasterRenderer raster = workerRaster.get().bind(target);
+			int x = (t % columns) * TILE_SIZE;
+			int y = (t / columns) * TILE_SIZE;
+			raster.clip(x, y, x + TILE_SIZE, y + TILE_SIZE);
+			for (int e = tileStart[t]; e < tileStart[t + 1]; e++) {
+				draw(raster, entries[e]);
+			}
+		}
+	};
+}
@@ -0,0 +1,82 @@
+package pr0bob.fireworks;
+/**
+ * Turbulenz aus glattem Rauschen (Value Noise über Position und Zeit).
+ * Benachbarte Partikel werden ähnlich abgelenkt, dadurch entstehen Schlieren
+ * statt des gleichmäßigen Wackelns des {@link JitterField}
+ */
+public class TurbulenceField extends ForceField {
+
+	private final double amplitude;
+	private final double scale;
+	private final double speed;
+	private final long seed;
+
+	/**
+	 * @param amplitude - Maximale Beschleunigung pro Schritt
+	 * @param scale     - Größe der Wirbel in Px
+	 * @param speed     - Wie schnell sich das Muster ändert (Gitterzellen pro
+	 *                  Schritt)
+	 */
+	public TurbulenceField(double amplitude, double scale, double speed) {
+		if (scale <= 0) {
+			throw new IllegalArgumentException("scale <= 0: " + scale);
+		}
+		this.amplitude = amplitude;
+		this.scale = scale;
+		this.speed = speed;
+		this.seed = MathUtils.seedFor(0x7B5L);
+	}
+
+	@Override
+	protected void apply(ParticleStore store, int from, int to, long tick) {
+		double[] posX = store.posX;
+		double[] posY = store.posY;
+		double[] velX = store.velX;
+		double[] velY = store.velY;
+		double t = tick * speed;
+		for (int i = from; i < to; i++) {
+			if (affects(store, i)) {
+				double x = posX[i] / scale;
+				double y = posY[i] / scale;
+				// Zwei unabhängige Rauschwerte für X und Y
+				velX[i] += amplitude * noise(x, y, t, seed);
+				velY[i] += amplitude * noise(x, y, t, ~seed);
+			}
+		}
+	}
+
+	/**
+	 * Glattes Rauschen im Bereich [-1, 1], trilinear zwischen zufälligen Werten
+	 * an den ganzzahligen Gitterpunkten interpoliert
+	 */
+	static double noise(double x, double y, double t, long seed) {
+		double fx = Math.floor(x);
+		double fy = Math.floor(y);
+		double ft = Math.floor(t);
+		int ix = (int) fx;
+		int iy = (int) fy;
+		int it = (int) ft;
+		double u = fade(x - fx);
+		double v = fade(y - fy);
+		double w = fade(t - ft);
+
+		double a = lerp(u, lattice(ix, iy, it, seed), lattice(ix + 1, iy, it, seed));
+		double b = lerp(u, lattice(ix, iy + 1, it, seed), lattice(ix + 1, iy + 1, it, seed));
+		double c = lerp(u, lattice(ix, iy, it + 1, seed), lattice(ix + 1, iy, it + 1, seed));
+		double d = lerp(u, lattice(ix, iy + 1, it + 1, seed), lattice(ix + 1, iy + 1, it + 1, seed));
+		return lerp(w, lerp(v, a, b), lerp(v, c, d));
+	}
+
+	private static double lattice(int x, int y, int t, long seed) {
+		long h = RandomStream.mix(seed, x * 0x9E3779B1L + y * 0x85EBCA77L + t * 0xC2B2AE3DL);
+		return (h >>> 11) * 0x1.0p-52 - 1.0;
+	}
+
+	private static double fade(double f) {
+		return f * f * (3 - 2 * f);
+	}
+
+	private static double lerp(double f, double a, double b) {
+		return a + f * (b - a);
+	}
+}
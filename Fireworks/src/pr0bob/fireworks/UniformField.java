@@ -0,0 +1,58 @@
+package pr0bob.fireworks;
+/**
+ * Gleichmäßige Beschleunigung, z.B. Gravitation oder Wind
+ */
+public class UniformField extends ForceField {
+
+	/**
+	 * Stärke der Gravitation, positive Y-Werte bedeuten Anziehung nach unten
+	 */
+	public static final double DEFAULT_GRAVITY_Y = 0.087;
+
+	private final double ax;
+	private final double ay;
+
+	/**
+	 * @param ax - Beschleunigung in X-Richtung pro Schritt
+	 * @param ay - Beschleunigung in Y-Richtung pro Schritt
+	 */
+	public UniformField(double ax, double ay) {
+		this(ax, ay, 0);
+	}
+
+	/**
+	 * @param requiredFlags - Flags die ein Partikel haben muss
+	 */
+	public UniformField(double ax, double ay, int requiredFlags) {
+		super(requiredFlags);
+		this.ax = ax;
+		this.ay = ay;
+	}
+
+	/**
+	 * Die Gravitation aller Partikel mit {@link ParticleStore#FLAG_GRAVITY}
+	 */
+	public static UniformField gravity() {
+		return new UniformField(0.0, DEFAULT_GRAVITY_Y, ParticleStore.FLAG_GRAVITY);
+	}
+
+	@Override
+	protected void apply(ParticleStore store, int from, int to, long tick) {
+		double[] velX = store.velX;
+		double[] velY = store.velY;
+		for (int i = from; i < to; i++) {
+			if (affects(store, i)) {
+				velX[i] += ax;
+				velY[i] += ay;
+			}
+		}
+	}
+
+	public double getAccelerationX() {
+		return ax;
+	}
+
+	public double getAccelerationY() {
+		return ay;
+	}
+}
@@ -20,24 +20,12 @@ public class Vector {
 	private double relativeX;
 	private double relativeY;
 
-	/**
-	 * Global number of vectors (For ID-generation)
-	 */
-	static long numOfVectors;
-
-	/**
-	 * ID of the current vector
-	 */
-	long vectorID;
-
 	/**
 	 * Crates a new vector with x=0.0 and y=0.0
 	 */
 	public Vector() {
 		this.x = 0.0d;
 		this.y = 0.0d;
-		numOfVectors++;
-		this.vectorID = numOfVectors;
 	}
 
 	/**
@@ -49,8 +37,17 @@ public class Vector {
 	public Vector(double x, double y) {
 		this.x = x;
 		this.y = y;
-		numOfVectors++;
-		this.vectorID = numOfVectors;
+	}
+
+	/**
+	 * Creates a new vector from polar coordinates, using the fast trigonometric
+	 * functions of {@link MathUtils}
+	 * 
+	 * @param length - Length of the vector
+	 * @param deg    - Angle in degrees, 0 pointing along the x-axis
+	 */
+	public static Vector fromPolarDeg(double length, double deg) {
+		return new Vector(length * MathUtils.cosDeg(deg), length * MathUtils.sinDeg(deg));
 	}
 
 	/**
@@ -78,34 +75,40 @@ public class Vector {
 	 * Multiplies this vector by the given amount
 	 * 
 	 * @param mag - Magnitude to multiply by
+	 * @return This vector (no copy)
 	 */
 	public Vector magnitude(double mag) {
 		this.x *= mag;
 		this.y *= mag;
-		return new Vector(this.x, this.y);
+		return this;
 	}
 
 	/**
-	 * Rotates the vector by n degrees
+	 * Rotates the vector by n degrees (fast trigonometry, see
+	 * {@link MathUtils#TRIG_ERROR_BOUND})
 	 * 
-	 * @param rad - Angle to rotate by in degree
+	 * @param deg - Angle to rotate by in degree
 	 */
 	public void rotateByDeg(double deg) {
-		deg = Math.toRadians(deg);
-		double x1 = this.x * Math.cos(deg) - this.y * Math.sin(deg);
-		double y1 = this.x * Math.sin(deg) + this.y * Math.cos(deg);
+		double cos = MathUtils.cosDeg(deg);
+		double sin = MathUtils.sinDeg(deg);
+		double x1 = this.x * cos - this.y * sin;
+		double y1 = this.x * sin + this.y * cos;
 		this.x = x1;
 		this.y = y1;
 	}
 
 	/**
-	 * Rotates the vector by n rad
+	 * Rotates the vector by n rad (fast trigonometry, see
+	 * {@link MathUtils#TRIG_ERROR_BOUND})
 	 * 
 	 * @param rad - Angle to rotate by in rad
 	 */
 	public void rotateByRad(double rad) {
-		double x1 = this.x * Math.cos(rad) - this.y * Math.sin(rad);
-		double y1 = this.x * Math.sin(rad) + this.y * Math.cos(rad);
+		double cos = MathUtils.cos(rad);
+		double sin = MathUtils.sin(rad);
+		double x1 = this.x * cos - this.y * sin;
+		double y1 = this.x * sin + this.y * cos;
 		this.x = x1;
 		this.y = y1;
 	}
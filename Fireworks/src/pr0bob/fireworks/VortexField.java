@@ -0,0 +1,50 @@
+package pr0bob.fireworks;
+/**
+ * Wirbel um einen Punkt, beschleunigt die Partikel quer zur Richtung zum
+ * Zentrum. Positive Stärke dreht (auf dem Bildschirm) im Uhrzeigersinn, die
+ * Kraft nimmt linear mit dem Abstand ab und ist ab dem Radius 0
+ */
+public class VortexField extends ForceField {
+
+	private final double centerX;
+	private final double centerY;
+	private final double strength;
+	private final double radius;
+
+	/**
+	 * @param centerX  - X-Position des Zentrums
+	 * @param centerY  - Y-Position des Zentrums
+	 * @param strength - Beschleunigung pro Schritt direkt am Zentrum
+	 * @param radius   - Reichweite in Px
+	 */
+	public VortexField(double centerX, double centerY, double strength, double radius) {
+		if (radius <= 0) {
+			throw new IllegalArgumentException("radius <= 0: " + radius);
+		}
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.strength = strength;
+		this.radius = radius;
+	}
+
+	@Override
+	protected void apply(ParticleStore store, int from, int to, long tick) {
+		double[] posX = store.posX;
+		double[] posY = store.posY;
+		double[] velX = store.velX;
+		double[] velY = store.velY;
+		double radiusSq = radius * radius;
+		for (int i = from; i < to; i++) {
+			double dx = posX[i] - centerX;
+			double dy = posY[i] - centerY;
+			double distSq = dx * dx + dy * dy;
+			if (distSq >= radiusSq || distSq < 1e-6 || !affects(store, i)) {
+				continue;
+			}
+			double dist = Math.sqrt(distSq);
+			double a = strength * (1 - dist / radius) / dist;
+			velX[i] -= dy * a;
+			velY[i] += dx * a;
+		}
+	}
+}